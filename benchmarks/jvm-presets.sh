@@ -0,0 +1,77 @@
+#!/bin/sh
+# Runs a Lambda function against the local runtime API emulator with each JVM preset (see "JVM Presets" in README.md)
+# at the memory sizes of Lambda, and prints the cold start (the time to the first response, from the launch of the
+# JVM) and the latency of the warm invocations of each combination, averaged over a number of runs.
+#
+# The memory size is emulated with -XX:MaxRAM, which the presets size the heap from, and the vCPUs Lambda gives that
+# much memory (one per 1769 MB, at least one) with -XX:ActiveProcessorCount and, if available, taskset. A fraction of a
+# vCPU can not be emulated, so the small sizes run on a whole one.
+#
+# Usage: benchmarks/jvm-presets.sh -handler <class>::<method> -taskRoot <dir> -events <file> [-invocations <n>]
+#            [-runs <n>] [-memory "<MB> ..."] [-presets "<preset> ..."] [-java <java>]
+# The emulator has to be built first: mvn -f emulator/pom.xml package
+
+set -e
+dir=$(cd "$(dirname "$0")/.." && pwd)
+. "$dir/src/main/launcher/jvm-presets.sh"
+
+invocations=1000
+runs=3
+memorySizes="128 256 512 1024 1769 3008 5308 10240"
+presets="none small medium large"
+java=java
+while [ $# -gt 1 ]; do
+  case "$1" in
+    -handler) handler="$2" ;;
+    -taskRoot) taskRoot="$2" ;;
+    -events) events="$2" ;;
+    -invocations) invocations="$2" ;;
+    -runs) runs="$2" ;;
+    -memory) memorySizes="$2" ;;
+    -presets) presets="$2" ;;
+    -java) java="$2" ;;
+    *) echo "Unknown option: $1" >&2; exit 2 ;;
+  esac
+  shift 2
+done
+if [ -z "$handler" ] || [ -z "$taskRoot" ] || [ -z "$events" ]; then
+  sed -n '/^# Usage/,/^# The emulator/p' "$0" | sed 's/^# \{0,1\}//' >&2
+  exit 2
+fi
+emulatorJar="$dir/emulator/target/emulator.jar"
+if [ ! -f "$emulatorJar" ]; then
+  echo "The runtime API emulator has not been built, run: mvn -f emulator/pom.xml package" >&2
+  exit 1
+fi
+
+printf "%-8s %-7s %-5s %14s %14s %14s\n" "memory" "preset" "vCPUs" "cold start ms" "warm p50 us" "warm p99 us"
+for memory in $memorySizes; do
+  cpus=$(( (memory + 1768) / 1769 ))
+  cpuSet=""
+  if command -v taskset > /dev/null; then
+    cpuSet="taskset -c 0-$(( cpus - 1 ))"
+  fi
+  for preset in $presets; do
+    if ! jvm_preset_options "$preset"; then
+      echo "Unknown preset: $preset" >&2
+      exit 2
+    fi
+    total=0
+    p50=0
+    p99=0
+    run=0
+    while [ $run -lt "$runs" ]; do
+      # shellcheck disable=SC2086
+      output=$($cpuSet "$java" $jvmPresetGc $jvmPresetOptions -XX:MaxRAM="${memory}m" \
+          -XX:ActiveProcessorCount="$cpus" -jar "$emulatorJar" -handler "$handler" -taskRoot "$taskRoot" \
+          -events "$events" -invocations "$invocations")
+      total=$(echo "$output" | sed -n 's/.*"type":"startup".*"total":\([0-9.]*\).*/\1/p' | awk -v t="$total" '{ print t + $1 }')
+      p50=$(echo "$output" | sed -n 's/^latency (us): p50 \([0-9.]*\),.*/\1/p' | awk -v t="$p50" '{ print t + $1 }')
+      p99=$(echo "$output" | sed -n 's/^latency (us):.* p99 \([0-9.]*\),.*/\1/p' | awk -v t="$p99" '{ print t + $1 }')
+      run=$(( run + 1 ))
+    done
+    printf "%-8s %-7s %-5s %14.1f %14.1f %14.1f\n" "$memory" "$preset" "$cpus" \
+        "$(echo "$total $runs" | awk '{ print $1 / $2 }')" "$(echo "$p50 $runs" | awk '{ print $1 / $2 }')" \
+        "$(echo "$p99 $runs" | awk '{ print $1 / $2 }')"
+  done
+done
@@ -0,0 +1,70 @@
+package com.dow.aws.lambda;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the context of an invocation as a {@code String.format} JSON document (what the runtime used to
+ * do for every invocation) with constructing a {@link LambdaContext}, with and without serializing it to JSON (which
+ * is only done for handlers that take the context as a {@code String}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContextBenchmark {
+    private final Invocation invocation = new Invocation("8476a536-e9f4-11e8-9739-2dfe598c3fcd",
+            String.valueOf(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(15)),
+            "arn:aws:lambda:us-east-2:123456789012:function:custom-runtime",
+            "Root=1-5bef4de7-ad49b0e87f6ef6c87fc2e700;Parent=9a9197af755a6419;Sampled=1", null, null,
+            InputStream.nullInputStream(), 0);
+
+    @Benchmark
+    public String stringFormat() {
+        String requestId = invocation.getRequestId();
+        String invokedFunctionArn = invocation.getInvokedFunctionArn();
+        long deadlineMillis = invocation.getDeadlineMillis();
+        String functionName = "";
+        String[] arnParts = invokedFunctionArn.split(":");
+        if (arnParts.length == 7) {
+            functionName = arnParts[6];
+        }
+        return String.format("{\n" +
+                        "\"awsRequestId\": \"%s\",\n" +
+                        "\"logGroupName\": \"%s\",\n" +
+                        "\"logStreamName\": \"%s\",\n" +
+                        "\"functionName\": \"%s\",\n" +
+                        "\"functionVersion\": \"%s\",\n" +
+                        "\"invokedFunctionArn\": \"%s\",\n" +
+                        "\"remainingTimeInMillis\": \"%d\",\n" +
+                        "\"memoryLimitInMB\": \"%d\"\n" +
+                        "}", requestId, System.getenv("AWS_LAMBDA_LOG_GROUP_NAME"),
+                System.getenv("AWS_LAMBDA_LOG_STREAM_NAME"), functionName,
+                System.getenv("AWS_LAMBDA_FUNCTION_VERSION"), invokedFunctionArn,
+                Math.max((int) (deadlineMillis - System.currentTimeMillis()), 0),
+                Integer.parseInt(Objects.requireNonNullElse(System.getenv("AWS_LAMBDA_FUNCTION_MEMORY_SIZE"), "128")));
+    }
+
+    @Benchmark
+    public LambdaContext lambdaContext() {
+        return new LambdaContext(invocation);
+    }
+
+    @Benchmark
+    public String lambdaContextJson() {
+        return new LambdaContext(invocation).toJson();
+    }
+}
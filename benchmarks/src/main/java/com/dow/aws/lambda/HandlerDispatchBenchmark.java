@@ -0,0 +1,87 @@
+package com.dow.aws.lambda;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of dispatching an event to the handler method via {@link Method#invoke(Object, Object...)} (what
+ * the runtime used to do), a constant {@link MethodHandle}, and the {@link HandlerInvoker} bound by
+ * {@link java.lang.invoke.LambdaMetafactory}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandlerDispatchBenchmark {
+    private static final MethodHandle HANDLE;
+
+    static {
+        try {
+            HANDLE = MethodHandles.publicLookup().findVirtual(EchoHandler.class, "handleRequest",
+                    MethodType.methodType(void.class, InputStream.class, OutputStream.class))
+                    .asType(MethodType.methodType(void.class, Object.class, InputStream.class, OutputStream.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private Object handler;
+    private Method method;
+    private HandlerInvoker invoker;
+    private InputStream input;
+    private OutputStream output;
+
+    @Setup
+    public void setup() throws Exception {
+        handler = new EchoHandler();
+        method = EchoHandler.class.getMethod("handleRequest", InputStream.class, OutputStream.class);
+        invoker = HandlerInvoker.bind(EchoHandler.class, method, JsonSerializer::new);
+        input = new InputStream() {
+            @Override
+            public int read() {
+                return 'x';
+            }
+        };
+        output = OutputStream.nullOutputStream();
+    }
+
+    @Benchmark
+    public void reflective() throws Exception {
+        method.invoke(handler, new Object[]{input, output});
+    }
+
+    @Benchmark
+    public void methodHandle() throws Throwable {
+        HANDLE.invokeExact(handler, input, output);
+    }
+
+    @Benchmark
+    public void metafactory() throws Exception {
+        invoker.invoke(handler, input, output, null);
+    }
+
+    public static class EchoHandler {
+        public void handleRequest(InputStream input, OutputStream output) throws IOException {
+            output.write(input.read());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.dow.aws.lambda;
+
+import com.dow.aws.lambda.emulator.InvocationResult;
+import com.dow.aws.lambda.emulator.RuntimeApiEmulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full iteration of the bootstrap's event loop - fetching the event from the runtime API, invoking the
+ * handler and posting the response - against the in-process {@link RuntimeApiEmulator}, for each runtime API client.
+ * Note that the time and the allocations of the emulator (which runs in the same JVM) are included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvocationLoopBenchmark {
+    @Param({"socket", "http"})
+    public String client;
+
+    private final byte[] event = "{\"message\":\"Hello, world!\"}".getBytes(StandardCharsets.UTF_8);
+    private RuntimeApiEmulator emulator;
+    private Thread bootstrap;
+    private Path taskRoot;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // The handler is loaded from the benchmark's class path (the parent of the function's class loader)
+        taskRoot = Files.createTempDirectory("task");
+        emulator = RuntimeApiEmulator.start(0);
+        bootstrap = emulator.startBootstrap(taskRoot.toString(), EchoHandler.class.getName() + "::handleRequest",
+                Map.of("LAMBDA_RUNTIME_CLIENT", client));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        bootstrap.interrupt();
+        bootstrap.join(TimeUnit.SECONDS.toMillis(5));
+        emulator.close();
+        Files.deleteIfExists(taskRoot);
+    }
+
+    @Benchmark
+    public InvocationResult invoke() throws Exception {
+        return emulator.invoke(event).get();
+    }
+
+    public static class EchoHandler {
+        public void handleRequest(InputStream input, OutputStream output) throws IOException {
+            input.transferTo(output);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.dow.aws.lambda;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding the response of an invocation into the (reused) response buffer: an API Gateway style response
+ * written by the {@link JsonSerializer} of typed handlers, the same document built as a {@code String} and written as
+ * bytes (what stream handlers typically do), and the error document posted for failed invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseEncodingBenchmark {
+    private final ResponseBuffer responseBuffer = new ResponseBuffer(8192);
+    private final Serializer.Writer<ProxyResponse> writer = new JsonSerializer().writer(ProxyResponse.class);
+    private final ProxyResponse response = new ProxyResponse();
+
+    public ResponseEncodingBenchmark() {
+        response.statusCode = 200;
+        response.headers = Map.of("Content-Type", "application/json", "Cache-Control", "no-cache");
+        response.body = "{\"message\":\"Hello, world!\",\"count\":42}";
+    }
+
+    @Benchmark
+    public ResponseBuffer serializer() throws IOException {
+        responseBuffer.reset();
+        writer.write(response, responseBuffer);
+        return responseBuffer;
+    }
+
+    @Benchmark
+    public ResponseBuffer string() throws IOException {
+        responseBuffer.reset();
+        StringBuilder sb = new StringBuilder("{\"statusCode\":").append(response.statusCode).append(",\"headers\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            Json.appendString(sb, header.getKey()).append(':');
+            Json.appendString(sb, header.getValue());
+        }
+        sb.append("},\"body\":");
+        Json.appendString(sb, response.body).append('}');
+        responseBuffer.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return responseBuffer;
+    }
+
+    @Benchmark
+    public String error() {
+        return Json.error("java.lang.IllegalStateException: \"boom\"", "RuntimeError");
+    }
+
+    public static class ProxyResponse {
+        public int statusCode;
+        public Map<String, String> headers;
+        public String body;
+    }
+}
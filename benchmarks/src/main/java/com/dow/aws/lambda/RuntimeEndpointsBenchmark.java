@@ -0,0 +1,45 @@
+package com.dow.aws.lambda;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the URI of the response resource of an invocation by formatting a {@link MessageFormat} pattern
+ * (what the runtime used to do) with concatenating the request id onto the prefix precomputed by
+ * {@link RuntimeEndpoints}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuntimeEndpointsBenchmark {
+    private static final String LAMBDA_INVOCATION_URL_TEMPLATE = "http://{0}/{1}/runtime/invocation/{2}/response";
+    private static final String RUNTIME_API = "127.0.0.1:9001";
+
+    private final RuntimeEndpoints endpoints = new RuntimeEndpoints(RUNTIME_API);
+    private final String requestId = "8476a536-e9f4-11e8-9739-2dfe598c3fcd";
+
+    @Benchmark
+    public URI messageFormat() {
+        return URI.create(MessageFormat.format(LAMBDA_INVOCATION_URL_TEMPLATE, RUNTIME_API,
+                RuntimeEndpoints.LAMBDA_VERSION_DATE, requestId));
+    }
+
+    @Benchmark
+    public URI endpoints() {
+        return endpoints.responseUri(requestId);
+    }
+}
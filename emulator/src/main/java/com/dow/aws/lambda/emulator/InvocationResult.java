@@ -0,0 +1,63 @@
+package com.dow.aws.lambda.emulator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The outcome of an invocation submitted to the {@link RuntimeApiEmulator}, as posted back by the runtime.
+ */
+public final class InvocationResult {
+    private final String requestId;
+    private final byte[] body;
+    private final String errorType;
+    private final long latencyNanos;
+
+    InvocationResult(String requestId, byte[] body, String errorType, long latencyNanos) {
+        this.requestId = requestId;
+        this.body = body;
+        this.errorType = errorType;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns true if the runtime posted the invocation to the error resource rather than the response resource.
+     */
+    public boolean isError() {
+        return errorType != null;
+    }
+
+    /**
+     * Returns the {@code Lambda-Runtime-Function-Error-Type} of the invocation error, or null if the invocation
+     * succeeded.
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * Returns the response (or the error document) posted by the runtime.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the time from the event being handed to the runtime (in the response to its
+     * {@code runtime/invocation/next} request) to the runtime having posted the response (or error).
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return requestId + (isError() ? " error " + errorType : " ok") + ": " + getBodyAsString();
+    }
+}
@@ -0,0 +1,188 @@
+package com.dow.aws.lambda.emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An HTTP/1.1 request made by the runtime to the {@link RuntimeApiEmulator}. The body is read in full, whether it is
+ * sent with a {@code Content-Length} or with chunked transfer encoding, and the trailers of a chunked body (which is
+ * how a streamed response reports an error that happened after it was started) are kept apart from the headers.
+ */
+final class Request {
+    private static final int MAX_LINE_LENGTH = 16384;
+
+    private final String method;
+    private final String path;
+    private final Map<String, String> headers;
+    private final Map<String, String> trailers;
+    private final byte[] body;
+
+    private Request(String method, String path, Map<String, String> headers, Map<String, String> trailers,
+                    byte[] body) {
+        this.method = method;
+        this.path = path;
+        this.headers = headers;
+        this.trailers = trailers;
+        this.body = body;
+    }
+
+    /**
+     * Reads the next request from a connection.
+     *
+     * @return the request, or null if the connection was closed before another request was started
+     * @throws IOException if the request is malformed or the connection was closed part way through it
+     */
+    static Request read(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+            throw new IOException("Malformed request line: " + requestLine);
+        }
+        String path = parts[1];
+        int query = path.indexOf('?');
+        Map<String, String> headers = readFields(in);
+
+        Map<String, String> trailers = Map.of();
+        byte[] body;
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+            ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+            int size;
+            while ((size = readChunkSize(in)) > 0) {
+                chunks.write(readFully(in, size));
+                expectLineEnd(in);
+            }
+            body = chunks.toByteArray();
+            trailers = readFields(in);
+        } else if (contentLength != null) {
+            try {
+                body = readFully(in, Integer.parseInt(contentLength.trim()));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Malformed Content-Length: " + contentLength);
+            }
+        } else {
+            body = new byte[0];
+        }
+        return new Request(parts[0], query == -1 ? path : path.substring(0, query), headers, trailers, body);
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the value of the given header (the first one, if it was sent more than once), or null if it was not
+     * sent.
+     */
+    String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the value of the given trailer of a chunked body, or null if it was not sent.
+     */
+    String getTrailer(String name) {
+        return trailers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns whether the runtime asked for the connection to be closed after this request.
+     */
+    boolean isClose() {
+        String connection = getHeader("Connection");
+        return connection != null && connection.trim().equalsIgnoreCase("close");
+    }
+
+    /**
+     * Reads header (or trailer) fields up to the empty line that ends them, keyed by their lower case name.
+     */
+    private static Map<String, String> readFields(InputStream in) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        String line;
+        while (!(line = requireLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Malformed header: " + line);
+            }
+            fields.putIfAbsent(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                    line.substring(colon + 1).trim());
+        }
+        return fields;
+    }
+
+    private static int readChunkSize(InputStream in) throws IOException {
+        String line = requireLine(in);
+        int extension = line.indexOf(';');
+        try {
+            return Integer.parseInt((extension == -1 ? line : line.substring(0, extension)).trim(), 16);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Malformed chunk size: " + line);
+        }
+    }
+
+    private static void expectLineEnd(InputStream in) throws IOException {
+        if (!requireLine(in).isEmpty()) {
+            throw new IOException("Malformed chunk: missing CRLF after chunk data");
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Connection closed after " + bytes.length + " of " + length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static String requireLine(InputStream in) throws IOException {
+        String line = readLine(in);
+        if (line == null) {
+            throw new EOFException("Connection closed part way through a request");
+        }
+        return line;
+    }
+
+    /**
+     * Reads a line ending in CRLF (or a bare LF), without the line ending.
+     *
+     * @return the line, or null if the stream ended before the first byte of the line
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                if (sb.length() == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed part way through a line");
+            }
+            if (sb.length() == MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            sb.append((char) b);
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == '\r') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+}
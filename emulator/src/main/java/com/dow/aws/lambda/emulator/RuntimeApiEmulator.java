@@ -0,0 +1,481 @@
+package com.dow.aws.lambda.emulator;
+
+import com.dow.aws.lambda.Bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process emulator of the
+ * <a href="https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html">Lambda runtime API</a>, which makes it
+ * possible to run the real {@link Bootstrap} loop (and so a Lambda function) locally, without network access.
+ * <p>
+ * Events are queued with {@link #invoke(byte[])} and handed, one at a time, to the runtime's
+ * {@code runtime/invocation/next} requests together with the request id, deadline, function ARN and trace id headers.
+ * The future returned by {@code invoke} completes when the runtime posts the response (or the error) of the event. An
+ * artificial latency can be added to every request the runtime makes, to approximate the round trip to the real
+ * runtime API. A SnapStart runtime's {@code runtime/restore/next} request returns right away, as if the snapshot had
+ * been taken and restored, and a restore error is treated like an init error.
+ * <p>
+ * The emulator speaks HTTP/1.1 itself (over persistent connections, like the runtime API) rather than through the
+ * JDK's {@code HttpServer}, as that can not receive the trailers of a chunked request body: a streamed response that
+ * fails after it was started reports the error in its {@code Lambda-Runtime-Function-Error-Type} and
+ * {@code Lambda-Runtime-Function-Error-Body} trailers, which the emulator turns into an invocation error.
+ * <p>
+ * The {@link #main(String[])} method runs a Lambda function against the emulator and reports the throughput and the
+ * latency of its invocations.
+ */
+public final class RuntimeApiEmulator implements Closeable {
+    private static final String BASE_PATH = "/2018-06-01/runtime/";
+    private static final String DEFAULT_FUNCTION_ARN = "arn:aws:lambda:us-east-1:123456789012:function:emulated";
+    private static final byte[] ACCEPTED = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+    private static final String ERROR_TYPE_HEADER = "Lambda-Runtime-Function-Error-Type";
+    private static final String ERROR_BODY_TRAILER = "Lambda-Runtime-Function-Error-Body";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<PendingInvocation> queue = new LinkedBlockingQueue<>();
+    private final Map<String, PendingInvocation> inFlight = new ConcurrentHashMap<>();
+    private final CompletableFuture<String> initError = new CompletableFuture<>();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration timeout = Duration.ofSeconds(3);
+    private volatile String functionArn = DEFAULT_FUNCTION_ARN;
+    private volatile boolean closed;
+
+    private RuntimeApiEmulator(ServerSocket serverSocket, ExecutorService executor) {
+        this.serverSocket = serverSocket;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts an emulator listening on the loopback address.
+     *
+     * @param port the port to listen on, or 0 for an ephemeral port
+     * @return the started emulator
+     * @throws IOException if the port could not be bound
+     */
+    public static RuntimeApiEmulator start(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        // runtime/invocation/next requests block until there is an event, so every connection gets its own thread
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "runtime-api-emulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RuntimeApiEmulator emulator = new RuntimeApiEmulator(serverSocket, executor);
+        executor.execute(emulator::accept);
+        return emulator;
+    }
+
+    /**
+     * Returns the host and port of the emulator, i.e. the value of {@code AWS_LAMBDA_RUNTIME_API} for the runtime.
+     */
+    public String getRuntimeApi() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Sets the latency that is added to every request made by the runtime.
+     */
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the timeout of the function, from which the deadline of each invocation is computed (defaults to 3
+     * seconds).
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setFunctionArn(String functionArn) {
+        this.functionArn = functionArn;
+    }
+
+    /**
+     * Queues an event for the runtime.
+     *
+     * @param event the event (e.g. a JSON document)
+     * @return the future result of the invocation, which fails if the runtime reports an init error
+     */
+    public CompletableFuture<InvocationResult> invoke(byte[] event) {
+        PendingInvocation invocation = new PendingInvocation(UUID.randomUUID().toString(), event);
+        if (initError.isDone()) {
+            invocation.result.completeExceptionally(new IllegalStateException("Init error: " + initError.join()));
+        } else {
+            queue.add(invocation);
+        }
+        return invocation.result;
+    }
+
+    /**
+     * Returns a future that completes with the error document if the runtime posts an init error.
+     */
+    public CompletableFuture<String> initError() {
+        return initError;
+    }
+
+    /**
+     * Runs the bootstrap in-process, on a new daemon thread, against this emulator. The thread can be interrupted to
+     * stop the bootstrap.
+     *
+     * @param taskRoot the directory containing the Lambda function's classes and jars
+     * @param handler the handler of the Lambda function, in the format of {@code <class>::<method>}
+     * @param env additional environment variables of the Lambda function (e.g. {@code LAMBDA_RUNTIME_CLIENT})
+     * @return the started bootstrap thread
+     */
+    public Thread startBootstrap(String taskRoot, String handler, Map<String, String> env) {
+        Map<String, String> bootstrapEnv = new HashMap<>(System.getenv());
+        bootstrapEnv.putAll(env);
+        bootstrapEnv.put("AWS_LAMBDA_RUNTIME_API", getRuntimeApi());
+        bootstrapEnv.put("LAMBDA_TASK_ROOT", taskRoot);
+        bootstrapEnv.put("_HANDLER", handler);
+        Thread thread = new Thread(() -> Bootstrap.run(bootstrapEnv), "bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stops the emulator. Invocations that have not completed fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Socket connection : connections) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+        executor.shutdownNow();
+        IllegalStateException closed = new IllegalStateException("Emulator closed");
+        queue.forEach(invocation -> invocation.result.completeExceptionally(closed));
+        inFlight.values().forEach(invocation -> invocation.result.completeExceptionally(closed));
+    }
+
+    private void accept() {
+        while (!closed) {
+            Socket connection;
+            try {
+                connection = serverSocket.accept();
+                // Without TCP_NODELAY the response headers and body are delayed by Nagle's algorithm, which (with
+                // delayed ACKs) adds tens of milliseconds to every request and would dwarf the overhead of the runtime
+                connection.setTcpNoDelay(true);
+            } catch (IOException ex) {
+                // The emulator is being closed
+                return;
+            }
+            connections.add(connection);
+            executor.execute(() -> serve(connection));
+        }
+    }
+
+    /**
+     * Serves the requests of a connection, one after the other, until the runtime closes it.
+     */
+    private void serve(Socket connection) {
+        try (connection) {
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+            Request request;
+            while ((request = Request.read(in)) != null) {
+                if (!handle(request, out) || request.isClose()) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            if (!closed) {
+                System.err.println("Runtime API emulator connection failed: " + ex);
+            }
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Handles a request and writes its response.
+     *
+     * @return false if the emulator is being closed
+     */
+    private boolean handle(Request request, OutputStream out) throws IOException {
+        try {
+            long latencyMillis = latency.toMillis();
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String path = request.getPath();
+            String resource = path.startsWith(BASE_PATH) ? path.substring(BASE_PATH.length()) : "";
+            String method = request.getMethod();
+            if (method.equals("GET") && resource.equals("invocation/next")) {
+                next(out);
+            } else if (method.equals("GET") && resource.equals("restore/next")) {
+                send(out, 200, Map.of(), new byte[0]);
+            } else if (method.equals("POST") && (resource.equals("init/error") || resource.equals("restore/error"))) {
+                initError(request, out);
+            } else if (method.equals("POST") && resource.startsWith("invocation/") &&
+                    (resource.endsWith("/response") || resource.endsWith("/error"))) {
+                String requestId = resource.substring("invocation/".length(), resource.lastIndexOf('/'));
+                complete(request, out, requestId, resource.endsWith("/error"));
+            } else {
+                send(out, 404, Map.of(), error("Unknown resource: " + method + " " + path, "NotFound"));
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            // The emulator is being closed
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void next(OutputStream out) throws IOException, InterruptedException {
+        PendingInvocation invocation = queue.take();
+        inFlight.put(invocation.requestId, invocation);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Lambda-Runtime-Aws-Request-Id", invocation.requestId);
+        headers.put("Lambda-Runtime-Deadline-Ms", String.valueOf(System.currentTimeMillis() + timeout.toMillis()));
+        headers.put("Lambda-Runtime-Invoked-Function-Arn", functionArn);
+        headers.put("Lambda-Runtime-Trace-Id", "Root=1-" + Long.toHexString(System.currentTimeMillis() / 1000) + "-" +
+                invocation.requestId.replace("-", "").substring(0, 24) + ";Sampled=0");
+        invocation.dispatchedNanos = System.nanoTime();
+        send(out, 200, headers, invocation.event);
+    }
+
+    private void initError(Request request, OutputStream out) throws IOException {
+        String error = new String(request.getBody(), StandardCharsets.UTF_8);
+        initError.complete(error);
+        IllegalStateException failure = new IllegalStateException("Init error: " + error);
+        List<PendingInvocation> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.forEach(invocation -> invocation.result.completeExceptionally(failure));
+        send(out, 202, Map.of(), ACCEPTED);
+    }
+
+    private void complete(Request request, OutputStream out, String requestId, boolean error) throws IOException {
+        PendingInvocation invocation = inFlight.remove(requestId);
+        if (invocation == null) {
+            send(out, 400, Map.of(), error("Invalid request ID: " + requestId, "InvalidRequestID"));
+            return;
+        }
+        byte[] body = request.getBody();
+        String errorType = null;
+        if (error) {
+            errorType = request.getHeader(ERROR_TYPE_HEADER);
+            if (errorType == null) {
+                errorType = "Unhandled";
+            }
+        } else if (request.getTrailer(ERROR_TYPE_HEADER) != null) {
+            // A streamed response that failed after it was started, whose error document is sent base64 encoded
+            errorType = request.getTrailer(ERROR_TYPE_HEADER);
+            String errorBody = request.getTrailer(ERROR_BODY_TRAILER);
+            body = errorBody == null ? new byte[0] : Base64.getMimeDecoder().decode(errorBody);
+        }
+        invocation.result.complete(new InvocationResult(requestId, body, errorType,
+                System.nanoTime() - invocation.dispatchedNanos));
+        send(out, 202, Map.of(), ACCEPTED);
+    }
+
+    private static void send(OutputStream out, int status, Map<String, String> headers, byte[] body)
+            throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason(status))
+                .append("\r\n");
+        headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+        if (body.length > 0) {
+            head.append("Content-Type: application/json\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 202:
+                return "Accepted";
+            case 400:
+                return "Bad Request";
+            default:
+                return "Not Found";
+        }
+    }
+
+    private static byte[] error(String message, String type) {
+        return ("{\"errorMessage\":\"" + message.replace("\"", "'") + "\",\"errorType\":\"" + type + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class PendingInvocation {
+        final String requestId;
+        final byte[] event;
+        final CompletableFuture<InvocationResult> result = new CompletableFuture<>();
+        volatile long dispatchedNanos;
+
+        PendingInvocation(String requestId, byte[] event) {
+            this.requestId = requestId;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Runs a Lambda function against the emulator and prints the throughput and latency of its invocations. The
+     * following options are supported:
+     * <ul>
+     *     <li>{@code -handler <class>::<method>} - the handler of the function (required unless the runtime is
+     *     external).</li>
+     *     <li>{@code -taskRoot <dir>} - the directory of the function's classes and jars (defaults to the current
+     *     directory).</li>
+     *     <li>{@code -events <file>} - a file with one event per line, which are sent in turn (defaults to a single
+     *     {@code {}} event).</li>
+     *     <li>{@code -invocations <n>} - the number of measured invocations (defaults to 1000).</li>
+     *     <li>{@code -warmup <n>} - the number of invocations before those that are measured (defaults to 0).</li>
+     *     <li>{@code -latencyMs <ms>} - the latency added to every request made by the runtime (defaults to 0).</li>
+     *     <li>{@code -timeoutMs <ms>} - the timeout of the function (defaults to 3000).</li>
+     *     <li>{@code -port <port>} - the port of the emulator (defaults to an ephemeral port).</li>
+     *     <li>{@code -runtime <in-process|external>} - whether the emulator runs the bootstrap itself (the default)
+     *     or waits for a runtime started separately, e.g. a jlinked runtime image, to connect to it (in which case
+     *     {@code -handler} and {@code -taskRoot} are not used).</li>
+     *     <li>{@code -concurrency <n>} - the number of events in flight at a time (defaults to 1, as Lambda sends an
+     *     execution environment one event at a time). The in-process runtime is run with
+     *     {@code LAMBDA_RUNTIME_CONCURRENCY} set to it.</li>
+     * </ul>
+     * Any other environment variables of the runtime (e.g. {@code LAMBDA_RUNTIME_CLIENT}) are taken from the
+     * environment of this process.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+        String handler = options.get("handler");
+        boolean externalRuntime = "external".equals(options.get("runtime"));
+        if (handler == null && !externalRuntime) {
+            System.err.println("Usage: RuntimeApiEmulator -handler <class>::<method> [-taskRoot <dir>] " +
+                    "[-events <file>] [-invocations <n>] [-warmup <n>] [-latencyMs <ms>] [-timeoutMs <ms>] " +
+                    "[-port <port>] [-runtime in-process|external] [-concurrency <n>]");
+            System.exit(2);
+        }
+        String taskRoot = Paths.get(options.getOrDefault("taskRoot", ".")).toAbsolutePath().toString();
+        List<byte[]> events = new ArrayList<>();
+        if (options.containsKey("events")) {
+            for (String line : Files.readAllLines(Paths.get(options.get("events")), StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    events.add(line.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (events.isEmpty()) {
+            events.add("{}".getBytes(StandardCharsets.UTF_8));
+        }
+        int invocations = Integer.parseInt(options.getOrDefault("invocations", "1000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "0"));
+        int concurrency = Math.max(1, Integer.parseInt(options.getOrDefault("concurrency", "1")));
+
+        try (RuntimeApiEmulator emulator = start(Integer.parseInt(options.getOrDefault("port", "0")))) {
+            emulator.setLatency(Duration.ofMillis(Long.parseLong(options.getOrDefault("latencyMs", "0"))));
+            emulator.setTimeout(Duration.ofMillis(Long.parseLong(options.getOrDefault("timeoutMs", "3000"))));
+            Thread bootstrap = null;
+            if (externalRuntime) {
+                System.out.println("Waiting for a runtime with AWS_LAMBDA_RUNTIME_API=" + emulator.getRuntimeApi());
+            } else {
+                bootstrap = emulator.startBootstrap(taskRoot, handler, concurrency == 1 ? Map.of() :
+                        Map.of("LAMBDA_RUNTIME_CONCURRENCY", String.valueOf(concurrency)));
+            }
+
+            long[] latencies = new long[invocations];
+            int errors = 0;
+            long start = 0;
+            try {
+                // Up to concurrency events are in flight, and they complete in (about) the order they were sent
+                Deque<CompletableFuture<InvocationResult>> sent = new ArrayDeque<>();
+                int queued = 0;
+                int completed = 0;
+                while (completed < warmup + invocations) {
+                    // The measured invocations are only sent once the warmup invocations have completed
+                    if (queued < warmup + invocations && sent.size() < concurrency &&
+                            (queued < warmup || completed >= warmup)) {
+                        if (queued == warmup) {
+                            start = System.nanoTime();
+                        }
+                        sent.add(emulator.invoke(events.get(queued++ % events.size())));
+                        continue;
+                    }
+                    InvocationResult result = sent.remove().get();
+                    if (completed >= warmup) {
+                        latencies[completed - warmup] = result.getLatencyNanos();
+                        if (result.isError()) {
+                            errors++;
+                        }
+                    }
+                    completed++;
+                }
+            } catch (ExecutionException ex) {
+                System.err.println(ex.getCause().getMessage());
+                System.exit(1);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            if (bootstrap != null) {
+                bootstrap.interrupt();
+                bootstrap.join(TimeUnit.SECONDS.toMillis(5));
+            }
+
+            Arrays.sort(latencies);
+            System.out.printf("invocations: %d (%d errors)%n", invocations, errors);
+            System.out.printf("throughput: %.1f invocations/s%n", invocations / (elapsedNanos / 1e9));
+            System.out.printf("latency (us): p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    percentile(latencies, 1));
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(index, 0)] / 1000d;
+    }
+}
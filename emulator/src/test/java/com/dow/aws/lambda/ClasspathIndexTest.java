@@ -0,0 +1,185 @@
+package com.dow.aws.lambda;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests {@link ClasspathIndex} and {@link IndexedClassLoader} against a task root of generated classes, which are
+ * not on the test class path so that the class loader has to find them itself.
+ */
+class ClasspathIndexTest {
+    @TempDir
+    Path taskRoot;
+
+    private IndexedClassLoader classLoader;
+
+    @BeforeEach
+    void createTaskRoot() throws IOException {
+        writeClass(taskRoot, "fn.Handler");
+        Files.createDirectories(taskRoot.resolve("lib"));
+        writeJar(taskRoot.resolve("lib/a.jar"), Map.of("dep/a/A.class", classBytes("dep.a.A"),
+                "dep/a/a.properties", "a=1".getBytes(StandardCharsets.UTF_8)));
+        writeJar(taskRoot.resolve("lib/b.jar"), Map.of("dep/b/B.class", classBytes("dep.b.B")));
+    }
+
+    @AfterEach
+    void closeClassLoader() throws IOException {
+        if (classLoader != null) {
+            classLoader.close();
+        }
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        writeIndex();
+
+        ClasspathIndex index = ClasspathIndex.load(taskRoot.toString());
+        assertNotNull(index);
+        assertArrayEquals(new int[]{0}, index.getEntries("fn"));
+        assertArrayEquals(new int[]{1}, index.getEntries("dep/a"));
+        assertArrayEquals(new int[]{2}, index.getEntries("dep/b"));
+        assertNull(index.getEntries("META-INF"));
+
+        classLoader = new IndexedClassLoader(index.getUrls(taskRoot.toString()), index);
+        assertSame(classLoader, classLoader.loadClass("fn.Handler").getClassLoader());
+        assertSame(classLoader, classLoader.loadClass("dep.a.A").getClassLoader());
+        assertSame(classLoader, classLoader.loadClass("dep.b.B").getClassLoader());
+        URL resource = classLoader.getResource("dep/a/a.properties");
+        assertNotNull(resource);
+        assertEquals("jar", resource.getProtocol());
+        assertNull(classLoader.getResource("dep/a/missing.properties"));
+        assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("dep.c.Missing"));
+    }
+
+    @Test
+    void removedJar() throws IOException {
+        writeIndex();
+        Files.delete(taskRoot.resolve("lib/b.jar"));
+
+        assertNull(ClasspathIndex.load(taskRoot.toString()));
+    }
+
+    @Test
+    void resizedJar() throws IOException {
+        writeIndex();
+        writeJar(taskRoot.resolve("lib/b.jar"), Map.of("dep/b/B.class", classBytes("dep.b.B"),
+                "dep/b/C.class", classBytes("dep.b.C")));
+
+        assertNull(ClasspathIndex.load(taskRoot.toString()));
+    }
+
+    @Test
+    void newPackage() throws Exception {
+        writeIndex();
+        writeClass(taskRoot, "fn.added.Helper");
+
+        ClasspathIndex index = ClasspathIndex.load(taskRoot.toString());
+        assertNotNull(index);
+        classLoader = new IndexedClassLoader(index.getUrls(taskRoot.toString()), index);
+        assertSame(classLoader, classLoader.loadClass("fn.added.Helper").getClassLoader());
+    }
+
+    @Test
+    void addedJar() throws Exception {
+        writeIndex();
+        writeJar(taskRoot.resolve("lib/c.jar"), Map.of("dep/c/C.class", classBytes("dep.c.C")));
+
+        ClasspathIndex index = ClasspathIndex.load(taskRoot.toString());
+        assertNotNull(index);
+        classLoader = new IndexedClassLoader(index.getUrls(taskRoot.toString()), index);
+        assertSame(classLoader, classLoader.loadClass("dep.c.C").getClassLoader());
+        assertSame(classLoader, classLoader.loadClass("dep.a.A").getClassLoader());
+    }
+
+    @Test
+    void malformedIndex() throws IOException {
+        Path file = taskRoot.resolve(ClasspathIndex.FILE_NAME);
+        String[] malformed = {
+                "",
+                "not an index\n",
+                "classpath-index 1\n@.\n@lib/a.jar\nfn\t0\n",
+                "classpath-index 2\n@.\nfn\t0\n",
+                "classpath-index 2\n@.\nfn\t1\nend\n",
+                "classpath-index 2\n@.\nfn\tx\nend\n",
+                "classpath-index 2\n@.\nfn\nend\n",
+                "classpath-index 2\n@lib/a.jar\t1\nend\n",
+                "classpath-index 2\n@.\n@lib/a.jar\nend\n",
+                "classpath-index 2\nend\n"
+        };
+        for (String index : malformed) {
+            Files.writeString(file, index);
+            assertNull(ClasspathIndex.load(taskRoot.toString()), index);
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        ClasspathIndex.build(taskRoot, taskRoot.resolve("lib")).write(taskRoot.resolve(ClasspathIndex.FILE_NAME));
+    }
+
+    private static void writeClass(Path root, String className) throws IOException {
+        Path file = root.resolve(className.replace('.', '/') + ".class");
+        Files.createDirectories(file.getParent());
+        Files.write(file, classBytes(className));
+    }
+
+    private static void writeJar(Path jar, Map<String, byte[]> entries) throws IOException {
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jarOut.putNextEntry(new ZipEntry(entry.getKey()));
+                jarOut.write(entry.getValue());
+                jarOut.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Returns the class file of an empty public class with the given name.
+     */
+    private static byte[] classBytes(String className) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        // The constant pool: the names of the class and its superclass, and the classes themselves
+        out.writeShort(5);
+        out.writeByte(1);
+        out.writeUTF(className.replace('.', '/'));
+        out.writeByte(7);
+        out.writeShort(1);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        out.writeByte(7);
+        out.writeShort(3);
+        // public super, this class, the superclass, and no interfaces, fields, methods or attributes
+        out.writeShort(0x0021);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+}
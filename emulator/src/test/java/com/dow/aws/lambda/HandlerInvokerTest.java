@@ -0,0 +1,138 @@
+package com.dow.aws.lambda;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests binding handler methods of a class that, as in the Lambda execution environment, is loaded from the task
+ * root by its own {@link URLClassLoader} rather than from the class path.
+ */
+class HandlerInvokerTest {
+    private static final String HANDLER_SOURCE = String.join("\n",
+            "package fn;",
+            "",
+            "import java.io.IOException;",
+            "import java.io.InputStream;",
+            "import java.io.OutputStream;",
+            "import java.nio.charset.StandardCharsets;",
+            "",
+            "public class Handler {",
+            "    public void echo(InputStream input, OutputStream output) throws IOException {",
+            "        input.transferTo(output);",
+            "    }",
+            "",
+            "    public void context(InputStream input, OutputStream output, String context) throws IOException {",
+            "        output.write(context.getBytes(StandardCharsets.UTF_8));",
+            "    }",
+            "",
+            "    public void fail(InputStream input, OutputStream output) throws IOException {",
+            "        throw new IOException(\"failed\");",
+            "    }",
+            "",
+            "    public String upperCase(String input) {",
+            "        return input.toUpperCase();",
+            "    }",
+            "}",
+            "");
+    private static final String LOOKUP_CLASS_NAME = "fn.LambdaRuntime$$Lookup";
+    private static final String IMAGE_CODE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+    @TempDir
+    Path taskRoot;
+
+    private URLClassLoader classLoader;
+    private Class<?> handlerClass;
+    private Object handler;
+
+    @BeforeEach
+    void loadHandler() throws Exception {
+        Path source = taskRoot.resolve("src/fn/Handler.java");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, HANDLER_SOURCE);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", taskRoot.toString(), source.toString()));
+
+        classLoader = URLClassLoader.newInstance(new URL[]{taskRoot.toUri().toURL()});
+        handlerClass = classLoader.loadClass("fn.Handler");
+        assertSame(classLoader, handlerClass.getClassLoader());
+        handler = handlerClass.getConstructor().newInstance();
+    }
+
+    @AfterEach
+    void closeClassLoader() throws IOException {
+        classLoader.close();
+    }
+
+    @Test
+    void bindsWithLambdaMetafactory() throws Exception {
+        assertThrows(ClassNotFoundException.class, () -> Class.forName(LOOKUP_CLASS_NAME, false, classLoader));
+
+        HandlerInvoker echo = bind("echo");
+        // The metafactory is handed a lookup on a class defined in the handler's package
+        Class<?> lookupClass = Class.forName(LOOKUP_CLASS_NAME, false, classLoader);
+        assertSame(classLoader, lookupClass.getClassLoader());
+        assertEquals("event", invoke(echo, "event"));
+
+        assertInvokes();
+        // The lookup class is defined once and then reused
+        assertSame(lookupClass, Class.forName(LOOKUP_CLASS_NAME, false, classLoader));
+    }
+
+    @Test
+    void bindsWithMethodHandle() throws Exception {
+        // As in a native image, where the metafactory can not spin classes
+        System.setProperty(IMAGE_CODE_PROPERTY, "runtime");
+        try {
+            assertInvokes();
+        } finally {
+            System.clearProperty(IMAGE_CODE_PROPERTY);
+        }
+        assertThrows(ClassNotFoundException.class, () -> Class.forName(LOOKUP_CLASS_NAME, false, classLoader));
+    }
+
+    private void assertInvokes() throws Exception {
+        assertEquals("event", invoke(bind("echo"), "event"));
+        String context = invoke(bind("context"), "");
+        assertTrue(context.contains("\"awsRequestId\": \"id-1\""), context);
+        assertTrue(context.contains("\"functionName\": \"f\""), context);
+        assertEquals("\"EVENT\"", invoke(bind("upperCase"), "\"event\""));
+        // Exceptions thrown by the handler method are not wrapped
+        IOException ex = assertThrows(IOException.class, () -> invoke(bind("fail"), ""));
+        assertEquals("failed", ex.getMessage());
+    }
+
+    private HandlerInvoker bind(String methodName) throws IllegalAccessException {
+        Method method = Bootstrap.getHandlerMethod(handlerClass, methodName);
+        assertNotNull(method, methodName);
+        return HandlerInvoker.bind(handlerClass, method, JsonSerializer::new);
+    }
+
+    private String invoke(HandlerInvoker invoker, String event) throws Exception {
+        Invocation invocation = new Invocation("id-1", null, "arn:aws:lambda:eu-west-1:123456789012:function:f",
+                null, null, null, null, -1);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        invoker.invoke(handler, new ByteArrayInputStream(event.getBytes(StandardCharsets.UTF_8)), output,
+                new LambdaContext(invocation));
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,206 @@
+package com.dow.aws.lambda;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the JSON reader and writer of {@link JsonSerializer}.
+ */
+class JsonSerializerTest {
+    private final JsonSerializer serializer = new JsonSerializer();
+
+    @Test
+    void readsEscapes() throws IOException {
+        assertEquals("\"\\/\b\f\n\r\tA\u00e9", read("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0041\\u00E9\"", String.class));
+    }
+
+    @Test
+    void writesEscapes() throws IOException {
+        assertEquals("\"a\\\"b\\\\c\\n\\r\\t\\u0001\\u001f/\"", write("a\"b\\c\n\r\t\u0001\u001f/", String.class));
+    }
+
+    @Test
+    void readsAndWritesSurrogatePairs() throws IOException {
+        String emoji = new String(Character.toChars(0x1F600));
+        // Escaped as a surrogate pair, and as the four bytes of its UTF-8 encoding
+        assertEquals(emoji, read("\"\\ud83d\\ude00\"", String.class));
+        assertEquals("x" + emoji + "\u00e9", read("\"x" + emoji + "\u00e9\"", String.class));
+
+        byte[] written = writeBytes(emoji, String.class);
+        assertArrayEquals(("\"" + emoji + "\"").getBytes(StandardCharsets.UTF_8), written);
+        assertEquals(6, written.length);
+        // An unpaired surrogate has no UTF-8 encoding
+        assertEquals("\"a?b\"", write("a\ud83db", String.class));
+    }
+
+    @Test
+    void readsNumbers() throws IOException {
+        assertEquals(-42, (int) read("-42", int.class));
+        assertEquals(9007199254740993L, (long) read("9007199254740993", long.class));
+        assertEquals(1500.0, (double) read("1.5e3", double.class));
+        assertEquals(0.01, (double) read("1E-2", Double.class));
+        assertEquals(-2.5f, (float) read("-25e-1", float.class));
+        assertEquals(new BigDecimal("1.10"), read("1.10", BigDecimal.class));
+        assertEquals(new BigInteger("123456789012345678901234567890"),
+                read("123456789012345678901234567890", BigInteger.class));
+        // Some AWS events send numbers as strings
+        assertEquals(42, (int) read("\"42\"", Integer.class));
+        assertEquals("12.5", read("12.5", String.class));
+    }
+
+    @Test
+    void readsNumbersOfUntypedValues() throws IOException {
+        assertEquals(List.of(1L, -9223372036854775808L, new BigInteger("9223372036854775808"),
+                new BigDecimal("1.5"), new BigDecimal("2E+3")),
+                read("[1, -9223372036854775808, 9223372036854775808, 1.5, 2e3]", Object.class));
+    }
+
+    @Test
+    void failsOnNumbersThatOverflow() throws IOException {
+        assertThrows(IOException.class, () -> read("2147483648", int.class));
+        assertThrows(IOException.class, () -> read("9223372036854775808", long.class));
+        assertThrows(IOException.class, () -> read("128", byte.class));
+        assertThrows(IOException.class, () -> read("1.5", int.class));
+        assertThrows(IOException.class, () -> read("1e", double.class));
+        // Doubles overflow to infinity, which is written as a string as JSON has no number for it
+        assertEquals(Double.POSITIVE_INFINITY, (double) read("1e400", double.class));
+        assertEquals("\"Infinity\"", write(Double.POSITIVE_INFINITY, double.class));
+    }
+
+    @Test
+    void writesNumbers() throws IOException {
+        assertEquals("[1,-2,1.5,1.0E20,12345678901234567890]", write(Arrays.asList(1, -2L, 1.5, 1e20,
+                new BigInteger("12345678901234567890")), List.class));
+    }
+
+    @Test
+    void readsNulls() throws IOException {
+        assertEquals(0, (int) read("null", int.class));
+        assertEquals(false, read("null", boolean.class));
+        assertNull(read("null", Integer.class));
+        assertNull(read("null", Bean.class));
+        // Functions can be invoked without a payload
+        assertNull(read("", Bean.class));
+        assertEquals(0L, (long) read(" ", long.class));
+        assertEquals(Arrays.asList("a", null), read("[\"a\",null]", List.class));
+
+        Bean bean = read("{\"name\":null,\"count\":null,\"tags\":null}", Bean.class);
+        assertNull(bean.name);
+        assertEquals(0, bean.count);
+        assertNull(bean.tags);
+    }
+
+    @Test
+    void writesNulls() throws IOException {
+        assertEquals("null", write(null, Bean.class));
+        // Properties that are null are left out
+        Bean bean = new Bean();
+        bean.count = 3;
+        assertEquals("{\"count\":3}", write(bean, Bean.class));
+        // Unlike entries of maps
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", null);
+        assertEquals("{\"a\":null}", write(map, Map.class));
+    }
+
+    @Test
+    void skipsUnknownFields() throws IOException {
+        Bean bean = read("{\"unknown\":{\"a\":[1,{\"b\":\"}\"},[]],\"c\":null},\"name\":\"n\",\"more\":[true,false," +
+                "null,-1.5e-3,\"]\"],\"count\":2,\"last\":\"\\\"\"}", Bean.class);
+        assertEquals("n", bean.name);
+        assertEquals(2, bean.count);
+    }
+
+    @Test
+    void roundTripsBeans() throws IOException {
+        Bean bean = new Bean();
+        bean.name = "a\u00e9\n";
+        bean.count = -1;
+        bean.tags = List.of("x", "y");
+        bean.child = new Bean();
+        bean.child.name = "child";
+
+        String json = write(bean, Bean.class);
+        assertEquals("{\"name\":\"a\u00e9\\n\",\"count\":-1,\"tags\":[\"x\",\"y\"],\"child\":{\"name\":\"child\"," +
+                "\"count\":0}}", json);
+        Bean read = read(json, Bean.class);
+        assertEquals(bean.name, read.name);
+        assertEquals(bean.tags, read.tags);
+        assertEquals("child", read.child.name);
+    }
+
+    @Test
+    void failsOnMalformedInput() {
+        String[] malformed = {
+                "\"unterminated",
+                "\"bad escape \\x\"",
+                "\"bad unicode escape \\u00g0\"",
+                "{\"name\" \"n\"}",
+                "{\"name\":\"n\",}",
+                "{\"name\":\"n\"",
+                "{name:\"n\"}",
+                "{\"name\":\"n\"} trailing",
+                "{\"unknown\":tru}",
+                "{\"unknown\":[1,]}",
+                "{\"unknown\":[1 2]}",
+                "{\"count\":\"x\"}",
+                "[\"a\"]"
+        };
+        for (String json : malformed) {
+            assertThrows(IOException.class, () -> read(json, Bean.class), json);
+        }
+        assertThrows(IOException.class, () -> readBytes(new byte[]{'"', (byte) 0xC3}, String.class));
+        assertThrows(IOException.class, () -> readBytes(new byte[]{'"', (byte) 0xFF, '"'}, String.class));
+    }
+
+    @Test
+    void failsOnDeeplyNestedInput() throws IOException {
+        String nested = "[".repeat(JsonInput.MAX_DEPTH) + "]".repeat(JsonInput.MAX_DEPTH);
+        assertTrue(read(nested, Object.class) instanceof List);
+        assertThrows(IOException.class, () -> read("[" + nested + "]", Object.class));
+        // Unknown fields are skipped with the same limit
+        assertThrows(IOException.class, () -> read("{\"unknown\":" + "[".repeat(60000) + "}", Bean.class));
+    }
+
+    private <T> T read(String json, Type type) throws IOException {
+        return readBytes(json.getBytes(StandardCharsets.UTF_8), type);
+    }
+
+    private <T> T readBytes(byte[] json, Type type) throws IOException {
+        return serializer.<T>reader(type).read(new ByteArrayInputStream(json));
+    }
+
+    private String write(Object value, Type type) throws IOException {
+        return new String(writeBytes(value, type), StandardCharsets.UTF_8);
+    }
+
+    private byte[] writeBytes(Object value, Type type) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.writer(type).write(value, out);
+        return out.toByteArray();
+    }
+
+    public static class Bean {
+        public String name;
+        public int count;
+        public List<String> tags;
+        public Bean child;
+    }
+}
@@ -0,0 +1,428 @@
+package com.dow.aws.lambda;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the HTTP handling of {@link SocketRuntimeApiClient} against a server that replies with scripted responses
+ * and records the requests it receives.
+ */
+class SocketRuntimeApiClientTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final String NEXT = "GET /2018-06-01/runtime/invocation/next HTTP/1.1";
+    private static final String ACCEPTED = "HTTP/1.1 202 Accepted\r\nContent-Length: 15\r\n\r\n{\"status\":\"OK\"}";
+
+    private ScriptedServer server;
+    private SocketRuntimeApiClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new ScriptedServer();
+        client = new SocketRuntimeApiClient(new RuntimeEndpoints("127.0.0.1:" + server.getPort()));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void next() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\n" +
+                "lambda-runtime-aws-request-id: id-1\r\n" +
+                "Lambda-Runtime-Deadline-Ms:\t1600000000000 \r\n" +
+                "LAMBDA-RUNTIME-INVOKED-FUNCTION-ARN:arn:aws:lambda:eu-west-1:123456789012:function:f\r\n" +
+                "Lambda-Runtime-Trace-Id: Root=1-5f84c7a1-1234567890abcdef12345678\r\n" +
+                "Lambda-Runtime-Client-Context-Extra: ignored\r\n" +
+                "Date: Thu, 15 Oct 2020 12:00:00 GMT\r\n" +
+                "Content-Length: 7\r\n" +
+                "\r\n" +
+                "{\"a\":1}");
+
+        Invocation invocation = client.next();
+        assertEquals("id-1", invocation.getRequestId());
+        assertEquals(1600000000000L, invocation.getDeadlineMillis());
+        assertEquals("arn:aws:lambda:eu-west-1:123456789012:function:f", invocation.getInvokedFunctionArn());
+        assertEquals("Root=1-5f84c7a1-1234567890abcdef12345678", invocation.getTraceId());
+        assertNull(invocation.getClientContext());
+        assertNull(invocation.getCognitoIdentity());
+        assertEquals(7, invocation.getContentLength());
+        assertEquals("{\"a\":1}", new String(invocation.getBody().readAllBytes(), StandardCharsets.UTF_8));
+
+        Request request = server.takeRequest();
+        assertEquals(NEXT, request.line);
+        assertEquals("127.0.0.1:" + server.getPort(), request.headers.get("host"));
+    }
+
+    @Test
+    void nextWithLargeEvent() throws Exception {
+        byte[] event = new byte[200000];
+        Arrays.fill(event, (byte) 'x');
+        server.respond("HTTP/1.1 200 OK\r\nLambda-Runtime-Aws-Request-Id: id-1\r\nContent-Length: " + event.length +
+                "\r\n\r\n" + new String(event, StandardCharsets.US_ASCII));
+        server.respond("HTTP/1.1 200 OK\r\nLambda-Runtime-Aws-Request-Id: id-2\r\nContent-Length: 0\r\n\r\n");
+
+        assertArrayEquals(event, client.next().getBody().readAllBytes());
+        // Headers of a previous event are not carried over
+        Invocation invocation = client.next();
+        assertEquals("id-2", invocation.getRequestId());
+        assertEquals(0, invocation.getBody().readAllBytes().length);
+        assertEquals(0, invocation.getDeadlineMillis());
+    }
+
+    @Test
+    void nextWithErrorStatus() throws Exception {
+        server.respond("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 5\r\n\r\nerror");
+
+        IOException ex = assertThrows(IOException.class, () -> client.next());
+        assertTrue(ex.getMessage().contains("500"), ex.getMessage());
+    }
+
+    @Test
+    void malformedResponseHead() throws Exception {
+        String[] malformed = {
+                "HTTP/1.1\r\nContent-Length: 0\r\n\r\n",
+                "HTTP/1.1 2x0 OK\r\nContent-Length: 0\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nContent-Length: 1x\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nContent-Length:\r\n\r\n"
+        };
+        for (String response : malformed) {
+            server.respond(response);
+            assertThrows(IOException.class, () -> client.next(), response);
+        }
+    }
+
+    @Test
+    void chunkedResponse() {
+        server.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n2\r\n{}\r\n0\r\n\r\n");
+
+        IOException ex = assertThrows(IOException.class, () -> client.next());
+        assertTrue(ex.getMessage().contains("chunked"), ex.getMessage());
+    }
+
+    @Test
+    void postResponse() throws Exception {
+        server.respond(ACCEPTED);
+        server.respond("HTTP/1.1 413 Payload Too Large\r\nContent-Length: 0\r\n\r\n");
+
+        ResponseBuffer response = new ResponseBuffer(4);
+        response.write("{\"result\":\"\u00e9\"}".getBytes(StandardCharsets.UTF_8));
+        client.postResponse("id-1", response);
+
+        Request request = server.takeRequest();
+        assertEquals("POST /2018-06-01/runtime/invocation/id-1/response HTTP/1.1", request.line);
+        assertEquals(String.valueOf(response.size()), request.headers.get("content-length"));
+        assertArrayEquals(response.toByteArray(), request.body);
+
+        IOException ex = assertThrows(IOException.class, () -> client.postResponse("id-2", response));
+        assertTrue(ex.getMessage().contains("413"), ex.getMessage());
+    }
+
+    @Test
+    void postErrors() throws Exception {
+        server.respond(ACCEPTED);
+        server.respond(ACCEPTED);
+
+        client.postInvocationError("id-1", "{\"errorMessage\":\"m\"}");
+        Request request = server.takeRequest();
+        assertEquals("POST /2018-06-01/runtime/invocation/id-1/error HTTP/1.1", request.line);
+        assertEquals("application/json", request.headers.get("content-type"));
+        assertEquals("{\"errorMessage\":\"m\"}", new String(request.body, StandardCharsets.UTF_8));
+
+        client.postInitError("{}");
+        assertEquals("POST /2018-06-01/runtime/init/error HTTP/1.1", server.takeRequest().line);
+
+        // The request id is part of the request line
+        assertThrows(IOException.class, () -> client.postInvocationError("id 1\r\nX: y", "{}"));
+    }
+
+    @Test
+    void reusesConnection() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            server.respond("HTTP/1.1 200 OK\r\nLambda-Runtime-Aws-Request-Id: id-" + i +
+                    "\r\nContent-Length: 2\r\n\r\n{}");
+            server.respond(ACCEPTED);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Invocation invocation = client.next();
+            ResponseBuffer response = new ResponseBuffer(2);
+            response.write(invocation.getBody().readAllBytes());
+            client.postResponse(invocation.getRequestId(), response);
+        }
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    void reconnectsAfterConnectionClose() throws Exception {
+        server.respond("HTTP/1.1 202 Accepted\r\nConnection: close\r\nContent-Length: 0\r\n\r\n");
+        server.respond("HTTP/1.0 202 Accepted\r\nContent-Length: 0\r\n\r\n");
+        server.respond(ACCEPTED);
+
+        client.postInitError("{}");
+        client.postInitError("{}");
+        client.postInitError("{}");
+        assertEquals(3, server.getConnections());
+    }
+
+    @Test
+    void reconnectsWhenIdleConnectionWasClosed() throws Exception {
+        server.respond(ACCEPTED);
+        server.closeConnection();
+        server.respond("HTTP/1.1 200 OK\r\nLambda-Runtime-Aws-Request-Id: id-1\r\nContent-Length: 0\r\n\r\n");
+
+        client.restoreNext();
+        assertEquals("GET /2018-06-01/runtime/restore/next HTTP/1.1", server.takeRequest().line);
+        server.awaitClosedConnection();
+        // The runtime API closed the connection that was kept open, so the event is requested again on a new one
+        assertEquals("id-1", client.next().getRequestId());
+        assertEquals(2, server.getConnections());
+    }
+
+    @Test
+    void streamResponse() throws Exception {
+        server.respond(ACCEPTED);
+
+        ResponseStream stream = client.streamResponse("id-1");
+        assertFalse(stream.isStarted());
+        stream.write('[');
+        stream.flush();
+        assertTrue(stream.isStarted());
+        byte[] large = new byte[100000];
+        Arrays.fill(large, (byte) '1');
+        stream.write(large);
+        stream.write(']');
+        assertEquals(large.length + 2, stream.getBytesWritten());
+        stream.close();
+
+        Request request = server.takeRequest();
+        assertEquals("POST /2018-06-01/runtime/invocation/id-1/response HTTP/1.1", request.line);
+        assertEquals("streaming", request.headers.get("lambda-runtime-function-response-mode"));
+        assertEquals("chunked", request.headers.get("transfer-encoding"));
+        assertEquals("Lambda-Runtime-Function-Error-Type, Lambda-Runtime-Function-Error-Body",
+                request.headers.get("trailer"));
+        assertEquals("[" + new String(large, StandardCharsets.US_ASCII) + "]",
+                new String(request.body, StandardCharsets.US_ASCII));
+        assertTrue(request.trailers.isEmpty(), request.trailers::toString);
+        assertThrows(IOException.class, () -> stream.write('x'));
+    }
+
+    @Test
+    void streamEmptyResponse() throws Exception {
+        server.respond(ACCEPTED);
+
+        client.streamResponse("id-1").close();
+
+        Request request = server.takeRequest();
+        assertEquals("chunked", request.headers.get("transfer-encoding"));
+        assertEquals(0, request.body.length);
+    }
+
+    @Test
+    void abortStreamedResponse() throws Exception {
+        server.respond(ACCEPTED);
+        server.respond(ACCEPTED);
+
+        ResponseStream stream = client.streamResponse("id-1");
+        stream.write("partial".getBytes(StandardCharsets.US_ASCII));
+        stream.flush();
+        stream.abort(new IllegalStateException("failed"));
+
+        Request request = server.takeRequest();
+        assertEquals("partial", new String(request.body, StandardCharsets.US_ASCII));
+        assertEquals(IllegalStateException.class.getName(),
+                request.trailers.get("lambda-runtime-function-error-type"));
+        String errorBody = request.trailers.get("lambda-runtime-function-error-body");
+        assertNotNull(errorBody);
+        assertEquals(Json.error("failed", IllegalStateException.class.getName()),
+                new String(Base64.getDecoder().decode(errorBody), StandardCharsets.UTF_8));
+
+        // A stream that has not started sends nothing, so the error can still be posted to the error resource
+        ResponseStream unstarted = client.streamResponse("id-2");
+        unstarted.write('x');
+        unstarted.abort(new IllegalStateException("failed"));
+        assertFalse(unstarted.isStarted());
+        client.postInvocationError("id-2", "{}");
+        assertEquals("POST /2018-06-01/runtime/invocation/id-2/error HTTP/1.1", server.takeRequest().line);
+        assertEquals(1, server.getConnections());
+    }
+
+    /**
+     * A request received by the {@link ScriptedServer}, with the names of its headers and trailers in lower case.
+     */
+    private static final class Request {
+        final String line;
+        final Map<String, String> headers;
+        final byte[] body;
+        final Map<String, String> trailers;
+
+        Request(String line, Map<String, String> headers, byte[] body, Map<String, String> trailers) {
+            this.line = line;
+            this.headers = headers;
+            this.body = body;
+            this.trailers = trailers;
+        }
+    }
+
+    /**
+     * A server that answers each request with the next scripted response, and closes the connection instead where
+     * {@link #closeConnection()} was called. Connections are served one at a time.
+     */
+    private static final class ScriptedServer implements AutoCloseable {
+        private static final String CLOSE = "";
+
+        private final ServerSocket serverSocket;
+        private final Thread thread;
+        private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Boolean> closedConnections = new LinkedBlockingQueue<>();
+        private final AtomicInteger connections = new AtomicInteger();
+
+        ScriptedServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            thread = new Thread(this::serve, "scripted-runtime-api");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnections() {
+            return connections.get();
+        }
+
+        void respond(String response) {
+            responses.add(response);
+        }
+
+        void closeConnection() {
+            responses.add(CLOSE);
+        }
+
+        void awaitClosedConnection() throws InterruptedException {
+            assertNotNull(closedConnections.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Connection was not closed");
+        }
+
+        Request takeRequest() throws InterruptedException {
+            Request request = requests.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(request, "No request received");
+            return request;
+        }
+
+        @Override
+        public void close() throws Exception {
+            serverSocket.close();
+            thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+
+        private void serve() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    connections.incrementAndGet();
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    OutputStream out = socket.getOutputStream();
+                    while (true) {
+                        if (CLOSE.equals(responses.peek())) {
+                            responses.remove();
+                            closedConnections.add(true);
+                            break;
+                        }
+                        Request request = readRequest(in);
+                        if (request == null) {
+                            break;
+                        }
+                        requests.add(request);
+                        String response = responses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        if (response == null) {
+                            break;
+                        }
+                        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+                        out.flush();
+                    }
+                } catch (SocketException ex) {
+                    // The server socket was closed, or the client closed the connection
+                } catch (IOException | InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+
+        /**
+         * Reads the next request, returning null if the connection was closed.
+         */
+        private static Request readRequest(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            Map<String, String> headers = readFields(in);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            Map<String, String> trailers = new HashMap<>();
+            if ("chunked".equals(headers.get("transfer-encoding"))) {
+                int size;
+                while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+                    body.write(in.readNBytes(size));
+                    assertEquals("", readLine(in));
+                }
+                trailers = readFields(in);
+            } else if (headers.containsKey("content-length")) {
+                body.write(in.readNBytes(Integer.parseInt(headers.get("content-length"))));
+            }
+            return new Request(line, headers, body.toByteArray(), trailers);
+        }
+
+        private static Map<String, String> readFields(InputStream in) throws IOException {
+            Map<String, String> fields = new HashMap<>();
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                fields.put(line.substring(0, colon).toLowerCase(), line.substring(colon + 1).trim());
+            }
+            return fields;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    return null;
+                }
+                line.append((char) b);
+            }
+            assertEquals('\r', line.charAt(line.length() - 1));
+            return line.substring(0, line.length() - 1);
+        }
+    }
+}
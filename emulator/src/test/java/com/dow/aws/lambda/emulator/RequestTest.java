@@ -0,0 +1,59 @@
+package com.dow.aws.lambda.emulator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestTest {
+    @Test
+    void readsContentLengthBody() throws IOException {
+        InputStream in = input("POST /2018-06-01/runtime/invocation/id/response HTTP/1.1\r\n" +
+                "Host: localhost\r\nContent-Length: 5\r\n\r\nhello" +
+                "GET /2018-06-01/runtime/invocation/next?x=1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        Request first = Request.read(in);
+        assertEquals("POST", first.getMethod());
+        assertEquals("/2018-06-01/runtime/invocation/id/response", first.getPath());
+        assertEquals("localhost", first.getHeader("host"));
+        assertEquals("hello", new String(first.getBody(), StandardCharsets.UTF_8));
+
+        // Requests follow each other on a persistent connection
+        Request second = Request.read(in);
+        assertEquals("GET", second.getMethod());
+        assertEquals("/2018-06-01/runtime/invocation/next", second.getPath());
+        assertEquals(0, second.getBody().length);
+        assertNull(Request.read(in));
+    }
+
+    @Test
+    void readsChunkedBodyAndTrailers() throws IOException {
+        Request request = Request.read(input("POST /response HTTP/1.1\r\nTransfer-Encoding: chunked\r\n" +
+                "Trailer: Lambda-Runtime-Function-Error-Type, Lambda-Runtime-Function-Error-Body\r\n\r\n" +
+                "5\r\nhello\r\na;ext=1\r\n, streamed\r\n0\r\n" +
+                "Lambda-Runtime-Function-Error-Type: java.lang.IllegalStateException\r\n" +
+                "Lambda-Runtime-Function-Error-Body: e30=\r\n\r\n"));
+
+        assertEquals("hello, streamed", new String(request.getBody(), StandardCharsets.UTF_8));
+        assertEquals("java.lang.IllegalStateException", request.getTrailer("Lambda-Runtime-Function-Error-Type"));
+        assertEquals("e30=", request.getTrailer("Lambda-Runtime-Function-Error-Body"));
+        assertNull(request.getHeader("Lambda-Runtime-Function-Error-Type"));
+    }
+
+    @Test
+    void failsOnTruncatedBody() {
+        assertThrows(EOFException.class, () -> Request.read(input("POST /response HTTP/1.1\r\n" +
+                "Transfer-Encoding: chunked\r\n\r\n5\r\nhel")));
+    }
+
+    private static InputStream input(String request) {
+        return new ByteArrayInputStream(request.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
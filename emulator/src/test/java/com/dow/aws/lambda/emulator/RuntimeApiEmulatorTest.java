@@ -0,0 +1,162 @@
+package com.dow.aws.lambda.emulator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the real bootstrap loop in-process against the emulator, with each of the runtime API clients.
+ */
+class RuntimeApiEmulatorTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path taskRoot;
+
+    private RuntimeApiEmulator emulator;
+    private Thread bootstrap;
+
+    @BeforeEach
+    void startEmulator() throws IOException {
+        emulator = RuntimeApiEmulator.start(0);
+    }
+
+    @AfterEach
+    void stopEmulator() throws InterruptedException {
+        // The bootstrap is stopped first, as it would otherwise keep trying to reach the closed emulator
+        if (bootstrap != null) {
+            bootstrap.interrupt();
+            bootstrap.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+        emulator.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"socket", "http"})
+    void bufferedResponse(String client) throws Exception {
+        startBootstrap(Echo.class, client, Map.of());
+
+        for (int i = 0; i < 3; i++) {
+            byte[] event = ("{\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+            InvocationResult result = invoke(event);
+            assertFalse(result.isError(), result::toString);
+            assertArrayEquals(event, result.getBody());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"socket", "http"})
+    void streamedResponse(String client) throws Exception {
+        startBootstrap(Stream.class, client, Map.of("LAMBDA_RESPONSE_MODE", "streaming"));
+
+        InvocationResult result = invoke("{}".getBytes(StandardCharsets.UTF_8));
+        assertFalse(result.isError(), result::toString);
+        assertArrayEquals(Stream.response(), result.getBody());
+    }
+
+    @Test
+    void streamedResponseFailingAfterItStarted() throws Exception {
+        startBootstrap(FailingStream.class, "socket", Map.of("LAMBDA_RESPONSE_MODE", "streaming"));
+
+        InvocationResult result = invoke("{}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(result.isError(), result::toString);
+        assertEquals(IllegalStateException.class.getName(), result.getErrorType());
+        assertTrue(result.getBodyAsString().contains("failed part way"), result::toString);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"socket", "http"})
+    void invocationError(String client) throws Exception {
+        startBootstrap(Failing.class, client, Map.of());
+
+        InvocationResult result = invoke("{}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(result.isError(), result::toString);
+        assertTrue(result.getBodyAsString().contains("RuntimeError"), result::toString);
+        // The event loop carries on after a failed invocation
+        assertTrue(invoke("{}".getBytes(StandardCharsets.UTF_8)).isError());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"socket", "http"})
+    void initError(String client) throws Exception {
+        Map<String, String> env = new HashMap<>(environment(client));
+        bootstrap = emulator.startBootstrap(taskRoot.toString(), "com.example.Missing::handleRequest", env);
+
+        String error = emulator.initError().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(error.contains("InitError"), error);
+        ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> emulator.invoke(new byte[0]).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(ex.getCause().getMessage().contains("Init error"), ex.getCause().getMessage());
+    }
+
+    private void startBootstrap(Class<?> handlerClass, String client, Map<String, String> env) {
+        Map<String, String> bootstrapEnv = new HashMap<>(environment(client));
+        bootstrapEnv.putAll(env);
+        bootstrap = emulator.startBootstrap(taskRoot.toString(), handlerClass.getName() + "::handleRequest",
+                bootstrapEnv);
+    }
+
+    private static Map<String, String> environment(String client) {
+        // The handlers are on the test class path rather than in the (empty) task root
+        return Map.of("LAMBDA_RUNTIME_CLIENT", client, "LAMBDA_CLASS_LOADER", "system",
+                "LAMBDA_STARTUP_PROFILE", "off");
+    }
+
+    private InvocationResult invoke(byte[] event) throws Exception {
+        return emulator.invoke(event).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static class Echo {
+        public void handleRequest(InputStream input, OutputStream output) throws IOException {
+            input.transferTo(output);
+        }
+    }
+
+    public static class Stream {
+        static byte[] response() {
+            // Several chunks of the streamed response
+            return "0123456789abcdef".repeat(8192).getBytes(StandardCharsets.UTF_8);
+        }
+
+        public void handleRequest(InputStream input, OutputStream output) throws IOException {
+            byte[] response = response();
+            for (int off = 0; off < response.length; off += 10000) {
+                output.write(response, off, Math.min(10000, response.length - off));
+                output.flush();
+            }
+        }
+    }
+
+    public static class FailingStream {
+        public void handleRequest(InputStream input, OutputStream output) throws IOException {
+            output.write("partial".getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            throw new IllegalStateException("failed part way");
+        }
+    }
+
+    public static class Failing {
+        public void handleRequest(InputStream input, OutputStream output) {
+            throw new IllegalStateException("failed");
+        }
+    }
+}
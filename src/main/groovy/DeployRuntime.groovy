@@ -3,8 +3,16 @@ import java.nio.file.Files
 import java.io.FileOutputStream;
 import java.net.URL
 import java.io.BufferedInputStream
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.DigestInputStream
+import java.security.MessageDigest
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 import groovy.json.JsonSlurper
+import groovy.transform.Field
 import groovy.transform.ToString
 
 @Grab(group='commons-io', module='commons-io', version='2.8.0')
@@ -19,6 +27,7 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream
 import org.apache.commons.compress.utils.IOUtils
 
 @Grab(group='software.amazon.awssdk', module='lambda', version='2.14.26')
@@ -31,7 +40,6 @@ import software.amazon.awssdk.core.SdkBytes
 import java.nio.file.Path
 import java.util.regex.Matcher
 import java.util.regex.Pattern
-import java.util.stream.Collectors
 
 @ToString
 class Release {
@@ -46,6 +54,7 @@ class Release {
     String link
     String mime
     String extension
+    String checksumLink
     long size
 
     Release(Map releaseMap) {
@@ -112,152 +121,597 @@ def getAdoptJdkReleases(version) {
     def releasesJson = new URL("https://api.github.com/repos/AdoptOpenJDK/openjdk" + version + "-binaries/releases").text
     def releasesMap = new JsonSlurper().parseText(releasesJson)
     def releases = []
+    def checksumLinks = [:]
     releasesMap.each { releaseJson ->
         releaseJson.assets.each { releaseAssetJson ->
             Release release = new Release(releaseAssetJson)
             releases.add(release)
+            if (release.fileName.endsWith(".sha256.txt")) {
+                checksumLinks[release.fileName] = releaseAssetJson.browser_download_url
+            }
         }
     }
+    releases.each { release -> release.checksumLink = checksumLinks[release.fileName + ".sha256.txt"] }
     return releases
 }
 
 /**
- * Gets the root directory of the JDK corresponding to the given Release object. If this release has not been cached
- * then it is first downloaded and extracted.
+ * Returns the AdoptOpenJDK releases in the given mirror directory, i.e. the JDK archives (with the same names as on
+ * GitHub) and their "sha256.txt" checksum files, so that the JDK can be acquired without access to GitHub.
+ *
+ * @param mirrorDir the mirror directory
+ * @return the list of Release objects
+ */
+def getMirrorReleases(mirrorDir) {
+    def releases = []
+    new File(mirrorDir).listFiles().findAll { it.isFile() }.each { file ->
+        Release release = new Release([name: file.getName(), browser_download_url: file.toURI().toString(),
+                                       size: file.length()])
+        def checksumFile = new File(file.getPath() + ".sha256.txt")
+        if (checksumFile.isFile()) {
+            release.checksumLink = checksumFile.toURI().toString()
+        }
+        releases.add(release)
+    }
+    return releases
+}
+
+// The size of the buffers the JDK is downloaded and extracted with
+@Field static final int JDK_BUFFER_SIZE = 1 << 20
+@Field ExecutorService jdkExecutor = Executors.newCachedThreadPool()
+
+/**
+ * Returns the directory inside of ./target/jdkCache for the given release, which is a md5 hash of the release (so it
+ * does not depend on the file name of the release, which is only known once the release has been looked up).
+ *
+ * @param release the release to get the cache directory for
+ * @return the File object of the cache directory
+ */
+def getJdkHashDir(release) {
+    return new File(project.build.directory + "/jdkCache/" + release.toSafeDirectoryName())
+}
+
+/**
+ * Gets the root directory of the JDK corresponding to the given Release object, if it has been downloaded and
+ * extracted before.
  *
  * @param release the release to get the root JDK directory for
- * @return the File object of the root JDK directory
+ * @return the File object of the root JDK directory, or null if the release has not been cached
  */
-def getJdkRootDir(release) {
-    def jdkRootDir = null
-    // See if the requested release has already been downloaded and cached.
-    def jdkCacheDir = new File(project.build.directory + "/jdkCache/")
-    if (!jdkCacheDir.exists()) {
-        System.out.println("First time building or JDK cache (" + jdkCacheDir.getCanonicalPath() + ") was cleaned.")
-        jdkCacheDir.mkdir()
+def getCachedJdkRootDir(release) {
+    def jdkHashDir = getJdkHashDir(release)
+    if (!jdkHashDir.isDirectory()) {
+        return null
     }
+    return Files.newDirectoryStream(jdkHashDir.toPath(), p -> Files.isDirectory(p)).iterator().next().toFile()
+}
 
-    def jdkHashDir = jdkCacheDir.toPath().resolve(release.toSafeDirectoryName()).toFile()
-    if (!jdkHashDir.exists()) {
-        // The requested JDK has not been downloaded before (or was deleted), so download it now.
-        jdkHashDir.mkdir()
-        def jdkArchive = new File(jdkHashDir.getCanonicalPath() + "/" + release.fileName)
-        System.out.println("Downloading JDK: " + release.fileName)
-        jdkArchive.withOutputStream { out ->
-            new URL(release.link).eachByte { b ->
-                out.write(b)
-            }
-        }
+/**
+ * Downloads the given release and extracts it to its directory inside of ./target/jdkCache. The archive is not saved:
+ * it is extracted while it is downloaded, with the download running on its own thread. The SHA-256 checksum of the
+ * archive is verified against the one published with the release (if any) before the JDK is moved into the cache,
+ * so an interrupted or corrupt download is never mistaken for a cached JDK.
+ *
+ * @param release the release to download (which must have a link)
+ */
+def downloadJdk(release) {
+    def jdkHashDir = getJdkHashDir(release)
+    def partialDir = new File(jdkHashDir.getPath() + ".partial")
+    FileUtils.deleteQuietly(partialDir)
+    partialDir.mkdirs()
+
+    String expectedChecksum = null
+    if (release.checksumLink != null) {
+        // The checksum file has the format: <checksum>  <file name>
+        expectedChecksum = new URL(release.checksumLink).text.trim().split(/\s+/)[0].toLowerCase()
+    } else {
+        System.out.println("No checksum was published for: \"" + release.fileName + "\", it will not be verified.")
+    }
 
+    System.out.println("Downloading JDK: " + release.fileName)
+    MessageDigest digest = MessageDigest.getInstance("SHA-256")
+    PipedInputStream pipeIn = new PipedInputStream(JDK_BUFFER_SIZE)
+    PipedOutputStream pipeOut = new PipedOutputStream(pipeIn)
+    Future<?> download = jdkExecutor.submit({
+        def connection = new URL(release.link).openConnection()
+        connection.setConnectTimeout(30_000)
+        connection.setReadTimeout(60_000)
+        try (InputStream input = new DigestInputStream(connection.getInputStream(), digest)
+             OutputStream output = pipeOut) {
+            IOUtils.copy(input, output, JDK_BUFFER_SIZE)
+        }
+    } as Runnable)
+    try (InputStream input = pipeIn) {
         if (release.extension.equalsIgnoreCase("tar.gz")) {
-            jdkRootDir = extractTarGz(jdkHashDir, jdkArchive)
+            extractTarGz(partialDir, input)
         } else if (release.extension.equalsIgnoreCase("zip")) {
-            jdkRootDir = extractZip(jdkHashDir, jdkArchive)
+            extractZip(partialDir, input)
+        } else {
+            throw new IllegalArgumentException("Unsupported JDK archive: " + release.fileName)
+        }
+        // Read whatever follows the end of the archive (e.g. the padding of a tar file), so that the download (and
+        // the checksum) completes
+        input.transferTo(OutputStream.nullOutputStream())
+    } catch (Exception ex) {
+        download.cancel(true)
+        FileUtils.deleteQuietly(partialDir)
+        throw ex
+    }
+    // Rethrows the failure of the download, if it failed (in which case the extraction may not have noticed)
+    download.get()
+
+    String checksum = new BigInteger(1, digest.digest()).toString(16).padLeft(64, "0")
+    if (expectedChecksum != null && checksum != expectedChecksum) {
+        FileUtils.deleteQuietly(partialDir)
+        throw new IllegalStateException("Checksum mismatch for " + release.fileName + ": expected " +
+                expectedChecksum + " but was " + checksum)
+    }
+    FileUtils.deleteQuietly(jdkHashDir)
+    Files.move(partialDir.toPath(), jdkHashDir.toPath(), StandardCopyOption.ATOMIC_MOVE)
+}
+
+/**
+ * Extracts the given "tar.gz" stream to the given directory, keeping the executable permissions and the symbolic
+ * links of its entries. The stream is not closed.
+ *
+ * @param dir the directory to extract to
+ * @param input the tar.gz stream to extract
+ */
+def extractTarGz(dir, input) {
+    TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(
+            new BufferedInputStream(input, JDK_BUFFER_SIZE)))
+    TarArchiveEntry entry
+    while ((entry = tarIn.getNextTarEntry()) != null) {
+        Path path = dir.toPath().resolve(entry.getName())
+        if (entry.isDirectory()) {
+            Files.createDirectories(path)
+        } else if (entry.isSymbolicLink()) {
+            Files.createDirectories(path.getParent())
+            try {
+                Files.createSymbolicLink(path, Paths.get(entry.getLinkName()))
+            } catch (UnsupportedOperationException | IOException ex) {
+                // E.g. on Windows without the privilege to create them, they are not needed to run jlink
+                System.out.println("Skipping symbolic link: " + entry.getName())
+            }
+        } else {
+            Files.createDirectories(path.getParent())
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path.toFile()), 65536)) {
+                IOUtils.copy(tarIn, out, 65536)
+            }
+            if ((entry.getMode() & 0100) != 0) {
+                path.toFile().setExecutable(true, false)
+            }
         }
-    } else {
-        jdkRootDir = Files.newDirectoryStream(jdkHashDir.toPath(), p -> Files.isDirectory(p)).iterator().next().toFile()
     }
-    return jdkRootDir
 }
 
 /**
- * Extracts the given jdkArchive file (which must be a "tar.gz" file) to the given jdkHashDir directory and returns
- * the root directory of the extracted archive.
+ * Extracts the given "zip" stream to the given directory. The stream is not closed.
  *
- * @param jdkHashDir the directory inside of ./target/jdkCache that is a md5 hash of the current release
- * @param jdkArchive the tar.gz file to extract
- * @return the root directory of the extracted archive, e.g. "jdkCache/{md5_hash}/jdk-13+33"
+ * @param dir the directory to extract to
+ * @param input the zip stream to extract
  */
-def extractTarGz(jdkHashDir, jdkArchive) {
-    Path rootDir = null
-    try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(
-            new BufferedInputStream(new FileInputStream(jdkArchive))))) {
-        TarArchiveEntry entry
+def extractZip(dir, input) {
+    ZipArchiveInputStream zipIn = new ZipArchiveInputStream(new BufferedInputStream(input, JDK_BUFFER_SIZE), null,
+            true, true)
+    ArchiveEntry entry
+    while ((entry = zipIn.getNextEntry()) != null) {
+        Path path = dir.toPath().resolve(entry.getName())
+        if (entry.isDirectory()) {
+            Files.createDirectories(path)
+        } else {
+            Files.createDirectories(path.getParent())
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path.toFile()), 65536)) {
+                IOUtils.copy(zipIn, out, 65536)
+            }
+        }
+    }
+}
 
-        while ((entry = (TarArchiveEntry) tarIn.getNextEntry()) != null) {
-            if (entry.isDirectory()) {
-                if (rootDir == null) {
-                    rootDir = jdkHashDir.toPath().resolve(entry.getName())
-                }
-                Files.createDirectory(jdkHashDir.toPath().resolve(entry.getName()));
-            } else {
-                FileOutputStream fos = new FileOutputStream(jdkHashDir.toPath().resolve(entry.getName()).toFile())
-                try (BufferedOutputStream dest = new BufferedOutputStream(fos, 8192)) {
-                    IOUtils.copy(tarIn, dest)
+/**
+ * Finds the modules that the given jars and class directories depend on with jdeps (so that only those need to be
+ * added to the runtime image). A directory that contains jars stands for its jars (e.g. target/lib), any other
+ * directory is a directory of classes.
+ *
+ * @param jdkDir the root directory of the JDK to run jdeps of
+ * @param classPath the comma-separated jars and directories
+ * @param version the version of the JDK of the runtime image, for multi-release jars
+ * @return the comma-separated modules, e.g. "java.base,java.sql"
+ */
+def findModuleDeps(jdkDir, classPath, version) {
+    def inputs = []
+    classPath.split(",").collect { new File(it.trim()) }.each { file ->
+        def jars = file.isDirectory() ? file.listFiles().findAll { it.getName().endsWith(".jar") } : []
+        if (jars) {
+            inputs.addAll(jars.collect { it.getCanonicalPath() }.sort())
+        } else {
+            inputs.add(file.getCanonicalPath())
+        }
+    }
+    // Modular jars are analyzed as modules, whose required modules must be found (on the module path)
+    def command = [jdkDir.toString() + "/bin/jdeps", "--ignore-missing-deps", "--print-module-deps", "-q",
+                   "--multi-release", version.toString(), "--module-path", inputs.join(File.pathSeparator)]
+    command.addAll(inputs)
+    Process jdeps = new ProcessBuilder(command).redirectErrorStream(true).start()
+    def output = jdeps.inputStream.text.readLines().findAll { !it.isBlank() }
+    if (jdeps.waitFor() != 0 || output.isEmpty()) {
+        throw new IllegalStateException("jdeps failed: " + output.join(System.lineSeparator()))
+    }
+    return output.last().trim()
+}
+
+/**
+ * Generates an AppCDS archive of the classes the given Lambda function loads, by running the function in the runtime
+ * image of the layer against the local runtime API emulator, and writes the function's deployment package, with the
+ * archive added, to target/app-cds.
+ *
+ * The archive is a dynamic archive on top of the layer's base archive (lib/server/classes.jsa) and so is only used
+ * with the exact runtime image it was generated with. CDS only archives classes of the built-in class loaders and
+ * only supports jars on the class path, so the classes and resources at the top of the task root are packaged into
+ * a jar, and the launcher puts the function's class path on the JVM's own class path (see app-cds.classpath) for
+ * the runtime to load the handler from the application class loader. The JVM only uses the archive with the class
+ * path it was dumped with, so the function is run from the task root it has in Lambda (/var/task).
+ *
+ * @param functionPackage the deployment package (zip) of the function, as built by the assembly
+ * @param handler the handler of the function, in the format of <class>::<method>
+ * @param events a file with one event per line, which are sent to the function in turn
+ * @param invocations the number of invocations to run before the archive is dumped
+ * @param taskRootPath the task root of the function in Lambda, which must be empty (or not exist) on this machine
+ * @param vmOptions the options of the JVM that the launcher of the layer always uses and the archive must be dumped with
+ */
+def generateAppCdsArchive(functionPackage, handler, events, invocations, taskRootPath, vmOptions) {
+    if (System.properties['os.name'].toLowerCase().contains('windows')) {
+        throw new IllegalStateException("The AppCDS archive has to be generated on Linux (e.g. in WSL), where the " +
+                "function can be run from " + taskRootPath + " with the JVM of the layer")
+    }
+    def taskRoot = new File(taskRootPath)
+    if (taskRoot.exists() && taskRoot.list().length > 0) {
+        throw new IllegalStateException("The task root to run the function from is not empty: " + taskRootPath)
+    }
+    def appCdsDir = new File(project.build.directory + "/app-cds")
+    appCdsDir.deleteDir()
+    appCdsDir.mkdirs()
+    taskRoot.mkdirs()
+    try {
+        extractFunctionPackage(new File(functionPackage), taskRoot)
+
+        // Only the function's own files are packaged into the jar, which is first on the class path (as the task
+        // root is for the runtime's class loader), followed by the top-level jars and the jars of the lib directory
+        def classesJar = new File(taskRoot, "app-cds-classes.jar")
+        try (ZipArchiveOutputStream jarOut = new ZipArchiveOutputStream(classesJar)) {
+            FileUtils.listFiles(taskRoot, null, true).sort().each { file ->
+                def name = taskRoot.toPath().relativize(file.toPath()).toString()
+                if (name.startsWith("lib/") || (!name.contains("/") && name.endsWith(".jar")) ||
+                        name == "classpath.idx") {
+                    return
                 }
+                jarOut.putArchiveEntry(new ZipArchiveEntry(file, name))
+                file.withInputStream { input -> IOUtils.copy(input, jarOut) }
+                jarOut.closeArchiveEntry()
+            }
+        }
+        def classPath = [classesJar.getName()]
+        taskRoot.listFiles().findAll { it.isFile() && it.getName().endsWith(".jar") && it != classesJar }
+                .collect { it.getName() }.sort().each { classPath.add(it) }
+        def libDir = new File(taskRoot, "lib")
+        if (libDir.isDirectory()) {
+            libDir.listFiles().findAll { it.isFile() && it.getName().endsWith(".jar") }
+                    .collect { "lib/" + it.getName() }.sort().each { classPath.add(it) }
+        }
+        new File(taskRoot, "app-cds.classpath").write(classPath.join("\n") + "\n")
+        // The JVM only uses the archive with jars that have the modification times they were archived with, and zip
+        // files only store them to the even second
+        FileUtils.listFiles(taskRoot, null, true).each { file ->
+            file.setLastModified(Math.floorDiv(file.lastModified(), 2000L) * 2000L)
+        }
+
+        def emulatorJar = new File(project.basedir, "emulator/target/emulator.jar")
+        if (!emulatorJar.exists()) {
+            throw new IllegalStateException("The runtime API emulator has not been built, run: " +
+                    "mvn -f emulator/pom.xml package")
+        }
+        int port = new ServerSocket(0).withCloseable { it.getLocalPort() }
+        Process emulator = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-jar",
+                emulatorJar.getCanonicalPath(), "-runtime", "external", "-port", String.valueOf(port),
+                "-events", new File(events).getCanonicalPath(), "-invocations", String.valueOf(invocations))
+                .inheritIO()
+                .start()
+
+        def runtimeCommand = [project.build.directory + "/layer/dist/bin/java",
+                              "-XX:ArchiveClassesAtExit=" + taskRootPath + "/app-cds.jsa", "-Xshare:auto"]
+        runtimeCommand.addAll(vmOptions.split(" "))
+        runtimeCommand.addAll(["-cp", classPath.collect { taskRootPath + "/" + it }.join(":"),
+                               "-m", "com.dow.aws.lambda/com.dow.aws.lambda.Bootstrap"])
+        ProcessBuilder runtimeBuilder = new ProcessBuilder(runtimeCommand).inheritIO()
+        runtimeBuilder.environment().putAll([
+                AWS_LAMBDA_RUNTIME_API: "127.0.0.1:" + port,
+                LAMBDA_TASK_ROOT      : taskRootPath,
+                _HANDLER              : handler,
+                LAMBDA_CLASS_LOADER   : "system"])
+        Process runtime = runtimeBuilder.start()
+        def exitCode = emulator.waitFor()
+        // The archive is dumped when the JVM exits, which it does (like in Lambda) when it is terminated
+        runtime.destroy()
+        runtime.waitFor()
+        if (exitCode != 0) {
+            throw new IllegalStateException("The Lambda function failed against the runtime API emulator (exit " +
+                    "code " + exitCode + ")")
+        }
+        if (!new File(taskRoot, "app-cds.jsa").exists()) {
+            throw new IllegalStateException("The JVM of the layer did not dump the AppCDS archive")
+        }
+
+        def appCdsPackage = new File(appCdsDir, new File(functionPackage).getName())
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(appCdsPackage)) {
+            FileUtils.listFiles(taskRoot, null, true).sort().each { file ->
+                def name = taskRoot.toPath().relativize(file.toPath()).toString()
+                zipOut.putArchiveEntry(new ZipArchiveEntry(file, name))
+                file.withInputStream { input -> IOUtils.copy(input, zipOut) }
+                zipOut.closeArchiveEntry()
             }
         }
-        tarIn.close()
+        System.out.println("Deployment package with AppCDS archive: \"" + appCdsPackage.getCanonicalPath() +
+                "\".")
+    } finally {
+        FileUtils.cleanDirectory(taskRoot)
     }
-    return rootDir.toFile()
 }
 
 /**
- * Extracts the given jdkArchive file (which must be a "zip" file) to the given jdkHashDir directory and returns
- * the root directory of the extracted archive.
+ * Takes a CRaC checkpoint of the given Lambda function, initialized and warmed up in the runtime image of the layer,
+ * and writes the function's deployment package, with the checkpoint added (in the crac directory), to target/crac.
+ * The launcher of the layer restores the runtime from the checkpoint, if the deployment package has one and the JVM
+ * can restore it (which takes a JDK with CRaC support for the runtime image and, as CRaC restores the process with
+ * CRIU, an execution environment that is allowed to do so), and otherwise starts it as usual.
+ *
+ * A checkpoint refers to the files the process had open and mapped (the runtime image, the function's jars) by path,
+ * so the runtime image is copied to where the layer is in Lambda (/opt/dist) and the function is run from its task
+ * root in Lambda (/var/task). Once the checkpoint has been taken it is restored, and the function invoked with the
+ * events, against the local runtime API emulator to check that it works.
  *
- * @param jdkHashDir the directory inside of ./target/jdkCache that is a md5 hash of the current release
- * @param jdkArchive the zip file to extract
- * @return the root directory of the extracted archive, e.g. "jdkCache/{md5_hash}/jdk-13+33
+ * @param functionPackage the deployment package (zip) of the function, as built by the assembly
+ * @param handler the handler of the function, in the format of <class>::<method>
+ * @param events a file with one event per line, which the function is warmed up with before the checkpoint and
+ *     invoked with after the restore
+ * @param invocations the number of warmup invocations before the checkpoint
+ * @param taskRootPath the task root of the function in Lambda, which must be empty (or not exist) on this machine
+ * @param runtimeRootPath the directory of the runtime image in Lambda, which must be empty (or not exist) on this
+ *     machine
  */
-def extractZip(jdkHashDir, jdkArchive) {
-    Path rootDir = null
+def generateCracCheckpoint(functionPackage, handler, events, invocations, taskRootPath, runtimeRootPath) {
+    if (System.properties['os.name'].toLowerCase().contains('windows')) {
+        throw new IllegalStateException("The CRaC checkpoint has to be taken on Linux, where the runtime image can " +
+                "be run from " + runtimeRootPath)
+    }
+    def taskRoot = new File(taskRootPath)
+    def runtimeRoot = new File(runtimeRootPath)
+    [taskRoot, runtimeRoot].each { dir ->
+        if (dir.exists() && dir.list().length > 0) {
+            throw new IllegalStateException("The directory to run the function from is not empty: " + dir)
+        }
+    }
+    def cracDir = new File(project.build.directory + "/crac")
+    cracDir.deleteDir()
+    cracDir.mkdirs()
+    taskRoot.mkdirs()
+    runtimeRoot.mkdirs()
+    try {
+        // Copy the runtime image with its file modes (cp keeps the executable bits that AntBuilder's copy drops)
+        def copyExitCode = new ProcessBuilder("cp", "-a", project.build.directory + "/layer/dist/.",
+                runtimeRoot.getCanonicalPath()).inheritIO().start().waitFor()
+        if (copyExitCode != 0) {
+            throw new IllegalStateException("Could not copy the runtime image to " + runtimeRootPath)
+        }
+        def java = runtimeRootPath + "/bin/java"
+        def imageDir = new File(taskRoot, "crac")
+        if ([java, "-XX:CRaCCheckpointTo=" + imageDir, "-version"].execute().waitFor() != 0) {
+            throw new IllegalStateException("The runtime image does not support CRaC, it has to be linked from a " +
+                    "JDK with CRaC support (see jdk.mirror)")
+        }
+        extractFunctionPackage(new File(functionPackage), taskRoot)
+
+        def emulatorJar = new File(project.basedir, "emulator/target/emulator.jar")
+        if (!emulatorJar.exists()) {
+            throw new IllegalStateException("The runtime API emulator has not been built, run: " +
+                    "mvn -f emulator/pom.xml package")
+        }
+        int port = new ServerSocket(0).withCloseable { it.getLocalPort() }
+        Process emulator = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-jar",
+                emulatorJar.getCanonicalPath(), "-runtime", "external", "-port", String.valueOf(port),
+                "-events", new File(events).getCanonicalPath(), "-invocations", String.valueOf(invocations))
+                .inheritIO()
+                .start()
+        def runtimeEnv = [
+                AWS_LAMBDA_RUNTIME_API: "127.0.0.1:" + port,
+                LAMBDA_TASK_ROOT      : taskRootPath,
+                _HANDLER              : handler]
+
+        // The runtime checkpoints itself once it is initialized and warmed up, before it asks for the first event,
+        // which ends the process
+        ProcessBuilder checkpointBuilder = new ProcessBuilder(java, "-XX:CRaCCheckpointTo=" + imageDir,
+                "-m", "com.dow.aws.lambda/com.dow.aws.lambda.Bootstrap").inheritIO()
+        checkpointBuilder.environment().putAll(runtimeEnv)
+        checkpointBuilder.environment().putAll([
+                LAMBDA_CHECKPOINT        : "crac",
+                LAMBDA_WARMUP_EVENTS     : new File(events).getCanonicalPath(),
+                LAMBDA_WARMUP_INVOCATIONS: String.valueOf(invocations)])
+        checkpointBuilder.start().waitFor()
+        if (!imageDir.isDirectory() || imageDir.list().length == 0) {
+            emulator.destroy()
+            throw new IllegalStateException("The runtime did not take a CRaC checkpoint")
+        }
+
+        ProcessBuilder restoreBuilder = new ProcessBuilder(java, "-XX:CRaCRestoreFrom=" + imageDir).inheritIO()
+        restoreBuilder.environment().putAll(runtimeEnv)
+        Process restored = restoreBuilder.start()
+        def exitCode = emulator.waitFor()
+        restored.destroy()
+        restored.waitFor()
+        if (exitCode != 0) {
+            throw new IllegalStateException("The Lambda function restored from the CRaC checkpoint failed against " +
+                    "the runtime API emulator (exit code " + exitCode + ")")
+        }
+
+        def cracPackage = new File(cracDir, new File(functionPackage).getName())
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(cracPackage)) {
+            FileUtils.listFiles(taskRoot, null, true).sort().each { file ->
+                def name = taskRoot.toPath().relativize(file.toPath()).toString()
+                zipOut.putArchiveEntry(new ZipArchiveEntry(file, name))
+                file.withInputStream { input -> IOUtils.copy(input, zipOut) }
+                zipOut.closeArchiveEntry()
+            }
+        }
+        System.out.println("Deployment package with CRaC checkpoint: \"" + cracPackage.getCanonicalPath() + "\".")
+    } finally {
+        FileUtils.cleanDirectory(taskRoot)
+        FileUtils.cleanDirectory(runtimeRoot)
+    }
+}
+
+/**
+ * Extracts the given deployment package of a Lambda function to the given task root directory, keeping the
+ * modification times of its files.
+ *
+ * @param functionPackage the zip file to extract
+ * @param taskRoot the directory to extract to
+ */
+def extractFunctionPackage(functionPackage, taskRoot) {
     try (ZipArchiveInputStream zipIn = new ZipArchiveInputStream(new BufferedInputStream(
-            new FileInputStream(jdkArchive)), null, true)) {
-        ArchiveEntry entry
-        while ((entry = zipIn.getNextEntry()) != null) {
+            new FileInputStream(functionPackage)))) {
+        ZipArchiveEntry entry
+        while ((entry = zipIn.getNextZipEntry()) != null) {
+            def file = taskRoot.toPath().resolve(entry.getName()).toFile()
             if (entry.isDirectory()) {
-                if (rootDir == null) {
-                    rootDir = jdkHashDir.toPath().resolve(entry.getName())
-                }
-                Files.createDirectory(jdkHashDir.toPath().resolve(entry.getName()))
+                file.mkdirs()
             } else {
-                FileOutputStream fos = new FileOutputStream(jdkHashDir.toPath().resolve(entry.getName()).toFile())
-                try (BufferedOutputStream dest = new BufferedOutputStream(fos, 8192)) {
-                    IOUtils.copy(zipIn, dest)
-                }
+                file.getParentFile().mkdirs()
+                file.withOutputStream { out -> IOUtils.copy(zipIn, out) }
+                file.setLastModified(entry.getTime())
             }
         }
-        zipIn.close()
     }
-    return rootDir.toFile()
 }
 
-// Get the release corresponding to the properties configured in gmaven-plus plugin config (in pom.xml).
-def releases = getAdoptJdkReleases(repoVersion)
-def releaseOpt = releases.stream().filter { r -> r.equals(new Release(type, arch, os,  impl, releaseDate))}.findFirst()
-if (!releaseOpt.isPresent()) {
-    throw new IllegalArgumentException("Could not find JDK release for version = " + repoVersion + ", type = " +
-            type + ", arch = " + arch + ", os = " + os + ", impl = " + impl + ", releaseDate = " + releaseDate)
+/**
+ * Zips the given layer directory.
+ *
+ * @param layerDir the directory with the files of the layer, which are put in /opt in Lambda
+ * @param zipFile the zip file to write
+ */
+def zipLayer(layerDir, zipFile) {
+    zipFile.delete()
+
+    // The reason this is so convoluted and complex (instead of simply using AntBuilder().zip is because we need
+    // the executable permissions of the bootstrap script to be kept during zipping. This method works regardless
+    // of the OS this build is running on. Without these permissions AWS refuses to run the bootstrap script:
+    // Error: Runtime failed to start: fork/exec /opt/bootstrap: permission denied
+    def archiveStream = new FileOutputStream(zipFile);
+    ArchiveOutputStream archive = new ArchiveStreamFactory().createArchiveOutputStream(
+            ArchiveStreamFactory.ZIP, archiveStream)
+    Collection<File> fileList = FileUtils.listFiles(layerDir, null, true)
+    for (File file : fileList) {
+        int index = layerDir.getAbsolutePath().length() + 1
+        String path = file.getCanonicalPath()
+        ZipArchiveEntry entry = new ZipArchiveEntry(path.substring(index))
+        entry.setUnixMode(040777)
+        archive.putArchiveEntry(entry)
+        BufferedInputStream input = new BufferedInputStream(new FileInputStream(file))
+        IOUtils.copy(input, archive)
+        input.close()
+        archive.closeArchiveEntry()
+    }
+    archive.finish()
+    archiveStream.close()
 }
-Release release = releaseOpt.get()
-System.out.println("Found requested release: \"" + release.fileName + "\".")
 
-def jdkRootDir = getJdkRootDir(release)
-System.out.println("JDK root directory: \"" + jdkRootDir + "\".")
+/**
+ * Publishes the given layer zip file as a new version of the "Custom Java Runtime" layer.
+ *
+ * @param zipFile the zip file of the layer
+ * @param description the description of the layer version
+ */
+def publishLayer(zipFile, description) {
+    LambdaClient lambdaClient = LambdaClient.builder()
+            .region(Region.of(awsRegion)).build()
 
-// If we are on Windows then we need to download the JDK that corresponds exactly to the release JDK except
-// instead of for linux, for windows, *and then* use the jlink binary contained in that - not the one in the linux JDK.
-def jdkWinRootDir = null
-if (System.properties['os.name'].toLowerCase().contains('windows')) {
-    def winReleases = releases.stream().filter { r -> r.equals(new Release(type, arch,
-            "windows", impl, releaseDate))}.collect(Collectors.toList())
-
-    def winZipRelease = null
-    winReleases.each { winRelease ->
-        if (winRelease.extension.equalsIgnoreCase("zip")) {
-            System.out.println("Found corresponding Windows (ZIP) release: " + winRelease)
-            winZipRelease = winRelease
-        }
+    // aws lambda publish-layer-version --layer-name Custom Java Runtime --zip-file fileb://layer.zip
+    def publishLayerRequest = PublishLayerVersionRequest.builder()
+            .layerName("Custom Java Runtime")
+            .description(description)
+            .content(LayerVersionContentInput.builder()
+                    .zipFile(SdkBytes.fromByteArray(Files.readAllBytes(zipFile.toPath()))).build()).build()
+
+    def publishLayerResult = lambdaClient.publishLayerVersion(publishLayerRequest)
+
+    System.out.println("Layer Version ARN: " + publishLayerResult.layerVersionArn())
+}
+
+// A native image of the runtime (see the native profile in pom.xml) has the Lambda function compiled in and is the
+// layer's bootstrap itself (/opt/bootstrap), so neither a JDK nor a launcher script goes into the layer
+if (binding.hasVariable("nativeImage") && nativeImage) {
+    jdkExecutor.shutdownNow()
+    def nativeBinary = new File(nativeImage)
+    if (!nativeBinary.isFile()) {
+        throw new IllegalStateException("The native image has not been built: " + nativeImage)
     }
+    def nativeLayerDir = new File(project.build.directory + "/layer")
+    nativeLayerDir.deleteDir()
+    nativeLayerDir.mkdirs()
+    def nativeBootstrap = new File(nativeLayerDir, "bootstrap")
+    Files.copy(nativeBinary.toPath(), nativeBootstrap.toPath())
+    nativeBootstrap.setExecutable(true, false)
+    def nativeZipFile = new File(project.build.directory + "/layer.zip")
+    zipLayer(nativeLayerDir, nativeZipFile)
+    publishLayer(nativeZipFile, "GraalVM native image runtime.")
+    return
+}
 
-    if (winZipRelease == null) {
-        throw new IllegalArgumentException("Could not find corresponding Windows JDK release for version = " + repoVersion + ", type = " +
-                type + ", arch = " + arch + ", os = windows" + ", impl = " + impl, ", extension = zip")
+// The releases corresponding to the properties configured in gmaven-plus plugin config (in pom.xml). If we are on
+// Windows then we also need the JDK that corresponds exactly to the release JDK except instead of for linux, for
+// windows, *and then* use the jlink binary contained in that - not the one in the linux JDK.
+def isWindows = System.properties['os.name'].toLowerCase().contains('windows')
+def wantedRelease = new Release(type, arch, os, impl, releaseDate)
+def wantedWinRelease = isWindows ? new Release(type, arch, "windows", impl, releaseDate) : null
+
+// Releases that have been downloaded before are used from the cache without looking them up, so that the build works
+// offline once the cache has been populated (or with a mirror directory of the releases)
+def downloads = []
+if (getCachedJdkRootDir(wantedRelease) == null || (isWindows && getCachedJdkRootDir(wantedWinRelease) == null)) {
+    def mirror = binding.hasVariable("jdkMirror") && jdkMirror ? jdkMirror : null
+    def releases = mirror != null ? getMirrorReleases(mirror) : getAdoptJdkReleases(repoVersion)
+    def where = mirror != null ? "mirror = " + mirror : "version = " + repoVersion
+    if (getCachedJdkRootDir(wantedRelease) == null) {
+        def release = releases.find { r -> r.link != null && r.equals(wantedRelease) }
+        if (release == null) {
+            throw new IllegalArgumentException("Could not find JDK release for " + where + ", type = " +
+                    type + ", arch = " + arch + ", os = " + os + ", impl = " + impl + ", releaseDate = " + releaseDate)
+        }
+        System.out.println("Found requested release: \"" + release.fileName + "\".")
+        downloads.add(release)
+    }
+    if (isWindows && getCachedJdkRootDir(wantedWinRelease) == null) {
+        def winZipRelease = releases.find { r -> r.link != null && r.equals(wantedWinRelease) &&
+                r.extension.equalsIgnoreCase("zip") }
+        if (winZipRelease == null) {
+            throw new IllegalArgumentException("Could not find corresponding Windows JDK release for " + where +
+                    ", type = " + type + ", arch = " + arch + ", os = windows" + ", impl = " + impl + ", extension = zip")
+        }
+        System.out.println("Found corresponding Windows (ZIP) release: " + winZipRelease)
+        downloads.add(winZipRelease)
     }
-    jdkWinRootDir = getJdkRootDir(winZipRelease)
 }
 
+// Download (and extract) the releases in parallel
+try {
+    downloads.collect { release -> jdkExecutor.submit({ downloadJdk(release) } as Runnable) }.each { it.get() }
+} finally {
+    jdkExecutor.shutdownNow()
+}
+
+def jdkRootDir = getCachedJdkRootDir(wantedRelease)
+System.out.println("JDK root directory: \"" + jdkRootDir + "\".")
+def jdkWinRootDir = isWindows ? getCachedJdkRootDir(wantedWinRelease) : null
+
 // Delete target/dist
 def distributionDir =  new File(project.build.directory + "/dist")
 if (distributionDir.exists()) {
@@ -266,17 +720,60 @@ if (distributionDir.exists()) {
 }
 
 def modulePathSeparator = System.properties['os.name'].toLowerCase().contains('windows') ? ';' : ':'
-Process process = new ProcessBuilder(
-        (jdkWinRootDir != null ? jdkWinRootDir.toString() : jdkRootDir.toString()) + "/bin/jlink",
+def jlinkJdkDir = jdkWinRootDir != null ? jdkWinRootDir : jdkRootDir
+
+// The modules of the image are the runtime's (and the modules it requires), the configured ones and, if the class
+// path of the Lambda functions that will be run by the runtime is given, the JDK modules that they depend on
+def modules = ["com.dow.aws.lambda"]
+if (jlinkModules) {
+    modules.addAll(jlinkModules.split(",").collect { it.trim() })
+}
+if (binding.hasVariable("jdepsClassPath") && jdepsClassPath) {
+    def moduleDeps = findModuleDeps(jlinkJdkDir, jdepsClassPath, repoVersion)
+    System.out.println("Modules the Lambda functions depend on (jdeps): " + moduleDeps)
+    modules.addAll(moduleDeps.split(","))
+}
+modules = modules.unique()
+
+// The jlink options of each profile (see "jlink Profiles" in README.md)
+def jlinkProfiles = [
+        // The modules image is not compressed, so that classes are read straight from the memory mapped image
+        // instead of being inflated first, and debug information is stripped: the debug attributes of classes
+        // (stack traces of the JDK and the runtime have no line numbers) and, on Linux, native debug symbols
+        "fast-start": ["--compress=0", "--strip-debug"],
+        // The smallest image, at the cost of inflating every class that is loaded
+        "small"     : ["--compress=2", "--strip-debug", "--dedup-legal-notices=error-if-not-same-content"],
+        // The image of the fast-start profile but with the debug information kept
+        "debug"     : ["--compress=0"]
+]
+def profile = binding.hasVariable("jlinkProfile") && jlinkProfile ? jlinkProfile : "fast-start"
+if (!jlinkProfiles.containsKey(profile)) {
+    throw new IllegalArgumentException("Unknown jlink profile: \"" + profile + "\", expected one of: " +
+            jlinkProfiles.keySet())
+}
+def jlinkOptions = new ArrayList(jlinkProfiles[profile])
+// Generating the CDS archive of the image is only supported by newer versions of jlink, and it runs the image's java
+// so it can not be done for Linux on Windows (in which case it is generated with "java -Xshare:dump" below)
+def jlinkPlugins = [jlinkJdkDir.toString() + "/bin/jlink", "--list-plugins"].execute().text
+if (!isWindows && jlinkPlugins.contains("--generate-cds-archive")) {
+    jlinkOptions.add("--generate-cds-archive")
+}
+if (binding.hasVariable("jlinkExtraOptions") && jlinkExtraOptions) {
+    jlinkOptions.addAll(jlinkExtraOptions.trim().split(/\s+/))
+}
+System.out.println("Linking runtime image with jlink profile \"" + profile + "\": " + jlinkOptions.join(" ") +
+        " and modules: " + modules.join(","))
+
+def jlinkCommand = [jlinkJdkDir.toString() + "/bin/jlink",
         "--output", distributionDir.getCanonicalPath(),
         "--launcher", "bootstrap=com.dow.aws.lambda/com.dow.aws.lambda.Bootstrap",
-        "--compress=2", "--no-header-files", "--no-man-pages",
-        // "--strip-debug",
-        // Consider using --strip-native-debug-symbols instead.
-        "--module-path", jdkRootDir.toString() + "/jmods" + modulePathSeparator +
+        "--no-header-files", "--no-man-pages"]
+jlinkCommand.addAll(jlinkOptions)
+jlinkCommand.addAll(["--module-path", jdkRootDir.toString() + "/jmods" + modulePathSeparator +
         project.build.directory + "/lib" + modulePathSeparator +
         project.build.directory + "/classes",
-        "--add-modules", "com.dow.aws.lambda," + jlinkModules)
+        "--add-modules", modules.join(",")])
+Process process = new ProcessBuilder(jlinkCommand)
         .inheritIO()
         .start()
 
@@ -299,18 +796,61 @@ bootstrapScript.write('''
 '''.stripIndent().trim())
 bootstrapScript.setExecutable(true, false)
 
+// CDS archives can only be used by a JVM that runs with the compressed oops and class pointers they were dumped with,
+// which is why these are the same whatever the JVM preset (the garbage collector and JIT settings of the presets do
+// not have to match the archive)
+def cdsVmOptions = "-XX:+UseCompressedOops -XX:+UseCompressedClassPointers"
+// The JVM presets (see "JVM Presets" in README.md), which the launcher picks one of by the memory size of the function
+def jvmPresets = new File(project.basedir, "src/main/launcher/jvm-presets.sh").text.replace("\r\n", "\n")
 def generatedLauncherScript = new File(project.build.directory + "/dist/bin/bootstrap")
 def newText = generatedLauncherScript.text
 //  #-Xlog:class+load=info -Xlog:cds -Xlog:cds+dynamic=debug
+// A deployment package with a CRaC checkpoint (see generateCracCheckpoint) is restored from it, if the JVM can (and
+// otherwise started as usual). A deployment package with an AppCDS archive (see generateAppCdsArchive) has its class
+// path put on the JVM's class path. Otherwise the classes loaded by the first JVM of an execution environment are archived when it exits, which
+// only helps a JVM started later in the same execution environment (/tmp does not outlive it).
+// The garbage collector, heap sizing and JIT settings come from the JVM preset of the function's memory size, or the
+// one named by LAMBDA_JVM_PRESET, and the options of LAMBDA_JVM_OPTIONS go last so that they override the preset's. A
+// garbage collector chosen in LAMBDA_JVM_OPTIONS or JAVA_TOOL_OPTIONS replaces the preset's, as the JVM refuses to
+// start with two.
 newText = newText.replace('JLINK_VM_OPTIONS=',
-        '''
-dynamicArchive="/tmp/archive.jsa"
-if [ ! -f "$archiveFile" ]; then
-  archiveArg="-XX:ArchiveClassesAtExit"
+        jvmPresets + '''
+if [ -n "$LAMBDA_JVM_PRESET" ]; then
+  jvmPreset="$LAMBDA_JVM_PRESET"
+elif [ -n "$AWS_LAMBDA_FUNCTION_MEMORY_SIZE" ]; then
+  default_jvm_preset "$AWS_LAMBDA_FUNCTION_MEMORY_SIZE"
+else
+  jvmPreset=none
+fi
+if ! jvm_preset_options "$jvmPreset"; then
+  echo "Unknown LAMBDA_JVM_PRESET: \"$jvmPreset\", using the JVM's defaults" >&2
+  jvm_preset_options none
+fi
+case "$JAVA_TOOL_OPTIONS $LAMBDA_JVM_OPTIONS" in
+  *-XX:+UseSerialGC*|*-XX:+UseParallelGC*|*-XX:+UseG1GC*|*-XX:+UseZGC*|*-XX:+UseShenandoahGC*|*-XX:+UseEpsilonGC*)
+    jvmPresetGc="" ;;
+esac
+cracImage="$LAMBDA_TASK_ROOT/crac"
+appCdsArchive="$LAMBDA_TASK_ROOT/app-cds.jsa"
+appCdsClassPath="$LAMBDA_TASK_ROOT/app-cds.classpath"
+if [ -d "$cracImage" ]; then
+  archiveArgs="-XX:CRaCRestoreFrom=$cracImage -XX:+CRaCIgnoreRestoreIfUnavailable"
+elif [ -f "$appCdsArchive" ] && [ -f "$appCdsClassPath" ]; then
+  classPath=""
+  while read -r entry; do
+    classPath="$classPath${classPath:+:}$LAMBDA_TASK_ROOT/$entry"
+  done < "$appCdsClassPath"
+  archiveArgs="-XX:SharedArchiveFile=$appCdsArchive -Xshare:auto -cp $classPath"
+  export LAMBDA_CLASS_LOADER=system
 else
-  archiveArg="-XX:SharedArchiveFile"
+  dynamicArchive="/tmp/archive.jsa"
+  if [ ! -f "$dynamicArchive" ]; then
+    archiveArgs="-XX:ArchiveClassesAtExit=$dynamicArchive -Xshare:on"
+  else
+    archiveArgs="-XX:SharedArchiveFile=$dynamicArchive -Xshare:on"
+  fi
 fi
-JLINK_VM_OPTIONS="$archiveArg=$dynamicArchive -XX:+UseCompressedOops -XX:+UseG1GC -XX:+UseCompressedClassPointers -Xshare:on -Xlog:cds=warning"
+JLINK_VM_OPTIONS="$archiveArgs $jvmPresetGc $jvmPresetOptions ''' + cdsVmOptions + ''' -Xlog:cds=warning $LAMBDA_JVM_OPTIONS"
 export AWS_EXECUTION_ENV=AWS_Lambda_java11
 ''')
 generatedLauncherScript.newWriter().withWriter {w -> w << newText}
@@ -320,56 +860,37 @@ new groovy.ant.AntBuilder().copy(todir: project.build.directory + "/layer/dist")
     fileset( dir: project.build.directory + "/dist" )
 }
 
-// In case ./layer/dist/lib/server/classes.jsa doesn't exist we need to generate the base CDS archives.
-// This needs to be done in a Linux environment as we need to run "java -Xshare:dump" on the Linux JVM we
-// are bundling with. TODO: Check if classes.jsa exists already and if so don't run this snippet.
-System.out.println("Running java -Xshare:dump on Linux JVM to generate base classes.jsa archive...")
-
-ProcessBuilder dumpProcessBuilder = new ProcessBuilder("bash.exe", "-c", "\"target/layer/dist/bin/java -Xmx248M -Xshare:dump\"")
-        .inheritIO();
-Process dumpProcess = dumpProcessBuilder.start()
-exitCode = dumpProcess.waitFor()
-if (exitCode != 0) {
-    System.out.println("Non-zero exit code from java -Xshare:dump: " + exitCode)
-    System.exit(-1)
+// In case ./layer/dist/lib/server/classes.jsa doesn't exist (i.e. jlink did not generate it) we need to generate the
+// base CDS archives. This needs to be done in a Linux environment as we need to run "java -Xshare:dump" on the Linux
+// JVM we are bundling with.
+if (!new File(project.build.directory + "/layer/dist/lib/server/classes.jsa").exists()) {
+    System.out.println("Running java -Xshare:dump on Linux JVM to generate base classes.jsa archive...")
+
+    ProcessBuilder dumpProcessBuilder = isWindows ?
+            new ProcessBuilder("bash.exe", "-c", "\"target/layer/dist/bin/java -Xmx248M -Xshare:dump\"") :
+            new ProcessBuilder(project.build.directory + "/layer/dist/bin/java", "-Xmx248M", "-Xshare:dump")
+    Process dumpProcess = dumpProcessBuilder.inheritIO().start()
+    exitCode = dumpProcess.waitFor()
+    if (exitCode != 0) {
+        System.out.println("Non-zero exit code from java -Xshare:dump: " + exitCode)
+        System.exit(-1)
+    }
 }
 
-// zip -r layer.zip ./layer/*
-def zipFile = new File(project.build.directory + "/layer.zip")
-zipFile.delete()
-
-// The reason this is so convoluted and complex (instead of simply using AntBuilder().zip is because we need
-// the executable permissions of the bootstrap script to be kept during zipping. This method works regardless
-// of the OS this build is running on. Without these permissions AWS refuses to run the bootstrap script:
-// Error: Runtime failed to start: fork/exec /opt/bootstrap: permission denied
-def archiveStream = new FileOutputStream(zipFile);
-ArchiveOutputStream archive = new ArchiveStreamFactory().createArchiveOutputStream(
-        ArchiveStreamFactory.ZIP, archiveStream)
-Collection<File> fileList = FileUtils.listFiles(layerDir, null, true)
-for (File file : fileList) {
-    int index = layerDir.getAbsolutePath().length() + 1
-    String path = file.getCanonicalPath()
-    ZipArchiveEntry entry = new ZipArchiveEntry(path.substring(index))
-    entry.setUnixMode(040777)
-    archive.putArchiveEntry(entry)
-    BufferedInputStream input = new BufferedInputStream(new FileInputStream(file))
-    IOUtils.copy(input, archive)
-    input.close()
-    archive.closeArchiveEntry()
+// Generate the AppCDS archive of a Lambda function's deployment package, if one was given, now that the layer's
+// base archive (which it depends on) exists
+if (binding.hasVariable("appCdsPackage") && appCdsPackage) {
+    generateAppCdsArchive(appCdsPackage, appCdsHandler, appCdsEvents, appCdsInvocations as int, appCdsTaskRoot,
+            cdsVmOptions)
 }
-archive.finish()
-archiveStream.close()
-
-LambdaClient lambdaClient = LambdaClient.builder()
-        .region(Region.of(awsRegion)).build()
 
-// aws lambda publish-layer-version --layer-name Custom Java Runtime --zip-file fileb://layer.zip
-def publishLayerRequest = PublishLayerVersionRequest.builder()
-        .layerName("Custom Java Runtime")
-        .description(String.format("%s runtime.", jdkRootDir.getName()))
-        .content(LayerVersionContentInput.builder()
-                .zipFile(SdkBytes.fromByteArray(Files.readAllBytes(zipFile.toPath()))).build()).build()
-
-def publishLayerResult = lambdaClient.publishLayerVersion(publishLayerRequest)
+// Take the CRaC checkpoint of a Lambda function's deployment package, if one was given
+if (binding.hasVariable("cracPackage") && cracPackage) {
+    generateCracCheckpoint(cracPackage, cracHandler, cracEvents, cracInvocations as int, cracTaskRoot,
+            cracRuntimeRoot)
+}
 
-System.out.println("Layer Version ARN: " + publishLayerResult.layerVersionArn())
\ No newline at end of file
+// zip -r layer.zip ./layer/*
+def zipFile = new File(project.build.directory + "/layer.zip")
+zipLayer(layerDir, zipFile)
+publishLayer(zipFile, String.format("%s runtime.", jdkRootDir.getName()))
\ No newline at end of file
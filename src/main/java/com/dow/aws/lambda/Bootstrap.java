@@ -3,29 +3,18 @@ package com.dow.aws.lambda;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static com.dow.aws.lambda.Bootstrap.ThrowingFunction.unchecked;
 import static java.util.Objects.requireNonNull;
@@ -37,136 +26,216 @@ import static java.util.Objects.requireNonNull;
  * public void handleRequest(InputStream input, OutputStream output throws IOException {}
  * }</pre>
  * <pre>{@code
- * public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {}
+ * public void handleRequest(InputStream input, OutputStream output, String context) throws IOException {}
  * }</pre>
+ * <pre>{@code
+ * public void handleRequest(InputStream input, OutputStream output, LambdaContext context) throws IOException {}
+ * }</pre>
+ * or a typed handler method (see {@link RequestHandler}) whose event and response are converted by a
+ * {@link Serializer}.
  */
 public class Bootstrap {
     private static final Logger LOGGER = LoggerFactory.getLogger(Bootstrap.class);
-    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
-    private static final String LAMBDA_VERSION_DATE = "2018-06-01";
-    private static final String LAMBDA_RUNTIME_URL_TEMPLATE = "http://{0}/{1}/runtime/invocation/next";
-    private static final String LAMBDA_INVOCATION_URL_TEMPLATE = "http://{0}/{1}/runtime/invocation/{2}/response";
-    private static final String LAMBDA_INIT_ERROR_URL_TEMPLATE = "http://{0}/{1}/runtime/init/error";
-    private static final String LAMBDA_ERROR_URL_TEMPLATE = "http://{0}/{1}/runtime/invocation/{2}/error";
-
-    // Headers sent with runtime/invocation/next resource:
-    // https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html#runtimes-api-next
-    private static final String LAMBDA_RUNTIME_AWS_REQUEST_ID = "Lambda-Runtime-Aws-Request-Id";
-    private static final String LAMBDA_RUNTIME_DEADLINE_MS = "Lambda-Runtime-Deadline-Ms";
-    private static final String LAMBDA_RUNTIME_INVOKED_FUNCTION_ARN = "Lambda-Runtime-Invoked-Function-Arn";
-    private static final String LAMBDA_RUNTIME_TRACE_ID = "Lambda-Runtime-Trace-Id";
-    private static final String LAMBDA_RUNTIME_CLIENT_CONTEXT = "Lambda-Runtime-Client-Context";
-    private static final String LAMBDA_RUNTIME_COGNITO_IDENTITY = "Lambda-Runtime-Cognito-Identity";
-
-    static {
-        System.setProperty("org.slf4j.simpleLogger.logFile", "System.out");
-        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "debug");
-    }
+
+    private Bootstrap() {}
 
     public static void main(String[] args) {
+        run(System.getenv());
+    }
+
+    /**
+     * Runs the bootstrap: initializes the handler and then processes events until the calling thread is interrupted
+     * (which only happens when the bootstrap is run in-process, e.g. by the local runtime API emulator, rather than
+     * in a Lambda execution environment). If the concurrency (see {@link #getConcurrency(Map)}) is greater than 1 the
+     * events are processed by that many poller threads, each running its own event loop, and the handler instance
+     * is shared between them unless {@code LAMBDA_HANDLER_LIFECYCLE} says otherwise. The poller threads are virtual
+     * if {@code LAMBDA_RUNTIME_THREADS} says so, which is ignored (with a warning) for a concurrency of 1.
+     *
+     * @param env the environment of the Lambda function
+     */
+    public static void run(Map<String, String> env) {
+        StartupProfiler startupProfiler = StartupProfiler.start(env);
         // List of environment variables available to a Lambda (a custom runtime runs in such an environment):
         // https://docs.aws.amazon.com/lambda/latest/dg/lambda-environment-variables.html
-        String runtimeApi = System.getenv("AWS_LAMBDA_RUNTIME_API");
-        String taskRoot = System.getenv("LAMBDA_TASK_ROOT");
-        String handlerName = System.getenv("_HANDLER");
+        String runtimeApi = env.get("AWS_LAMBDA_RUNTIME_API");
+        String taskRoot = env.get("LAMBDA_TASK_ROOT");
+        String handlerName = env.get("_HANDLER");
+        RuntimeApiClient runtimeApiClient = RuntimeApiClient.create(new RuntimeEndpoints(runtimeApi),
+                env.get("LAMBDA_RUNTIME_CLIENT"));
+        // Start recording as early as possible so that the recording covers the init phase
+        JfrRecorder jfrRecorder = JfrRecorder.start(env);
+        startupProfiler.mark(StartupProfiler.Phase.RUNTIME_INIT);
         // Get the handler class and method name from the Lambda Configuration in the format of <class>::<method>
         String[] handlerParts = handlerName.split("::");
-        Class handlerClass;
+        Class<?> handlerClass;
         Method handlerMethod;
-        // Find the Handler and Method on the classpath
+        // Find the Handler and Method on the classpath (a native image has the function compiled in)
         try {
-            handlerClass = getHandlerClass(taskRoot, handlerParts[0]);
-        } catch (MalformedURLException | ClassNotFoundException ex) {
-            String initErrorUrl = MessageFormat.format(LAMBDA_INIT_ERROR_URL_TEMPLATE, runtimeApi, LAMBDA_VERSION_DATE);
-            postError(initErrorUrl, String.format("Could not find/load Lambda request handler class: \"%s\"",
-                    handlerParts[0]), "InitError");
+            handlerClass = NativeImage.inImage() || "system".equalsIgnoreCase(env.get("LAMBDA_CLASS_LOADER")) ?
+                    getSystemHandlerClass(handlerParts[0], startupProfiler) :
+                    getHandlerClass(taskRoot, handlerParts[0], startupProfiler);
+        } catch (IOException | ClassNotFoundException ex) {
+            postInitError(runtimeApiClient, String.format("Could not find/load Lambda request handler class: \"%s\"",
+                    handlerParts[0]));
             LOGGER.error("exception: ", ex);
             return;
         }
 
+        // Load the classes the function is known to use in parallel now, rather than one at a time when first used
+        ClassPreloader.run(env, handlerClass.getClassLoader());
+        startupProfiler.mark(StartupProfiler.Phase.PRELOAD_CLASSES);
+
         handlerMethod = getHandlerMethod(handlerClass, handlerParts[1]);
         if (handlerMethod == null) {
-            String initErrorUrl = MessageFormat.format(LAMBDA_INIT_ERROR_URL_TEMPLATE, runtimeApi, LAMBDA_VERSION_DATE);
-            postError(initErrorUrl, String.format("Could not find Lambda request handler method: \"%s\"",
-                    handlerParts[1]), "InitError");
+            postInitError(runtimeApiClient, String.format("Could not find Lambda request handler method: \"%s\"",
+                    handlerParts[1]));
+            return;
+        }
+        startupProfiler.mark(StartupProfiler.Phase.FIND_METHOD);
+
+        // Bind the handler method once, during init, so that invoking it does not go through reflection
+        HandlerInvoker handlerInvoker;
+        try {
+            handlerInvoker = HandlerInvoker.bind(handlerClass, handlerMethod,
+                    () -> getSerializer(handlerClass.getClassLoader()));
+        } catch (IllegalAccessException | IllegalArgumentException | ServiceConfigurationError ex) {
+            postInitError(runtimeApiClient, String.format("Could not bind Lambda request handler method: \"%s\"",
+                    handlerParts[1]));
+            LOGGER.error("exception: ", ex);
+            return;
+        }
+        startupProfiler.mark(StartupProfiler.Phase.BIND_HANDLER);
+
+        // Instantiate the handler once, during init, so that warm invocations reuse it (and any state it builds)
+        HandlerLifecycle handlerLifecycle;
+        try {
+            handlerLifecycle = new HandlerLifecycle(handlerClass, HandlerLifecycle.resolveMode(
+                    handlerClass, env.get("LAMBDA_HANDLER_LIFECYCLE")));
+        } catch (ReflectiveOperationException | IllegalArgumentException ex) {
+            postInitError(runtimeApiClient, String.format(
+                    "Could not instantiate Lambda request handler class: \"%s\"", handlerParts[0]));
+            LOGGER.error("exception: ", ex);
             return;
         }
+        startupProfiler.mark(StartupProfiler.Phase.CONSTRUCT_HANDLER);
+        jfrRecorder.loadUploaders(handlerClass.getClassLoader());
+        LambdaContext.init(env);
+        LOGGER.debug("Using {} handler lifecycle for: \"{}\"", handlerLifecycle.getMode(), handlerParts[0]);
 
-        String requestId = null;
-        String runtimeUrl = MessageFormat.format(LAMBDA_RUNTIME_URL_TEMPLATE, runtimeApi, LAMBDA_VERSION_DATE);
-        var request = HttpRequest.newBuilder().uri(URI.create(runtimeUrl)).build();
+        // Run the handler (and so get the JIT to compile it) before the first real event, if the function asks for it
+        Warmup.run(env, handlerClass, handlerLifecycle, handlerInvoker, Checkpoints.isRequested(env));
+        startupProfiler.mark(StartupProfiler.Phase.WARMUP);
 
-        // Main event loop
-        //noinspection InfiniteLoopStatement
-        while (true) {
-            // Get next Lambda Event
+        // Checkpoint the initialized (and warmed up) runtime, if asked to, and carry on from the restore
+        if (Checkpoints.isRequested(env)) {
+            if (handlerLifecycle.getMode() == HandlerLifecycle.Mode.SINGLETON &&
+                    handlerLifecycle.getInstance() instanceof CheckpointHook) {
+                CheckpointHook.register((CheckpointHook) handlerLifecycle.getInstance());
+            }
             try {
-                HttpResponse<InputStream> response = HTTP_CLIENT.send(
-                        request, HttpResponse.BodyHandlers.ofInputStream());
-                requestId = response.headers().firstValue(LAMBDA_RUNTIME_AWS_REQUEST_ID).orElse("");
-                String invokedFunctionArn = response.headers()
-                        .firstValue(LAMBDA_RUNTIME_INVOKED_FUNCTION_ARN).orElse("");
-                long deadlineMillis = Long.parseLong(response.headers()
-                        .firstValue(LAMBDA_RUNTIME_DEADLINE_MS).orElse("0"));
-                String functionName = "";
-                // arn:aws:lambda:us-east-2:123456789012:function:custom-runtime
-                String[] arnParts = invokedFunctionArn.split(":");
-                if (arnParts.length == 7) {
-                    functionName = arnParts[6];
-                }
-                // Invoke Handler Method
-                String result = invoke(handlerClass, handlerMethod, response.body(), String.format("{\n" +
-                                "\"awsRequestId\": \"%s\",\n" +
-                                "\"logGroupName\": \"%s\",\n" +
-                                "\"logStreamName\": \"%s\",\n" +
-                                "\"functionName\": \"%s\",\n" +
-                                "\"functionVersion\": \"%s\",\n" +
-                                "\"invokedFunctionArn\": \"%s\",\n" +
-                                "\"remainingTimeInMillis\": \"%d\",\n" +
-                                "\"memoryLimitInMB\": \"%d\"\n" +
-                                "}", requestId, System.getenv("AWS_LAMBDA_LOG_GROUP_NAME"),
-                        System.getenv("AWS_LAMBDA_LOG_STREAM_NAME"), functionName,
-                        System.getenv("AWS_LAMBDA_FUNCTION_VERSION"), invokedFunctionArn,
-                        Math.max((int) (deadlineMillis - System.currentTimeMillis()), 0),
-                        Integer.parseInt(System.getenv("AWS_LAMBDA_FUNCTION_MEMORY_SIZE"))));
-                // Post the results of Handler Invocation
-                String invocationUrl = MessageFormat.format(LAMBDA_INVOCATION_URL_TEMPLATE, runtimeApi,
-                        LAMBDA_VERSION_DATE, requestId);
-                HTTP_CLIENT.send(HttpRequest.newBuilder().uri(URI.create(invocationUrl)).POST(
-                        HttpRequest.BodyPublishers.ofString(result)).build(), HttpResponse.BodyHandlers.ofString());
-                try (Stream<Path> walk = Files.walk(Paths.get("."))) {
-                    List<String> jfrRecordings = walk
-                            .filter(p -> !Files.isDirectory(p))
-                            .map(p -> p.toString().toLowerCase())
-                            .filter(f -> f.endsWith("jfr"))
-                            .collect(Collectors.toList());
-                    LOGGER.info("jfr recordings: " + jfrRecordings);
-                }
+                runtimeApiClient = Checkpoints.checkpointRestore(env, startupProfiler, runtimeApiClient);
             } catch (Exception ex) {
-                String initErrorUrl = MessageFormat.format(LAMBDA_ERROR_URL_TEMPLATE, runtimeApi,
-                        LAMBDA_VERSION_DATE, requestId);
-                postError(initErrorUrl, "Invocation Error", "RuntimeError");
+                postInitError(runtimeApiClient, "Could not prepare Lambda function for checkpoint");
                 LOGGER.error("exception: ", ex);
+                return;
             }
         }
-    }
 
-    private static final String ERROR_RESPONSE_TEMPLATE =
-            "'{'" +
-            "  \"errorMessage\": \"{0}\"," +
-            "  \"errorType\": \"{1}\"" +
-            "'}'";
+        // Buffered responses are written to (and posted from) a buffer of the event loop that is reused across
+        // invocations, streamed responses are sent to the runtime API while the handler writes them.
+        boolean streamResponses = "streaming".equalsIgnoreCase(env.get("LAMBDA_RESPONSE_MODE"));
+        int concurrency = getConcurrency(env);
+        if (concurrency == 1) {
+            // The event loop runs on the calling thread, so there are no poller threads to make virtual
+            String threads = env.get("LAMBDA_RUNTIME_THREADS");
+            if (threads != null && !threads.isBlank() && !threads.trim().equalsIgnoreCase("platform")) {
+                LOGGER.warn("Ignoring LAMBDA_RUNTIME_THREADS: \"{}\" as events are not processed concurrently " +
+                        "(LAMBDA_RUNTIME_CONCURRENCY is 1)", threads);
+            }
+            new EventLoop(runtimeApiClient, handlerLifecycle, handlerInvoker, streamResponses,
+                    InvocationMetrics.create(env), startupProfiler, jfrRecorder).run();
+            return;
+        }
+
+        // Every poller runs its own event loop, with its own connection to the runtime API. The startup profiler is
+        // not thread-safe, so the cold start is profiled by the first poller only.
+        boolean virtualThreads = useVirtualThreads(env.get("LAMBDA_RUNTIME_THREADS"));
+        LOGGER.debug("Processing up to {} events concurrently on {} threads", concurrency,
+                virtualThreads ? "virtual" : "platform");
+        Thread[] pollers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            EventLoop eventLoop = new EventLoop(i == 0 ? runtimeApiClient : RuntimeApiClient.create(
+                    new RuntimeEndpoints(runtimeApi), env.get("LAMBDA_RUNTIME_CLIENT")), handlerLifecycle,
+                    handlerInvoker, streamResponses, InvocationMetrics.create(env),
+                    i == 0 ? startupProfiler : StartupProfiler.off(), jfrRecorder);
+            pollers[i] = PollerThreads.newThread(eventLoop, "lambda-poller-" + i, virtualThreads);
+            pollers[i].start();
+        }
+        try {
+            for (Thread poller : pollers) {
+                poller.join();
+            }
+        } catch (InterruptedException ex) {
+            for (Thread poller : pollers) {
+                poller.interrupt();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
 
-    private static void postError(String errorUrl, String errMsg, String errType) {
-        String error = MessageFormat.format(ERROR_RESPONSE_TEMPLATE, errMsg, errType);
+    private static void postInitError(RuntimeApiClient runtimeApiClient, String errMsg) {
+        String error = Json.error(errMsg, "InitError");
         try {
-            HTTP_CLIENT.send(HttpRequest.newBuilder().uri(URI.create(errorUrl)).POST(
-                    HttpRequest.BodyPublishers.ofString(error)).build(), HttpResponse.BodyHandlers.ofString());
+            runtimeApiClient.postInitError(error);
         } catch (IOException | InterruptedException ex) {
             LOGGER.error("exception: ", ex);
         }
     }
 
+    /**
+     * Returns the number of events to process concurrently, from the {@code LAMBDA_RUNTIME_CONCURRENCY} environment
+     * variable or, if that is not set, the {@code AWS_LAMBDA_MAX_CONCURRENCY} environment variable of execution
+     * environments that are sent several events at a time. Defaults to 1, i.e. the event loop runs on the calling
+     * thread.
+     */
+    static int getConcurrency(Map<String, String> env) {
+        String concurrency = env.get("LAMBDA_RUNTIME_CONCURRENCY");
+        if (concurrency == null || concurrency.isBlank()) {
+            concurrency = env.get("AWS_LAMBDA_MAX_CONCURRENCY");
+        }
+        if (concurrency == null || concurrency.isBlank()) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(concurrency.trim()));
+        } catch (NumberFormatException ex) {
+            LOGGER.warn("Ignoring invalid concurrency: \"{}\"", concurrency);
+            return 1;
+        }
+    }
+
+    /**
+     * Returns whether the pollers should be virtual threads, as set by the {@code LAMBDA_RUNTIME_THREADS} environment
+     * variable ({@code platform}, the default, or {@code virtual}). Virtual threads need Java 21, on older JDKs
+     * platform threads are used instead.
+     */
+    private static boolean useVirtualThreads(String threadsEnv) {
+        if (threadsEnv == null || threadsEnv.isBlank() || threadsEnv.trim().equalsIgnoreCase("platform")) {
+            return false;
+        }
+        if (!threadsEnv.trim().equalsIgnoreCase("virtual")) {
+            LOGGER.warn("Ignoring unknown LAMBDA_RUNTIME_THREADS: \"{}\" (expected \"platform\" or \"virtual\")",
+                    threadsEnv);
+            return false;
+        }
+        if (!PollerThreads.isVirtualSupported()) {
+            LOGGER.warn("Virtual threads are not supported by Java {}, using platform threads",
+                    Runtime.version().feature());
+            return false;
+        }
+        return true;
+    }
+
     private static URL[] initClasspath(String taskRoot) {
         File cwd = new File(taskRoot);
 
@@ -190,16 +259,40 @@ public class Bootstrap {
         return classPath.stream().map(unchecked(file -> file.toURI().toURL())).toArray(URL[]::new);
     }
 
-    private static Class getHandlerClass(String taskRoot, String className)
-            throws MalformedURLException, ClassNotFoundException {
-        URL[] classPathUrls = initClasspath(taskRoot);
-        URLClassLoader cl = URLClassLoader.newInstance(classPathUrls);
-        return cl.loadClass(className);
+    private static Class<?> getHandlerClass(String taskRoot, String className, StartupProfiler startupProfiler)
+            throws IOException, ClassNotFoundException {
+        // Use the class path index generated at build time if there is one, otherwise scan the task root
+        ClasspathIndex classpathIndex = ClasspathIndex.load(taskRoot);
+        URL[] classPathUrls = classpathIndex != null ? classpathIndex.getUrls(taskRoot) : initClasspath(taskRoot);
+        startupProfiler.mark(StartupProfiler.Phase.INIT_CLASSPATH);
+        URLClassLoader cl = classpathIndex != null ? new IndexedClassLoader(classPathUrls, classpathIndex) :
+                URLClassLoader.newInstance(classPathUrls);
+        startupProfiler.mark(StartupProfiler.Phase.CREATE_CLASS_LOADER);
+        Class<?> handlerClass = cl.loadClass(className);
+        startupProfiler.mark(StartupProfiler.Phase.LOAD_CLASS);
+        return handlerClass;
+    }
+
+    /**
+     * Loads the handler class from the application class loader, for launchers that put the Lambda function's class
+     * path on the JVM's own class path ({@code -cp}) so that its classes can come from an AppCDS archive (which only
+     * covers the built-in class loaders), and for native images (see {@link NativeImage}).
+     */
+    private static Class<?> getSystemHandlerClass(String className, StartupProfiler startupProfiler)
+            throws ClassNotFoundException {
+        startupProfiler.mark(StartupProfiler.Phase.INIT_CLASSPATH);
+        ClassLoader cl = ClassLoader.getSystemClassLoader();
+        startupProfiler.mark(StartupProfiler.Phase.CREATE_CLASS_LOADER);
+        Class<?> handlerClass = cl.loadClass(className);
+        startupProfiler.mark(StartupProfiler.Phase.LOAD_CLASS);
+        return handlerClass;
     }
 
-    private static Method getHandlerMethod(Class handlerClass, String methodName) {
+    static Method getHandlerMethod(Class<?> handlerClass, String methodName) {
         for (Method method : handlerClass.getMethods()) {
-            if (method.getName().equals(methodName)) {
+            // Skip the bridge methods of generic interfaces (e.g. RequestHandler) so that the argument and return
+            // types of a typed handler are the actual ones rather than their erasure
+            if (method.getName().equals(methodName) && !method.isBridge()) {
                 return method;
             }
         }
@@ -207,24 +300,12 @@ public class Bootstrap {
         return null;
     }
 
-    private static String invoke(Class<?> handlerClass, Method handlerMethod, InputStream response, String contextJson)
-            throws Exception {
-        Object handlerClassObj = handlerClass.getConstructor().newInstance();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        Object[] args;
-        if (handlerMethod.getParameterCount() == 2) {
-            // public void handleRequest(InputStream input, OutputStream output)
-            args = new Object[]{response, baos};
-        } else if (handlerMethod.getParameterCount() == 3) {
-            // public void handleRequest(InputStream input, OutputStream output, String context)
-            args = new Object[]{response, baos, contextJson};
-        } else {
-            LOGGER.error("public void handleRequest method does not take 2 or 3 arguments!");
-            throw new RuntimeException("public void handleRequest method does not take 2 or 3 arguments!");
-        }
-        handlerMethod.invoke(handlerClassObj, args);
-        return baos.toString(StandardCharsets.UTF_8);
+    /**
+     * Returns the first {@link Serializer} found on the Lambda function's class path, or the runtime's own JSON
+     * serializer if there is none.
+     */
+    private static Serializer getSerializer(ClassLoader classLoader) {
+        return ServiceLoader.load(Serializer.class, classLoader).findFirst().orElseGet(JsonSerializer::new);
     }
 
     @SuppressWarnings("unused")
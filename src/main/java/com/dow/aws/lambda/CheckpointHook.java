@@ -0,0 +1,38 @@
+package com.dow.aws.lambda;
+
+/**
+ * A hook of the Lambda function that is called around a checkpoint of the initialized runtime (a SnapStart snapshot or
+ * a CRaC checkpoint), for example to close the connections a handler opened during init before the checkpoint is taken
+ * and to open them again (and refresh any credentials, random seeds or timestamps taken during init) once the runtime
+ * has been restored in another execution environment. A handler class that implements this interface is registered
+ * automatically (if its instance is reused, see {@link PerInvocation}), other hooks can be registered with
+ * {@link #register(CheckpointHook)} during init.
+ * <p>
+ * Hooks are called before the checkpoint in the reverse order of their registration and after the restore in the
+ * order of their registration. The runtime closes its connection to the runtime API after the hooks have been called
+ * before the checkpoint, and opens a new one before they are called after the restore.
+ */
+public interface CheckpointHook {
+    /**
+     * Called before the checkpoint is taken. Throwing aborts a CRaC checkpoint, in which case the runtime carries on
+     * without one, and fails the init of a SnapStart function, in which case no snapshot is taken.
+     *
+     * @throws Exception if the function can not be checkpointed
+     */
+    default void beforeCheckpoint() throws Exception {}
+
+    /**
+     * Called once the runtime has been restored (or the checkpoint failed), before it asks for the first event.
+     *
+     * @throws Exception if the function could not be restored, which is logged (and reported to the runtime API after
+     * a SnapStart restore, which fails it)
+     */
+    default void afterRestore() throws Exception {}
+
+    /**
+     * Registers the given hook.
+     */
+    static void register(CheckpointHook hook) {
+        Checkpoints.register(hook);
+    }
+}
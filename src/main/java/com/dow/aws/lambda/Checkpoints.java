@@ -0,0 +1,182 @@
+package com.dow.aws.lambda;
+
+import com.dow.aws.lambda.logging.RuntimeLogging;
+import org.crac.CheckpointException;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.crac.RestoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Checkpoints the initialized runtime, once the handler has been constructed and warmed up and before the first event
+ * is asked for, so that restoring it carries on from there, skipping the JVM boot and the init phase. There are two
+ * kinds of checkpoints:
+ * <ul>
+ *     <li>A <a href="https://docs.aws.amazon.com/lambda/latest/dg/snapstart.html">SnapStart</a> snapshot of the
+ *     execution environment, if the {@code AWS_LAMBDA_INITIALIZATION_TYPE} environment variable is
+ *     {@code snap-start}. The snapshot is taken by Lambda while the runtime blocks on
+ *     {@code runtime/restore/next}, which returns in the restored execution environment.</li>
+ *     <li>A <a href="https://openjdk.org/projects/crac/">CRaC</a> (Coordinated Restore at Checkpoint) checkpoint of
+ *     the JVM, through the {@code org.crac} API which does nothing on a JVM without CRaC support, if the
+ *     {@code LAMBDA_CHECKPOINT} environment variable is {@code crac}. The checkpoint is restored with
+ *     {@code -XX:CRaCRestoreFrom}.</li>
+ * </ul>
+ * Around the checkpoint the registered {@link CheckpointHook}s are called, the logs are written out and the runtime
+ * API client is closed, and after the restore the values the runtime read from the environment (which is that of the
+ * restoring process) are read again and a new runtime API client is created, as connections do not survive a
+ * restore.
+ */
+final class Checkpoints implements Resource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Checkpoints.class);
+    private static final List<CheckpointHook> HOOKS = new CopyOnWriteArrayList<>();
+
+    private final Map<String, String> env;
+    private RuntimeApiClient runtimeApiClient;
+
+    private Checkpoints(Map<String, String> env, RuntimeApiClient runtimeApiClient) {
+        this.env = env;
+        this.runtimeApiClient = runtimeApiClient;
+    }
+
+    static void register(CheckpointHook hook) {
+        HOOKS.add(requireNonNull(hook, "hook"));
+    }
+
+    static boolean isRequested(Map<String, String> env) {
+        return isSnapStart(env) || "crac".equalsIgnoreCase(env.get("LAMBDA_CHECKPOINT"));
+    }
+
+    private static boolean isSnapStart(Map<String, String> env) {
+        return "snap-start".equalsIgnoreCase(env.get("AWS_LAMBDA_INITIALIZATION_TYPE"));
+    }
+
+    /**
+     * Takes the checkpoint and returns once the runtime has been restored from it (or the CRaC checkpoint failed).
+     * The failures of the hooks called after a SnapStart restore are reported to {@code runtime/restore/error}.
+     *
+     * @param env the environment of the Lambda function
+     * @param runtimeApiClient the runtime API client, which is closed before the checkpoint
+     * @return the runtime API client to use from now on
+     * @throws Exception if a hook failed before a SnapStart snapshot (the snapshot can not be taken, so init fails),
+     * or the runtime API could not be told that init is done
+     */
+    static RuntimeApiClient checkpointRestore(Map<String, String> env, StartupProfiler startupProfiler,
+                                              RuntimeApiClient runtimeApiClient) throws Exception {
+        Checkpoints checkpoints = new Checkpoints(env, runtimeApiClient);
+        if (isSnapStart(env)) {
+            checkpoints.snapStart(startupProfiler);
+            return checkpoints.runtimeApiClient;
+        }
+        Core.getGlobalContext().register(checkpoints);
+        LOGGER.info("Taking CRaC checkpoint");
+        try {
+            Core.checkpointRestore();
+            startupProfiler.restored("crac");
+        } catch (CheckpointException | UnsupportedOperationException ex) {
+            LOGGER.error("Could not take CRaC checkpoint: ", ex);
+        } catch (RestoreException ex) {
+            startupProfiler.restored("crac");
+            LOGGER.error("Error restoring from CRaC checkpoint: ", ex);
+        }
+        return checkpoints.runtimeApiClient;
+    }
+
+    /**
+     * Blocks on {@code runtime/restore/next}, which Lambda takes the snapshot during, and returns in the restored
+     * execution environment.
+     */
+    private void snapStart(StartupProfiler startupProfiler) throws Exception {
+        LOGGER.info("Waiting for SnapStart snapshot");
+        callBeforeCheckpoint();
+        RuntimeLogging.drain();
+        // Unlike a CRaC checkpoint, the snapshot is taken with the connection open, as it is what waits for it
+        runtimeApiClient.restoreNext();
+        runtimeApiClient.close();
+        startupProfiler.restored("snap-start");
+        try {
+            restore();
+        } catch (Exception ex) {
+            LOGGER.error("Error restoring from SnapStart snapshot: ", ex);
+            try {
+                runtimeApiClient.postRestoreError(Json.error(ex.toString(), "RestoreError"));
+            } catch (IOException | InterruptedException postEx) {
+                LOGGER.error("exception: ", postEx);
+            }
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) throws Exception {
+        callBeforeCheckpoint();
+        runtimeApiClient.close();
+        // The log flusher must not be halfway through a write when the process is checkpointed
+        RuntimeLogging.drain();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) throws Exception {
+        restore();
+    }
+
+    /**
+     * Calls the hooks before a checkpoint, in reverse order of registration.
+     */
+    private static void callBeforeCheckpoint() throws Exception {
+        List<CheckpointHook> hooks = List.copyOf(HOOKS);
+        for (int i = hooks.size() - 1; i >= 0; i--) {
+            try {
+                hooks.get(i).beforeCheckpoint();
+            } catch (Exception ex) {
+                // The checkpoint is aborted, so the hooks that were already called are restored right away
+                afterRestore(hooks.subList(i + 1, hooks.size()), ex);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Re-reads the environment, creates the runtime API client of the restored runtime and calls the hooks.
+     */
+    private void restore() throws Exception {
+        // The environment of the process is that of the execution environment it was restored in, unless the runtime
+        // runs in-process (e.g. in the runtime API emulator), in which case it is that of the bootstrap
+        Map<String, String> restoredEnv = System.getenv("AWS_LAMBDA_RUNTIME_API") != null ? System.getenv() : env;
+        LambdaContext.init(restoredEnv);
+        runtimeApiClient = RuntimeApiClient.create(new RuntimeEndpoints(restoredEnv.get("AWS_LAMBDA_RUNTIME_API")),
+                restoredEnv.get("LAMBDA_RUNTIME_CLIENT"));
+        Exception failure = afterRestore(HOOKS, null);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Calls the given hooks after a restore, in order, even if some of them fail.
+     *
+     * @param failure the failure so far, or null
+     * @return the first failure (with any further failures suppressed), or null if there was none
+     */
+    private static Exception afterRestore(List<CheckpointHook> hooks, Exception failure) {
+        for (CheckpointHook hook : hooks) {
+            try {
+                hook.afterRestore();
+            } catch (Exception ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        return failure;
+    }
+}
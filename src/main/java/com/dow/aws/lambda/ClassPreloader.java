@@ -0,0 +1,257 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads (and initializes) the classes a Lambda function is known to use during init, in parallel across the available
+ * processors, rather than one at a time on the first invocation. Preloading is done if the Lambda function ships a
+ * class list, and is configured by the following environment variables:
+ * <ul>
+ *     <li>{@code LAMBDA_PRELOAD_CLASSES} - the class list, relative to {@code LAMBDA_TASK_ROOT} (defaults to
+ *     {@code preload-classes.txt}).</li>
+ *     <li>{@code LAMBDA_PRELOAD_THREADS} - the number of threads to load the classes with (defaults to the number
+ *     of available processors).</li>
+ *     <li>{@code LAMBDA_PRELOAD_INITIALIZE} - whether the classes are initialized, i.e. their static initializers
+ *     are run, as well as loaded: {@code true} (the default) initializes them in the order of the list on the calling
+ *     thread once they are all loaded, {@code parallel} initializes them on the loading threads and {@code false}
+ *     does not initialize them.</li>
+ * </ul>
+ * The class list has a class name per line, in the order the classes should be loaded in. It can be the output of a
+ * training run of the function on the JVM with {@code -Xlog:class+load} (e.g. against the runtime API emulator), or
+ * the class list of {@code -XX:DumpLoadedClassList}: decorations in square brackets, the {@code source:} of a class
+ * and binary names ({@code java/lang/Object}) are understood, and empty lines and lines that start with {@code #} or
+ * {@code @} are skipped. The classes listed before the {@link Bootstrap} class, which the JVM (or the tooling of the
+ * training run) loaded before the runtime started, and classes that can not be loaded by name (hidden classes, the
+ * classes of the training run's tooling) are skipped. The class loader the classes are loaded with must be parallel
+ * capable (as the runtime's are) for loading to scale with the threads.
+ * <p>
+ * By default classes are only loaded in parallel, as initializing them in parallel can deadlock: two threads that each
+ * initialize a class whose static initializer uses the other's class wait for each other's initialization lock
+ * forever (JLS 12.4.2). {@code parallel} is only safe if the static initializers of the function's classes do not
+ * depend on each other. Preloading stops when the init phase of Lambda (10 seconds from the start of the process) is
+ * over, so that a stuck static initializer does not hang init until Lambda gives up on it.
+ */
+final class ClassPreloader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassPreloader.class);
+    private static final String DEFAULT_CLASS_LIST = "preload-classes.txt";
+    private static final long INIT_PHASE_MILLIS = 10_000;
+
+    private enum Initialize { SEQUENTIAL, PARALLEL, NONE }
+
+    private ClassPreloader() {}
+
+    /**
+     * Runs the preloading stage, if there is a class list. Failures are logged rather than thrown, as preloading is
+     * best-effort and should not fail init.
+     *
+     * @param env the environment of the Lambda function
+     */
+    static void run(Map<String, String> env, ClassLoader classLoader) {
+        if (NativeImage.inImage()) {
+            // The classes of a native image are compiled in
+            return;
+        }
+        String classListFile = env.get("LAMBDA_PRELOAD_CLASSES");
+        String taskRoot = env.get("LAMBDA_TASK_ROOT");
+        if (taskRoot == null) {
+            // The class list is looked up in the task root, which a launcher that runs the function from the
+            // application class path need not set
+            if (classListFile != null && !classListFile.isBlank()) {
+                LOGGER.warn("Not preloading classes, as LAMBDA_TASK_ROOT is not set");
+            }
+            return;
+        }
+        Path path = Paths.get(taskRoot).resolve(classListFile == null || classListFile.isBlank() ?
+                DEFAULT_CLASS_LIST : classListFile.trim());
+        if (!Files.isRegularFile(path)) {
+            if (classListFile != null && !classListFile.isBlank()) {
+                LOGGER.warn("Preload class list not found: \"{}\"", path);
+            }
+            return;
+        }
+        List<String> classNames;
+        try {
+            classNames = readClassList(path);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not read preload class list: \"{}\": ", path, ex);
+            return;
+        }
+        int threads = parseThreads(env.get("LAMBDA_PRELOAD_THREADS"));
+        Initialize initialize = parseInitialize(env.get("LAMBDA_PRELOAD_INITIALIZE"));
+
+        long start = System.nanoTime();
+        long remainingInitMillis = remainingInitMillis();
+        if (remainingInitMillis == 0) {
+            LOGGER.warn("Not preloading classes, as the init phase is already over");
+            return;
+        }
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(remainingInitMillis);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger loaded = new AtomicInteger();
+        Class<?>[] classes = new Class<?>[classNames.size()];
+        Runnable loader = () -> {
+            int i;
+            while (System.nanoTime() - deadline < 0 && (i = next.getAndIncrement()) < classNames.size()) {
+                try {
+                    classes[i] = Class.forName(classNames.get(i), initialize == Initialize.PARALLEL, classLoader);
+                    loaded.incrementAndGet();
+                } catch (ClassNotFoundException | LinkageError ex) {
+                    LOGGER.debug("Could not preload class \"{}\": {}", classNames.get(i), ex.toString());
+                }
+            }
+        };
+        // The loading threads are daemons and are only waited for until the end of the init phase, so that one
+        // stuck in a static initializer does not hold up init
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(loader, "lambda-preload-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (Thread worker : workers) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    break;
+                }
+                worker.join(remainingMillis);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                LOGGER.warn("Preloading classes did not finish within the init phase, continuing with {} of {} " +
+                        "classes loaded", loaded.get(), classNames.size());
+                return;
+            }
+        }
+
+        // Initializing the classes on one thread, in the order they were first used, runs the static initializers
+        // as the function would have
+        int initialized = 0;
+        if (initialize == Initialize.SEQUENTIAL) {
+            for (Class<?> loadedClass : classes) {
+                if (System.nanoTime() - deadline >= 0) {
+                    LOGGER.warn("Initializing preloaded classes did not finish within the init phase");
+                    break;
+                }
+                if (loadedClass == null) {
+                    continue;
+                }
+                try {
+                    Class.forName(loadedClass.getName(), true, loadedClass.getClassLoader());
+                    initialized++;
+                } catch (ClassNotFoundException | LinkageError ex) {
+                    LOGGER.debug("Could not initialize class \"{}\": {}", loadedClass.getName(), ex.toString());
+                }
+            }
+        }
+        LOGGER.info("Preloaded {} of {} classes on {} threads ({} initialized in order) in {} ms", loaded.get(),
+                classNames.size(), threads, initialized, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Returns the time left of the init phase, which starts with the process.
+     */
+    private static long remainingInitMillis() {
+        long now = System.currentTimeMillis();
+        long processStart = ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli).orElse(now);
+        return Math.max(0, INIT_PHASE_MILLIS - (now - processStart));
+    }
+
+    private static Initialize parseInitialize(String value) {
+        if (value == null || value.isBlank()) {
+            return Initialize.SEQUENTIAL;
+        }
+        switch (value.trim().toLowerCase()) {
+            case "true":
+                return Initialize.SEQUENTIAL;
+            case "parallel":
+                return Initialize.PARALLEL;
+            case "false":
+                return Initialize.NONE;
+            default:
+                LOGGER.warn("Invalid LAMBDA_PRELOAD_INITIALIZE: \"{}\", using true", value);
+                return Initialize.SEQUENTIAL;
+        }
+    }
+
+    /**
+     * Reads the class names of the given class list, without duplicates.
+     */
+    private static List<String> readClassList(Path path) throws IOException {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String className = parseClassName(line);
+            if (className == null) {
+                continue;
+            }
+            if (className.equals(Bootstrap.class.getName())) {
+                // Everything so far has been loaded by the time the runtime gets to preloading
+                classNames.clear();
+            } else {
+                classNames.add(className);
+            }
+        }
+        return new ArrayList<>(classNames);
+    }
+
+    /**
+     * Returns the class name of the given line of a class list, or null if the line has none.
+     */
+    private static String parseClassName(String line) {
+        String s = line.trim();
+        // Skip the decorations of -Xlog output, e.g. "[0.012s][info][class,load] java.lang.Object source: jrt:/..."
+        while (s.startsWith("[")) {
+            int end = s.indexOf(']');
+            if (end == -1) {
+                return null;
+            }
+            s = s.substring(end + 1).trim();
+        }
+        if (s.isEmpty() || s.startsWith("#") || s.startsWith("@")) {
+            return null;
+        }
+        int space = s.indexOf(' ');
+        String name = space == -1 ? s : s.substring(0, space);
+        // Hidden classes (lambda forms and proxies, e.g. "Foo$$Lambda/0x0000000800c01000") can not be loaded by name
+        if (name.contains("/0x") || name.contains("+0x")) {
+            return null;
+        }
+        return name.replace('/', '.');
+    }
+
+    private static int parseThreads(String value) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (value == null || value.isBlank()) {
+            return processors;
+        }
+        try {
+            int threads = Integer.parseInt(value.trim());
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException ex) {
+            // Fall through to the warning
+        }
+        LOGGER.warn("Invalid LAMBDA_PRELOAD_THREADS: \"{}\", using {}", value, processors);
+        return processors;
+    }
+}
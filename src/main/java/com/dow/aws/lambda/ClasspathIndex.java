@@ -0,0 +1,325 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the class path of a Lambda function that maps each package (directory) to the class path entries that
+ * contain it, so that at init the bootstrap neither has to list {@code LAMBDA_TASK_ROOT} and its {@code lib}
+ * directory up front nor probe every jar for every class (see {@link IndexedClassLoader}). The index is generated at
+ * build time by running this class:
+ * <pre>{@code
+ * java -cp lambda-java-runtime.jar com.dow.aws.lambda.ClasspathIndex <task root> [<lib directory>]
+ * }</pre>
+ * which writes the index to {@code classpath.idx} in the task root. The task root has the layout of the deployment
+ * package (the function's classes, top-level jars and a {@code lib} directory of jars); the jars of the {@code lib}
+ * directory can be read from elsewhere (e.g. {@code target/lib}) and are indexed as if they were in {@code lib}.
+ * <p>
+ * The index is a text file that starts with the class path entries, in order and relative to the task root (the task
+ * root itself is {@code .}), each jar followed by a tab and its size, and then a line per package with the package's
+ * directory, a tab ({@code \t}) and the space-separated numbers of the entries that contain it, up to an
+ * {@code end} line (so that a truncated index is not mistaken for a complete one):
+ * <pre>
+ * classpath-index 2
+ * &#64;.
+ * &#64;lib/slf4j-api-2.0.0.jar\t64328
+ * com/example\t0
+ * org/slf4j\t1
+ * end
+ * </pre>
+ * Entries under {@code META-INF} are not indexed.
+ * <p>
+ * The index is checked against the task root without listing any directory: loading it compares the size of each
+ * indexed jar with the recorded one, and ignores the index (so the bootstrap scans the task root instead) if a jar
+ * is missing or has changed. Jars and packages that were added since the index was generated are only looked for
+ * when a lookup misses, by the {@link IndexedClassLoader}, which then lists the jars once (see
+ * {@link #findUnindexedJars(Path)}).
+ */
+public final class ClasspathIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClasspathIndex.class);
+    static final String FILE_NAME = "classpath.idx";
+    private static final String HEADER = "classpath-index 2";
+    private static final String END = "end";
+    private static final String META_INF = "META-INF/";
+
+    private final List<String> entries;
+    // The size of each jar entry, which is -1 for the task root
+    private final List<Long> sizes;
+    private final Map<String, int[]> packages;
+
+    private ClasspathIndex(List<String> entries, List<Long> sizes, Map<String, int[]> packages) {
+        this.entries = entries;
+        this.sizes = sizes;
+        this.packages = packages;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: ClasspathIndex <task root> [<lib directory>]");
+            System.exit(2);
+        }
+        Path taskRoot = Paths.get(args[0]);
+        Path libDir = args.length == 2 ? Paths.get(args[1]) : taskRoot.resolve("lib");
+        ClasspathIndex index = build(taskRoot, libDir);
+        Path file = taskRoot.resolve(FILE_NAME);
+        index.write(file);
+        System.out.println("Indexed " + index.packages.size() + " packages of " + index.entries.size() +
+                " class path entries to: " + file);
+    }
+
+    /**
+     * Reads the index of the given task root.
+     *
+     * @return the index, or null if the task root has no index, or its index can not be used: it is malformed (or
+     * truncated), of another version, or out of date (i.e. one of its jars no longer exists or has changed), which
+     * is logged
+     */
+    static ClasspathIndex load(String taskRoot) {
+        Path root = Paths.get(taskRoot);
+        Path file = root.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ClasspathIndex index;
+        String change;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith("classpath-index ") && !line.equals(HEADER)) {
+                LOGGER.warn("Ignoring classpath index of another version: \"{}\"", line);
+                return null;
+            } else if (!HEADER.equals(line)) {
+                throw new IllegalArgumentException("not a classpath index");
+            }
+            index = read(reader);
+            change = index.findChange(root);
+        } catch (IOException | IllegalArgumentException ex) {
+            LOGGER.warn("Ignoring malformed classpath index " + file + ": ", ex);
+            return null;
+        }
+        if (change != null) {
+            LOGGER.warn("Ignoring out of date classpath index, {}", change);
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Reads the entries and packages of an index, after its header.
+     *
+     * @throws IllegalArgumentException if the index is malformed
+     */
+    private static ClasspathIndex read(BufferedReader reader) throws IOException {
+        List<String> entries = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        Map<String, int[]> packages = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null && !line.equals(END)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.charAt(0) == '@') {
+                if (!packages.isEmpty()) {
+                    throw new IllegalArgumentException("class path entry after the packages: \"" + line + "\"");
+                }
+                // The task root comes first, and every other entry is a jar with a size
+                int tab = line.indexOf('\t');
+                if (entries.isEmpty() ? !line.equals("@.") : tab == -1) {
+                    throw new IllegalArgumentException("malformed class path entry: \"" + line + "\"");
+                }
+                entries.add(tab == -1 ? line.substring(1) : line.substring(1, tab));
+                sizes.add(tab == -1 ? -1 : Long.parseLong(line.substring(tab + 1)));
+                continue;
+            }
+            int tab = line.lastIndexOf('\t');
+            if (tab == -1) {
+                throw new IllegalArgumentException("malformed package: \"" + line + "\"");
+            }
+            String[] numbers = line.substring(tab + 1).split(" ");
+            int[] packageEntries = new int[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                packageEntries[i] = Integer.parseInt(numbers[i]);
+                if (packageEntries[i] < 0 || packageEntries[i] >= entries.size()) {
+                    throw new IllegalArgumentException("malformed package: \"" + line + "\"");
+                }
+            }
+            packages.put(line.substring(0, tab), packageEntries);
+        }
+        if (line == null) {
+            throw new IllegalArgumentException("truncated, there is no \"" + END + "\" line");
+        } else if (entries.isEmpty()) {
+            throw new IllegalArgumentException("there are no class path entries");
+        }
+        return new ClasspathIndex(entries, sizes, packages);
+    }
+
+    /**
+     * Builds the index of the given task root, whose class path is the task root itself, followed by its top-level
+     * jars and the jars of the lib directory (each in name order).
+     */
+    static ClasspathIndex build(Path taskRoot, Path libDir) throws IOException {
+        List<String> entries = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        Map<String, TreeSet<Integer>> packages = new TreeMap<>();
+        entries.add(".");
+        sizes.add(-1L);
+        Path lib = taskRoot.resolve("lib");
+        try (Stream<Path> files = Files.walk(taskRoot)) {
+            files.filter(Files::isRegularFile)
+                    .filter(file -> !file.startsWith(lib) && !file.startsWith(libDir))
+                    .map(taskRoot::relativize)
+                    .filter(file -> file.getNameCount() > 1 || !isJar(file) && !file.toString().equals(FILE_NAME))
+                    .map(file -> file.toString().replace('\\', '/'))
+                    .filter(name -> !name.startsWith(META_INF))
+                    .forEach(name -> addPackage(packages, name, 0));
+        }
+        for (Path jar : listJars(taskRoot)) {
+            indexJar(jar, jar.getFileName().toString(), entries, sizes, packages);
+        }
+        if (Files.isDirectory(libDir)) {
+            for (Path jar : listJars(libDir)) {
+                indexJar(jar, "lib/" + jar.getFileName(), entries, sizes, packages);
+            }
+        }
+
+        Map<String, int[]> index = new TreeMap<>();
+        packages.forEach((name, packageEntries) ->
+                index.put(name, packageEntries.stream().mapToInt(Integer::intValue).toArray()));
+        return new ClasspathIndex(entries, sizes, index);
+    }
+
+    /**
+     * Compares the indexed jars with the ones in the given task root, by their size.
+     *
+     * @return a description of the first difference found, or null if every indexed jar is unchanged
+     */
+    private String findChange(Path taskRoot) throws IOException {
+        for (int i = 1; i < entries.size(); i++) {
+            Path jar = taskRoot.resolve(entries.get(i));
+            if (!Files.isRegularFile(jar)) {
+                return "\"" + entries.get(i) + "\" does not exist";
+            } else if (Files.size(jar) != sizes.get(i)) {
+                return "\"" + entries.get(i) + "\" changed";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists the jars of the given task root and its {@code lib} directory that are not in the index, i.e. that were
+     * added after the index was generated.
+     */
+    List<Path> findUnindexedJars(Path taskRoot) throws IOException {
+        List<Path> jars = new ArrayList<>(listJars(taskRoot));
+        Path lib = taskRoot.resolve("lib");
+        if (Files.isDirectory(lib)) {
+            jars.addAll(listJars(lib));
+        }
+        Set<String> indexed = Set.copyOf(entries);
+        jars.removeIf(jar -> indexed.contains(taskRoot.relativize(jar).toString().replace('\\', '/')));
+        return jars;
+    }
+
+    /**
+     * Returns the class path entries of the index as URLs, resolved against the given task root.
+     */
+    URL[] getUrls(String taskRoot) throws IOException {
+        Path root = Paths.get(taskRoot);
+        URL[] urls = new URL[entries.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = root.resolve(entries.get(i)).normalize().toUri().toURL();
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the numbers of the class path entries that contain the given package, in class path order, or null if
+     * no entry contains it.
+     *
+     * @param packagePath the package's directory, e.g. {@code com/example} (the empty string for the root)
+     */
+    int[] getEntries(String packagePath) {
+        return packages.get(packagePath);
+    }
+
+    void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (int i = 0; i < entries.size(); i++) {
+                writer.write('@');
+                writer.write(entries.get(i));
+                if (sizes.get(i) >= 0) {
+                    writer.write('\t');
+                    writer.write(Long.toString(sizes.get(i)));
+                }
+                writer.write('\n');
+            }
+            for (Map.Entry<String, int[]> entry : packages.entrySet()) {
+                writer.write(entry.getKey());
+                int[] packageEntries = entry.getValue();
+                for (int i = 0; i < packageEntries.length; i++) {
+                    writer.write(i == 0 ? '\t' : ' ');
+                    writer.write(Integer.toString(packageEntries[i]));
+                }
+                writer.write('\n');
+            }
+            writer.write(END);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Returns the directory of the given resource, which is how packages are keyed in the index.
+     */
+    static String packageOf(String resourceName) {
+        int slash = resourceName.lastIndexOf('/');
+        return slash == -1 ? "" : resourceName.substring(0, slash);
+    }
+
+    private static void indexJar(Path jar, String entry, List<String> entries, List<Long> sizes,
+                                 Map<String, TreeSet<Integer>> packages) throws IOException {
+        int entryNumber = entries.size();
+        entries.add(entry);
+        sizes.add(Files.size(jar));
+        try (JarFile jarFile = new JarFile(jar.toFile(), true, ZipFile.OPEN_READ, JarFile.runtimeVersion())) {
+            jarFile.versionedStream()
+                    .filter(jarEntry -> !jarEntry.isDirectory() && !jarEntry.getName().startsWith(META_INF))
+                    .forEach(jarEntry -> addPackage(packages, jarEntry.getName(), entryNumber));
+        }
+    }
+
+    private static void addPackage(Map<String, TreeSet<Integer>> packages, String resourceName, int entry) {
+        packages.computeIfAbsent(packageOf(resourceName), name -> new TreeSet<>()).add(entry);
+    }
+
+    private static List<Path> listJars(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> isJar(file) && Files.isRegularFile(file)).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isJar(Path file) {
+        return file.getFileName().toString().endsWith(".jar");
+    }
+}
@@ -0,0 +1,15 @@
+package com.dow.aws.lambda;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The functional interface that {@code handleRequest(InputStream input, OutputStream output, String context)} and
+ * {@code handleRequest(InputStream input, OutputStream output, LambdaContext context)} handler methods are bound to at
+ * init by {@link HandlerInvoker}. It is public only because the runtime spins its implementation inside of the
+ * handler's class loader; Lambda functions should not implement it.
+ */
+@FunctionalInterface
+public interface ContextStreamHandler {
+    void handleRequest(Object handler, InputStream input, OutputStream output, Object context) throws Exception;
+}
@@ -0,0 +1,148 @@
+package com.dow.aws.lambda;
+
+import com.dow.aws.lambda.logging.RuntimeLogging;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The next/invoke/respond cycle of the runtime. An event loop has its own runtime API client, response buffer and
+ * invocation metrics, so several event loops (one per poller thread, see {@link Bootstrap}) can run concurrently
+ * against the same runtime API and share only the (immutable) handler invoker and the handler lifecycle. The request
+ * id of the current invocation is put in the {@link MDC} of the thread running the loop, so the log records of
+ * concurrent invocations are kept apart.
+ */
+final class EventLoop implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoop.class);
+    private static final int RESPONSE_BUFFER_INITIAL_CAPACITY = 8192;
+
+    private final RuntimeApiClient runtimeApiClient;
+    private final HandlerLifecycle handlerLifecycle;
+    private final HandlerInvoker handlerInvoker;
+    private final boolean streamResponses;
+    private final ResponseBuffer responseBuffer = new ResponseBuffer(RESPONSE_BUFFER_INITIAL_CAPACITY);
+    private final InvocationMetrics invocationMetrics;
+    private final StartupProfiler startupProfiler;
+    private final JfrRecorder jfrRecorder;
+
+    /**
+     * @param runtimeApiClient the runtime API client, which is closed once the loop ends
+     * @param streamResponses whether responses are streamed to the runtime API rather than buffered
+     * @param startupProfiler the profiler of the cold start, which only one of the event loops may mark
+     */
+    EventLoop(RuntimeApiClient runtimeApiClient, HandlerLifecycle handlerLifecycle, HandlerInvoker handlerInvoker,
+              boolean streamResponses, InvocationMetrics invocationMetrics, StartupProfiler startupProfiler,
+              JfrRecorder jfrRecorder) {
+        this.runtimeApiClient = runtimeApiClient;
+        this.handlerLifecycle = handlerLifecycle;
+        this.handlerInvoker = handlerInvoker;
+        this.streamResponses = streamResponses;
+        this.invocationMetrics = invocationMetrics;
+        this.startupProfiler = startupProfiler;
+        this.jfrRecorder = jfrRecorder;
+    }
+
+    /**
+     * Processes events until the running thread is interrupted.
+     */
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            String requestId = null;
+            // Get next Lambda Event
+            try {
+                // The execution environment may be frozen as soon as the next event is requested, so the logs of
+                // the previous invocation have to be written out before
+                RuntimeLogging.drain();
+                MDC.remove(RuntimeLogging.REQUEST_ID_KEY);
+                invocationMetrics.nextStarted();
+                Invocation invocation = runtimeApiClient.next();
+                requestId = invocation.getRequestId();
+                MDC.put(RuntimeLogging.REQUEST_ID_KEY, requestId);
+                invocationMetrics.eventReceived(invocation.getContentLength());
+                startupProfiler.mark(StartupProfiler.Phase.FIRST_NEXT);
+                LambdaContext context = new LambdaContext(invocation);
+                // Invoke Handler Method and post the results of Handler Invocation
+                if (streamResponses) {
+                    ResponseStream responseStream = runtimeApiClient.streamResponse(requestId);
+                    boolean completed = invokeStreaming(handlerLifecycle.acquire(), handlerInvoker,
+                            invocation.getBody(), context, responseStream);
+                    invocationMetrics.handlerCompleted();
+                    startupProfiler.mark(StartupProfiler.Phase.FIRST_INVOKE);
+                    if (completed) {
+                        responseStream.close();
+                    }
+                    invocationMetrics.responsePosted(responseStream.getBytesWritten());
+                    startupProfiler.mark(StartupProfiler.Phase.FIRST_RESPONSE);
+                } else {
+                    responseBuffer.reset();
+                    handlerInvoker.invoke(handlerLifecycle.acquire(), invocation.getBody(), responseBuffer, context);
+                    invocationMetrics.handlerCompleted();
+                    startupProfiler.mark(StartupProfiler.Phase.FIRST_INVOKE);
+                    runtimeApiClient.postResponse(requestId, responseBuffer);
+                    invocationMetrics.responsePosted(responseBuffer.size());
+                    startupProfiler.mark(StartupProfiler.Phase.FIRST_RESPONSE);
+                }
+                jfrRecorder.invocationCompleted();
+            } catch (Throwable ex) {
+                // Errors (e.g. a StackOverflowError in the handler) are reported like exceptions, so that a single
+                // event can not stop the loop
+                if (ex instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                // If there is no request id the next event could not be fetched, so there is nothing to report.
+                if (requestId != null) {
+                    postInvocationError(requestId, "Invocation Error", "RuntimeError");
+                    invocationMetrics.invocationFailed();
+                }
+                LOGGER.error("exception: ", ex);
+            }
+            if (requestId != null) {
+                startupProfiler.firstInvocationCompleted(requestId);
+            }
+        }
+
+        MDC.remove(RuntimeLogging.REQUEST_ID_KEY);
+        invocationMetrics.flush();
+        try {
+            runtimeApiClient.close();
+        } catch (IOException ex) {
+            LOGGER.error("exception: ", ex);
+        }
+    }
+
+    private void postInvocationError(String requestId, String errMsg, String errType) {
+        String error = Json.error(errMsg, errType);
+        try {
+            runtimeApiClient.postInvocationError(requestId, error);
+        } catch (IOException | InterruptedException ex) {
+            LOGGER.error("exception: ", ex);
+        }
+    }
+
+    /**
+     * Invokes the handler with an output stream that streams the response to the runtime API as it is written. If the
+     * handler fails after part of the response has already been sent the streamed response is aborted, otherwise the
+     * exception is rethrown so that it is reported through the regular invocation error endpoint.
+     *
+     * @return true if the handler returned, in which case the caller completes the response by closing the stream
+     */
+    private static boolean invokeStreaming(Object handlerClassObj, HandlerInvoker handlerInvoker, InputStream response,
+                                        LambdaContext context, ResponseStream responseStream) throws Exception {
+        try {
+            handlerInvoker.invoke(handlerClassObj, response, responseStream, context);
+        } catch (Throwable ex) {
+            if (!responseStream.isStarted()) {
+                throw ex;
+            }
+            responseStream.abort(ex);
+            LOGGER.error("exception while streaming response: ", ex);
+            return false;
+        }
+        return true;
+    }
+}
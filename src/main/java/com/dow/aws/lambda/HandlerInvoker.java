@@ -0,0 +1,196 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/**
+ * Invokes the Lambda request handler method. The handler method is bound once, at init, to either a
+ * {@link StreamHandler} or a {@link ContextStreamHandler} spun by {@link LambdaMetafactory}, so that dispatching an
+ * event is a plain (monomorphic) interface call that the JIT can inline - no {@code Object[]} of arguments is
+ * allocated per invocation and exceptions thrown by the handler are not wrapped in an
+ * {@link java.lang.reflect.InvocationTargetException}. If the metafactory can not be used for the handler class (for
+ * example because its package is sealed or signed, or the runtime is a native image) the handler method is instead
+ * bound to a {@link MethodHandle}.
+ * Typed handler methods (see {@link RequestHandler}) are bound together with the {@link Serializer} reader of their
+ * argument type and writer of their return type.
+ */
+@FunctionalInterface
+interface HandlerInvoker {
+    Logger LOGGER = LoggerFactory.getLogger(HandlerInvoker.class);
+
+    void invoke(Object handler, InputStream input, OutputStream output, LambdaContext context) throws Exception;
+
+    /**
+     * The shape typed handler methods are adapted to, whether or not they implement {@link RequestHandler}.
+     */
+    @FunctionalInterface
+    interface TypedHandler {
+        Object handleRequest(Object handler, Object input, LambdaContext context) throws Exception;
+    }
+
+    /**
+     * Binds the given handler method to a {@code HandlerInvoker}.
+     *
+     * @param handlerClass the Lambda request handler class
+     * @param handlerMethod the handler method, which must take either an (InputStream, OutputStream), an
+     *     (InputStream, OutputStream, String) or an (InputStream, OutputStream, LambdaContext) argument list, or be a
+     *     typed handler method taking an (I) or an (I, LambdaContext) argument list
+     * @param serializer supplies the serializer for typed handler methods
+     * @return the bound {@code HandlerInvoker}
+     * @throws IllegalArgumentException if the handler method has an unsupported argument list, or its argument or
+     *     return type is not supported by the serializer
+     * @throws IllegalAccessException if the handler method is not accessible
+     */
+    static HandlerInvoker bind(Class<?> handlerClass, Method handlerMethod, Supplier<Serializer> serializer)
+            throws IllegalAccessException {
+        Class<?>[] parameterTypes = handlerMethod.getParameterTypes();
+        if (isTyped(parameterTypes)) {
+            return bindTyped(handlerClass, handlerMethod, serializer.get());
+        }
+        if (parameterTypes.length < 2 || parameterTypes.length > 3 ||
+                !parameterTypes[0].isAssignableFrom(InputStream.class) ||
+                !parameterTypes[1].isAssignableFrom(OutputStream.class) ||
+                (parameterTypes.length == 3 && !parameterTypes[2].isAssignableFrom(String.class) &&
+                        parameterTypes[2] != LambdaContext.class)) {
+            throw new IllegalArgumentException("Lambda request handler method \"" + handlerMethod.getName() +
+                    "\" must take either (InputStream, OutputStream), (InputStream, OutputStream, String), " +
+                    "(InputStream, OutputStream, LambdaContext), (I) or (I, LambdaContext) arguments");
+        }
+
+        MethodHandle handle = MethodHandles.publicLookup().unreflect(handlerMethod);
+
+        if (parameterTypes.length == 2) {
+            StreamHandler streamHandler = spin(handlerClass, handle, StreamHandler.class, MethodType.methodType(
+                    void.class, handlerClass, InputStream.class, OutputStream.class));
+            if (streamHandler == null) {
+                MethodHandle exact = handle.asType(MethodType.methodType(
+                        void.class, Object.class, InputStream.class, OutputStream.class));
+                streamHandler = (handler, input, output) -> {
+                    try {
+                        exact.invokeExact(handler, input, output);
+                    } catch (Exception | Error ex) {
+                        throw ex;
+                    } catch (Throwable t) {
+                        throw new RuntimeException(t);
+                    }
+                };
+            }
+            StreamHandler bound = streamHandler;
+            return (handler, input, output, context) -> bound.handleRequest(handler, input, output);
+        } else {
+            // The context is only serialized to JSON for handlers that take it as a String
+            boolean typedContext = parameterTypes[2] == LambdaContext.class;
+            Class<?> contextType = typedContext ? LambdaContext.class : String.class;
+            ContextStreamHandler contextStreamHandler = spin(handlerClass, handle, ContextStreamHandler.class,
+                    MethodType.methodType(void.class, handlerClass, InputStream.class, OutputStream.class,
+                            contextType));
+            if (contextStreamHandler == null) {
+                MethodHandle exact = handle.asType(MethodType.methodType(
+                        void.class, Object.class, InputStream.class, OutputStream.class, Object.class));
+                contextStreamHandler = (handler, input, output, context) -> {
+                    try {
+                        exact.invokeExact(handler, input, output, context);
+                    } catch (Exception | Error ex) {
+                        throw ex;
+                    } catch (Throwable t) {
+                        throw new RuntimeException(t);
+                    }
+                };
+            }
+            ContextStreamHandler bound = contextStreamHandler;
+            if (typedContext) {
+                return bound::handleRequest;
+            }
+            return (handler, input, output, context) -> bound.handleRequest(handler, input, output, context.toJson());
+        }
+    }
+
+    /**
+     * Returns true if the handler method takes a typed event, i.e. an (I) or an (I, LambdaContext) argument list where
+     * {@code I} is not an {@code InputStream}.
+     */
+    private static boolean isTyped(Class<?>[] parameterTypes) {
+        return (parameterTypes.length == 1 || (parameterTypes.length == 2 && parameterTypes[1] == LambdaContext.class))
+                && !parameterTypes[0].isAssignableFrom(InputStream.class);
+    }
+
+    /**
+     * Binds a typed handler method. The reader of its argument type and the writer of its return type are resolved
+     * once, here, so that an invocation deserializes the event straight from the body received from the runtime API
+     * and serializes the result straight into the response. Handlers implementing {@link RequestHandler} are called
+     * through that interface, other typed handler methods through a {@link MethodHandle}.
+     */
+    @SuppressWarnings("unchecked")
+    private static HandlerInvoker bindTyped(Class<?> handlerClass, Method handlerMethod, Serializer serializer)
+            throws IllegalAccessException {
+        Serializer.Reader<Object> reader = serializer.reader(handlerMethod.getGenericParameterTypes()[0]);
+        Serializer.Writer<Object> writer = handlerMethod.getReturnType() == void.class ?
+                null : serializer.writer(handlerMethod.getGenericReturnType());
+
+        TypedHandler typedHandler;
+        if (RequestHandler.class.isAssignableFrom(handlerClass) && handlerMethod.getName().equals("handleRequest") &&
+                handlerMethod.getParameterCount() == 2) {
+            typedHandler = (handler, input, context) ->
+                    ((RequestHandler<Object, Object>) handler).handleRequest(input, context);
+        } else {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(handlerMethod);
+            if (handlerMethod.getParameterCount() == 1) {
+                handle = MethodHandles.dropArguments(handle, 2, LambdaContext.class);
+            }
+            if (writer == null) {
+                // Adapt void handler methods to return null
+                handle = MethodHandles.filterReturnValue(handle, MethodHandles.constant(Object.class, null));
+            }
+            MethodHandle exact = handle.asType(MethodType.methodType(
+                    Object.class, Object.class, Object.class, LambdaContext.class));
+            typedHandler = (handler, input, context) -> {
+                try {
+                    return (Object) exact.invokeExact(handler, input, context);
+                } catch (Exception | Error ex) {
+                    throw ex;
+                } catch (Throwable t) {
+                    throw new RuntimeException(t);
+                }
+            };
+        }
+
+        return (handler, input, output, context) -> {
+            Object result = typedHandler.handleRequest(handler, reader.read(input), context);
+            if (writer != null) {
+                writer.write(result, output);
+            }
+        };
+    }
+
+    /**
+     * Spins an implementation of the given functional interface that calls the handler method directly.
+     *
+     * @return the functional interface implementation, or null if the metafactory could not be used
+     */
+    private static <T> T spin(Class<?> handlerClass, MethodHandle handle, Class<T> functionalInterface,
+                              MethodType instantiatedMethodType) {
+        if (NativeImage.inImage()) {
+            return null;
+        }
+        Method sam = functionalInterface.getMethods()[0];
+        try {
+            MethodHandles.Lookup lookup = HandlerLookup.in(handlerClass);
+            return functionalInterface.cast(LambdaMetafactory.metafactory(lookup, sam.getName(),
+                    MethodType.methodType(functionalInterface),
+                    MethodType.methodType(sam.getReturnType(), sam.getParameterTypes()),
+                    handle, instantiatedMethodType).getTarget().invoke());
+        } catch (Throwable t) {
+            LOGGER.warn("Could not bind handler method with LambdaMetafactory, falling back to MethodHandle: ", t);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dow.aws.lambda;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Manages the lifecycle of the Lambda request handler instance. By default the handler is constructed once during
+ * the init phase and the same instance is reused for every event, so that any state the handler builds (SDK clients,
+ * connection pools, parsed configuration, etc.) survives across warm invocations. Handlers that can not be reused
+ * may opt in to a new instance per invocation by being annotated with {@link PerInvocation} or by setting the
+ * {@code LAMBDA_HANDLER_LIFECYCLE} environment variable to {@code per-invocation}.
+ * <p>
+ * When events are processed concurrently (see {@code LAMBDA_RUNTIME_CONCURRENCY}) a singleton handler is invoked by
+ * several threads at once and so must be thread-safe. Handlers that are not, but are still worth reusing, can set
+ * {@code LAMBDA_HANDLER_LIFECYCLE} to {@code per-thread} to get an instance per poller thread.
+ */
+final class HandlerLifecycle {
+    private final Constructor<?> constructor;
+    private final Mode mode;
+    private final Object instance;
+    private final ThreadLocal<Object> threadInstance = new ThreadLocal<>();
+
+    enum Mode {
+        SINGLETON,
+        PER_THREAD,
+        PER_INVOCATION
+    }
+
+    /**
+     * Creates the lifecycle for the given handler class. The handler is always instantiated once here (even in
+     * {@link Mode#PER_INVOCATION} mode) so that a failing constructor is reported as an init error rather than as an
+     * error of the first invocation.
+     *
+     * @param handlerClass the Lambda request handler class, which must have a public no-arg constructor
+     * @param mode the instance mode to use
+     * @throws ReflectiveOperationException if the handler could not be instantiated
+     */
+    HandlerLifecycle(Class<?> handlerClass, Mode mode) throws ReflectiveOperationException {
+        this.constructor = handlerClass.getConstructor();
+        this.mode = mode;
+        this.instance = constructor.newInstance();
+        if (mode == Mode.PER_THREAD) {
+            threadInstance.set(instance);
+        }
+    }
+
+    /**
+     * Returns the handler instance to use for the current invocation.
+     */
+    Object acquire() throws ReflectiveOperationException {
+        switch (mode) {
+            case SINGLETON:
+                return instance;
+            case PER_THREAD:
+                Object handler = threadInstance.get();
+                if (handler == null) {
+                    handler = constructor.newInstance();
+                    threadInstance.set(handler);
+                }
+                return handler;
+            default:
+                return constructor.newInstance();
+        }
+    }
+
+    /**
+     * Returns the instance constructed at init, which is the one that is reused in {@link Mode#SINGLETON} mode.
+     */
+    Object getInstance() {
+        return instance;
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Resolves the instance mode for the given handler class. An explicit {@code LAMBDA_HANDLER_LIFECYCLE}
+     * environment variable takes precedence over the {@link PerInvocation} annotation.
+     *
+     * @param handlerClass the Lambda request handler class
+     * @param lifecycleEnv the value of the {@code LAMBDA_HANDLER_LIFECYCLE} environment variable (may be null)
+     * @return the instance mode for the handler
+     */
+    static Mode resolveMode(Class<?> handlerClass, String lifecycleEnv) {
+        if (lifecycleEnv != null && !lifecycleEnv.isBlank()) {
+            switch (lifecycleEnv.trim().toLowerCase()) {
+                case "singleton":
+                    return Mode.SINGLETON;
+                case "per-thread":
+                    return Mode.PER_THREAD;
+                case "per-invocation":
+                    return Mode.PER_INVOCATION;
+                default:
+                    throw new IllegalArgumentException("Unknown LAMBDA_HANDLER_LIFECYCLE: \"" + lifecycleEnv +
+                            "\" (expected \"singleton\", \"per-thread\" or \"per-invocation\")");
+            }
+        }
+        return handlerClass.isAnnotationPresent(PerInvocation.class) ? Mode.PER_INVOCATION : Mode.SINGLETON;
+    }
+}
@@ -0,0 +1,108 @@
+package com.dow.aws.lambda;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Obtains a full-privilege {@link MethodHandles.Lookup} in the package of a Lambda request handler class.
+ * <p>
+ * {@link MethodHandles#privateLookupIn(Class, MethodHandles.Lookup)} drops module access when the target class is
+ * in another module (which the handler always is, as it is loaded by its own class loader) and
+ * {@link java.lang.invoke.LambdaMetafactory} refuses such a lookup. To get around this a tiny class is defined in the
+ * handler's package whose only method returns {@link MethodHandles#lookup()}, i.e. a lookup on a class of the
+ * handler's own module:
+ * <pre>{@code
+ * public final class LambdaRuntime$$Lookup {
+ *     public static MethodHandles.Lookup lookup() {
+ *         return MethodHandles.lookup();
+ *     }
+ * }
+ * }</pre>
+ */
+final class HandlerLookup {
+    private static final String SIMPLE_NAME = "LambdaRuntime$$Lookup";
+    private static final String LOOKUP_DESCRIPTOR = "()Ljava/lang/invoke/MethodHandles$Lookup;";
+
+    private HandlerLookup() {}
+
+    static MethodHandles.Lookup in(Class<?> handlerClass) throws ReflectiveOperationException {
+        HandlerLookup.class.getModule().addReads(handlerClass.getModule());
+        MethodHandles.Lookup packageLookup = MethodHandles.privateLookupIn(handlerClass, MethodHandles.lookup());
+        String packageName = handlerClass.getPackageName();
+        String className = packageName.isEmpty() ? SIMPLE_NAME : packageName + "." + SIMPLE_NAME;
+        Class<?> lookupClass;
+        try {
+            lookupClass = packageLookup.findClass(className);
+        } catch (ClassNotFoundException ex) {
+            lookupClass = packageLookup.defineClass(classBytes(className.replace('.', '/')));
+        }
+        return (MethodHandles.Lookup) lookupClass.getMethod("lookup").invoke(null);
+    }
+
+    private static byte[] classBytes(String internalName) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0); // minor version
+            out.writeShort(52); // major version (Java 8, which does not require stack map frames for linear code)
+
+            // Constant pool
+            out.writeShort(12);
+            utf8(out, internalName); // #1
+            classRef(out, 1); // #2 this class
+            utf8(out, "java/lang/Object"); // #3
+            classRef(out, 3); // #4 super class
+            utf8(out, "java/lang/invoke/MethodHandles"); // #5
+            classRef(out, 5); // #6
+            utf8(out, "lookup"); // #7
+            utf8(out, LOOKUP_DESCRIPTOR); // #8
+            out.writeByte(12); // #9 NameAndType lookup:()Ljava/lang/invoke/MethodHandles$Lookup;
+            out.writeShort(7);
+            out.writeShort(8);
+            out.writeByte(10); // #10 Methodref java/lang/invoke/MethodHandles.lookup
+            out.writeShort(6);
+            out.writeShort(9);
+            utf8(out, "Code"); // #11
+
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+            out.writeShort(2); // this class
+            out.writeShort(4); // super class
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+
+            out.writeShort(1); // methods
+            out.writeShort(0x0001 | 0x0008); // ACC_PUBLIC | ACC_STATIC
+            out.writeShort(7); // name
+            out.writeShort(8); // descriptor
+            out.writeShort(1); // attributes
+            out.writeShort(11); // "Code"
+            out.writeInt(16); // attribute length
+            out.writeShort(1); // max stack
+            out.writeShort(0); // max locals
+            out.writeInt(4); // code length
+            out.writeByte(0xB8); // invokestatic #10
+            out.writeShort(10);
+            out.writeByte(0xB0); // areturn
+            out.writeShort(0); // exception table
+            out.writeShort(0); // code attributes
+
+            out.writeShort(0); // class attributes
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void classRef(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+    }
+}
@@ -0,0 +1,91 @@
+package com.dow.aws.lambda;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * A {@link RuntimeApiClient} that uses the general-purpose {@link HttpClient}.
+ */
+final class HttpRuntimeApiClient implements RuntimeApiClient {
+    private static final int STREAMING_RESPONSE_CHUNK_SIZE = 32768;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final RuntimeEndpoints endpoints;
+    private final HttpRequest nextRequest;
+
+    HttpRuntimeApiClient(RuntimeEndpoints endpoints) {
+        this.endpoints = endpoints;
+        this.nextRequest = HttpRequest.newBuilder().uri(endpoints.nextUri()).build();
+    }
+
+    @Override
+    public Invocation next() throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(nextRequest, HttpResponse.BodyHandlers.ofInputStream());
+        HttpHeaders headers = response.headers();
+        return new Invocation(
+                headers.firstValue(Invocation.LAMBDA_RUNTIME_AWS_REQUEST_ID).orElse(""),
+                headers.firstValue(Invocation.LAMBDA_RUNTIME_DEADLINE_MS).orElse(null),
+                headers.firstValue(Invocation.LAMBDA_RUNTIME_INVOKED_FUNCTION_ARN).orElse(""),
+                headers.firstValue(Invocation.LAMBDA_RUNTIME_TRACE_ID).orElse(null),
+                headers.firstValue(Invocation.LAMBDA_RUNTIME_CLIENT_CONTEXT).orElse(null),
+                headers.firstValue(Invocation.LAMBDA_RUNTIME_COGNITO_IDENTITY).orElse(null),
+                response.body(),
+                headers.firstValueAsLong("Content-Length").orElse(-1));
+    }
+
+    @Override
+    public void postResponse(String requestId, ResponseBuffer response) throws IOException, InterruptedException {
+        post(endpoints.responseUri(requestId),
+                HttpRequest.BodyPublishers.ofByteArray(response.array(), 0, response.size()));
+    }
+
+    @Override
+    public ResponseStream streamResponse(String requestId) {
+        return new StreamingResponseOutputStream(httpClient, endpoints.responseUri(requestId),
+                STREAMING_RESPONSE_CHUNK_SIZE);
+    }
+
+    @Override
+    public void postInvocationError(String requestId, String errorJson) throws IOException, InterruptedException {
+        post(endpoints.errorUri(requestId), HttpRequest.BodyPublishers.ofString(errorJson));
+    }
+
+    @Override
+    public void postInitError(String errorJson) throws IOException, InterruptedException {
+        post(endpoints.initErrorUri(), HttpRequest.BodyPublishers.ofString(errorJson));
+    }
+
+    @Override
+    public void restoreNext() throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder().uri(endpoints.restoreNextUri()).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Runtime API responded with status " + response.statusCode() +
+                    " to runtime/restore/next");
+        }
+    }
+
+    @Override
+    public void postRestoreError(String errorJson) throws IOException, InterruptedException {
+        post(endpoints.restoreErrorUri(), HttpRequest.BodyPublishers.ofString(errorJson));
+    }
+
+    @Override
+    public void close() {
+        // The HttpClient has no close method (before Java 21), its resources are released once it is unreachable.
+    }
+
+    private void post(URI uri, HttpRequest.BodyPublisher body) throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder().uri(uri).POST(body).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Runtime API responded with status " + response.statusCode() + " to " +
+                    uri.getPath());
+        }
+    }
+}
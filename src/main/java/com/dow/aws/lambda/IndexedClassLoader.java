@@ -0,0 +1,267 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * A {@link URLClassLoader} over the class path of a Lambda function that uses the function's {@link ClasspathIndex}
+ * to go straight to the class path entries that contain the package of a class (or resource), rather than probing
+ * every entry in turn. Jars are only opened once a class (or resource) is actually loaded from them. Listing
+ * resources ({@link #findResources(String)}) and resources under {@code META-INF}, which is not indexed, fall back to
+ * the {@link URLClassLoader}.
+ * <p>
+ * A class that is not in the entries the index has for its package is also looked for in the task root, where the
+ * function's own classes of a package added since the index was generated are, which costs a single file lookup. The
+ * first such miss also lists the jars of the task root, and if some of them are not indexed (so the index is out of
+ * date) they are added to the class path and every later miss falls back to probing all entries, like the
+ * {@link URLClassLoader}.
+ * <p>
+ * The class loader is parallel capable, so that classes are loaded under a lock per class name rather than one on the
+ * class loader, and {@link ClassPreloader} can load the function's classes from several threads at once.
+ */
+final class IndexedClassLoader extends URLClassLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedClassLoader.class);
+    private static final String META_INF = "META-INF/";
+    // The number of the task root's class path entry
+    private static final int TASK_ROOT = 0;
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final ClasspathIndex index;
+    private final URL[] urls;
+    private final Path[] paths;
+    private final boolean[] directories;
+    private final JarFile[] jars;
+    private final Object unindexedLock = new Object();
+    // Whether jars were added to the task root after the index was generated, which is only checked on the first miss
+    private volatile Boolean unindexedJars;
+
+    IndexedClassLoader(URL[] urls, ClasspathIndex index) {
+        super(urls);
+        this.index = index;
+        this.urls = urls.clone();
+        this.paths = new Path[urls.length];
+        this.directories = new boolean[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                paths[i] = Paths.get(urls[i].toURI());
+            } catch (URISyntaxException | IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Not a file URL: " + urls[i], ex);
+            }
+            // As for the URLClassLoader, a URL that ends with a slash is a directory and any other URL a jar
+            directories[i] = urls[i].getPath().endsWith("/");
+        }
+        this.jars = new JarFile[urls.length];
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String resourceName = name.replace('.', '/').concat(".class");
+        int[] entries = index.getEntries(ClasspathIndex.packageOf(resourceName));
+        try {
+            if (entries != null) {
+                for (int entry : entries) {
+                    Class<?> c = defineClass(name, resourceName, entry);
+                    if (c != null) {
+                        return c;
+                    }
+                }
+            }
+            if (!contains(entries, TASK_ROOT)) {
+                Class<?> c = defineClass(name, resourceName, TASK_ROOT);
+                if (c != null) {
+                    return c;
+                }
+            }
+        } catch (IOException ex) {
+            throw new ClassNotFoundException(name, ex);
+        }
+        if (hasUnindexedJars()) {
+            return super.findClass(name);
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if (name.startsWith(META_INF)) {
+            return super.findResource(name);
+        }
+        int[] entries = index.getEntries(ClasspathIndex.packageOf(name));
+        try {
+            if (entries != null) {
+                for (int entry : entries) {
+                    URL url = findResource(name, entry);
+                    if (url != null) {
+                        return url;
+                    }
+                }
+            }
+            if (!contains(entries, TASK_ROOT)) {
+                URL url = findResource(name, TASK_ROOT);
+                if (url != null) {
+                    return url;
+                }
+            }
+        } catch (IOException ex) {
+            // Like the URLClassLoader, treat an entry that can not be read as not having the resource
+            return null;
+        }
+        return hasUnindexedJars() ? super.findResource(name) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (jars) {
+            for (int i = 0; i < jars.length; i++) {
+                if (jars[i] != null) {
+                    jars[i].close();
+                    jars[i] = null;
+                }
+            }
+        }
+        super.close();
+    }
+
+    /**
+     * Returns the URL of the resource in the given class path entry, or null if the entry does not contain it.
+     */
+    private URL findResource(String name, int entry) throws IOException {
+        JarFile jar = jar(entry);
+        if (jar == null) {
+            Path file = paths[entry].resolve(name);
+            return Files.isRegularFile(file) ? file.toUri().toURL() : null;
+        }
+        return jar.getJarEntry(name) != null ? new URL("jar:" + urls[entry] + "!/" + name) : null;
+    }
+
+    /**
+     * Returns whether the task root has jars that are not in the index, adding them to the class path. The jars are
+     * only listed the first time this is called.
+     */
+    private boolean hasUnindexedJars() {
+        Boolean result = unindexedJars;
+        if (result == null) {
+            synchronized (unindexedLock) {
+                result = unindexedJars;
+                if (result == null) {
+                    List<Path> jars;
+                    try {
+                        jars = index.findUnindexedJars(paths[TASK_ROOT]);
+                    } catch (IOException ex) {
+                        LOGGER.warn("Could not list the jars of the task root: ", ex);
+                        jars = List.of();
+                    }
+                    for (Path jar : jars) {
+                        LOGGER.warn("\"{}\" is not in the classpath index, which is out of date", jar);
+                        try {
+                            addURL(jar.toUri().toURL());
+                        } catch (IOException ex) {
+                            LOGGER.warn("Could not add \"" + jar + "\" to the class path: ", ex);
+                        }
+                    }
+                    result = !jars.isEmpty();
+                    unindexedJars = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean contains(int[] entries, int entry) {
+        if (entries != null) {
+            for (int e : entries) {
+                if (e == entry) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Defines the class from the given class path entry.
+     *
+     * @return the class, or null if the entry does not contain it
+     */
+    private Class<?> defineClass(String name, String resourceName, int entry) throws IOException {
+        JarFile jar = jar(entry);
+        byte[] bytes;
+        CodeSigner[] signers = null;
+        Manifest manifest = null;
+        if (jar == null) {
+            Path file = paths[entry].resolve(resourceName);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            bytes = Files.readAllBytes(file);
+        } else {
+            JarEntry jarEntry = jar.getJarEntry(resourceName);
+            if (jarEntry == null) {
+                return null;
+            }
+            try (InputStream in = jar.getInputStream(jarEntry)) {
+                bytes = in.readAllBytes();
+            }
+            // The signers of an entry are only known once it has been read
+            signers = jarEntry.getCodeSigners();
+            manifest = jar.getManifest();
+        }
+
+        int dot = name.lastIndexOf('.');
+        if (dot != -1) {
+            definePackageOnce(name.substring(0, dot), manifest, urls[entry]);
+        }
+        return defineClass(name, bytes, 0, bytes.length, new CodeSource(urls[entry], signers));
+    }
+
+    private void definePackageOnce(String packageName, Manifest manifest, URL url) {
+        if (getDefinedPackage(packageName) != null) {
+            return;
+        }
+        try {
+            if (manifest == null) {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            } else {
+                definePackage(packageName, manifest, url);
+            }
+        } catch (IllegalArgumentException ex) {
+            // Defined concurrently by another thread
+        }
+    }
+
+    /**
+     * Returns the opened jar of the given class path entry, or null if the entry is a directory.
+     */
+    private JarFile jar(int entry) throws IOException {
+        if (directories[entry]) {
+            return null;
+        }
+        synchronized (jars) {
+            JarFile jar = jars[entry];
+            if (jar == null) {
+                jar = new JarFile(paths[entry].toFile(), true, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+                jars[entry] = jar;
+            }
+            return jar;
+        }
+    }
+}
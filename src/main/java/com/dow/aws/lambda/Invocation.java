@@ -0,0 +1,78 @@
+package com.dow.aws.lambda;
+
+import java.io.InputStream;
+
+/**
+ * An event received from the runtime API's {@code runtime/invocation/next} resource. Header values are kept as
+ * received and only parsed when (and if) they are read.
+ */
+final class Invocation {
+    // Headers sent with runtime/invocation/next resource:
+    // https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html#runtimes-api-next
+    static final String LAMBDA_RUNTIME_AWS_REQUEST_ID = "Lambda-Runtime-Aws-Request-Id";
+    static final String LAMBDA_RUNTIME_DEADLINE_MS = "Lambda-Runtime-Deadline-Ms";
+    static final String LAMBDA_RUNTIME_INVOKED_FUNCTION_ARN = "Lambda-Runtime-Invoked-Function-Arn";
+    static final String LAMBDA_RUNTIME_TRACE_ID = "Lambda-Runtime-Trace-Id";
+    static final String LAMBDA_RUNTIME_CLIENT_CONTEXT = "Lambda-Runtime-Client-Context";
+    static final String LAMBDA_RUNTIME_COGNITO_IDENTITY = "Lambda-Runtime-Cognito-Identity";
+
+    private final String requestId;
+    private final String deadline;
+    private final String invokedFunctionArn;
+    private final String traceId;
+    private final String clientContext;
+    private final String cognitoIdentity;
+    private final InputStream body;
+    private final long contentLength;
+
+    Invocation(String requestId, String deadline, String invokedFunctionArn, String traceId,
+               String clientContext, String cognitoIdentity, InputStream body, long contentLength) {
+        this.requestId = requestId;
+        this.deadline = deadline;
+        this.invokedFunctionArn = invokedFunctionArn;
+        this.traceId = traceId;
+        this.clientContext = clientContext;
+        this.cognitoIdentity = cognitoIdentity;
+        this.body = body;
+        this.contentLength = contentLength;
+    }
+
+    String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns the time at which the invocation times out, in milliseconds since the epoch (or 0 if the runtime API did
+     * not send a deadline).
+     */
+    long getDeadlineMillis() {
+        return deadline == null ? 0 : Long.parseLong(deadline);
+    }
+
+    String getInvokedFunctionArn() {
+        return invokedFunctionArn;
+    }
+
+    String getTraceId() {
+        return traceId;
+    }
+
+    String getClientContext() {
+        return clientContext;
+    }
+
+    String getCognitoIdentity() {
+        return cognitoIdentity;
+    }
+
+    InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the size of the event body in bytes, or -1 if it is not known.
+     */
+    long getContentLength() {
+        return contentLength;
+    }
+}
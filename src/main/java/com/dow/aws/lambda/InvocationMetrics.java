@@ -0,0 +1,221 @@
+package com.dow.aws.lambda;
+
+import com.dow.aws.lambda.logging.RuntimeLogging;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the runtime's own share of each invocation - the time spent waiting in {@code runtime/invocation/next},
+ * in the handler and posting the response, the bytes received and sent, and the garbage collections that ran during
+ * the invocation - and writes them as a {@link MetricRecord} every {@code LAMBDA_INVOCATION_METRICS_BATCH}
+ * invocations (or, once {@code LAMBDA_INVOCATION_METRICS_INTERVAL_MS} has passed since the last record, after the next
+ * invocation). Durations are recorded into {@link Histogram}s, so that recording an invocation does not allocate,
+ * and their percentiles are written. Configured by the following environment variables:
+ * <ul>
+ *     <li>{@code LAMBDA_INVOCATION_METRICS} - {@code json} or {@code emf} (see {@link StartupProfiler}). Metrics are
+ *     disabled unless this is set.</li>
+ *     <li>{@code LAMBDA_INVOCATION_METRICS_BATCH} - the number of invocations per record (defaults to 100).</li>
+ *     <li>{@code LAMBDA_INVOCATION_METRICS_INTERVAL_MS} - the maximum time covered by a record (defaults to 60000).
+ *     As the execution environment is frozen between invocations this is only checked after an invocation.</li>
+ * </ul>
+ * Streamed responses are sent while the handler runs, so their time is part of the handler time.
+ */
+final class InvocationMetrics {
+    private static final InvocationMetrics DISABLED = new InvocationMetrics(false, false, 0, 0, null, null);
+    private static final int DEFAULT_BATCH = 100;
+    private static final int DEFAULT_INTERVAL_MILLIS = 60_000;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final String[] QUANTILE_NAMES = {"P50", "P90", "P99"};
+
+    private final boolean enabled;
+    private final boolean emf;
+    private final int batch;
+    private final long intervalNanos;
+    private final String namespace;
+    private final String functionName;
+    private final List<GarbageCollectorMXBean> garbageCollectors;
+    private final Histogram nextWait = new Histogram();
+    private final Histogram handler = new Histogram();
+    private final Histogram response = new Histogram();
+    private long invocations;
+    private long errors;
+    private long bytesIn;
+    private long bytesOut;
+    private long gcCount;
+    private long gcMillis;
+    private long nextStarted;
+    private long eventReceived;
+    private long handlerCompleted;
+    private long gcCountAtEvent;
+    private long gcMillisAtEvent;
+    private long recordStarted;
+    private long recordStartedMillis;
+
+    private InvocationMetrics(boolean enabled, boolean emf, int batch, long intervalNanos, String namespace,
+                              String functionName) {
+        this.enabled = enabled;
+        this.emf = emf;
+        this.batch = batch;
+        this.intervalNanos = intervalNanos;
+        this.namespace = namespace;
+        this.functionName = functionName;
+        this.garbageCollectors = enabled ? ManagementFactory.getGarbageCollectorMXBeans() : List.of();
+        this.recordStarted = System.nanoTime();
+        this.recordStartedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates the metrics of the event loop from the environment of the Lambda function.
+     *
+     * @return the metrics, which are a no-op if {@code LAMBDA_INVOCATION_METRICS} is not set
+     */
+    static InvocationMetrics create(Map<String, String> env) {
+        String setting = env.get("LAMBDA_INVOCATION_METRICS");
+        if (setting == null || setting.isBlank() || setting.trim().equalsIgnoreCase("off")) {
+            return DISABLED;
+        }
+        return new InvocationMetrics(true, setting.trim().equalsIgnoreCase("emf"),
+                parseInt(env.get("LAMBDA_INVOCATION_METRICS_BATCH"), DEFAULT_BATCH),
+                TimeUnit.MILLISECONDS.toNanos(parseInt(env.get("LAMBDA_INVOCATION_METRICS_INTERVAL_MS"),
+                        DEFAULT_INTERVAL_MILLIS)),
+                MetricRecord.namespace(env.get("LAMBDA_METRICS_NAMESPACE")), env.get("AWS_LAMBDA_FUNCTION_NAME"));
+    }
+
+    /**
+     * Called before the event loop asks the runtime API for the next event.
+     */
+    void nextStarted() {
+        if (enabled) {
+            nextStarted = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called once the next event has been received.
+     *
+     * @param contentLength the size of the event, or -1 if it is not known
+     */
+    void eventReceived(long contentLength) {
+        if (!enabled) {
+            return;
+        }
+        eventReceived = System.nanoTime();
+        handlerCompleted = 0;
+        nextWait.record(eventReceived - nextStarted);
+        bytesIn += Math.max(contentLength, 0);
+        gcCountAtEvent = totalGcCount();
+        gcMillisAtEvent = totalGcMillis();
+    }
+
+    void handlerCompleted() {
+        if (enabled) {
+            handlerCompleted = System.nanoTime();
+            handler.record(handlerCompleted - eventReceived);
+        }
+    }
+
+    /**
+     * Called once the response has been posted (or, for a streamed response, completed).
+     */
+    void responsePosted(long responseBytes) {
+        if (!enabled) {
+            return;
+        }
+        response.record(System.nanoTime() - handlerCompleted);
+        bytesOut += responseBytes;
+        invocationCompleted();
+    }
+
+    /**
+     * Called instead of {@link #responsePosted(long)} if the invocation failed.
+     */
+    void invocationFailed() {
+        if (!enabled) {
+            return;
+        }
+        errors++;
+        invocationCompleted();
+    }
+
+    /**
+     * Writes the metrics recorded since the last record, if there are any.
+     */
+    void flush() {
+        if (!enabled || invocations == 0) {
+            return;
+        }
+        MetricRecord record = new MetricRecord("invocations", emf)
+                .count("invocations", invocations)
+                .count("errors", errors)
+                .bytes("bytesIn", bytesIn)
+                .bytes("bytesOut", bytesOut)
+                .count("gcCount", gcCount)
+                .millis("gcTime", TimeUnit.MILLISECONDS.toNanos(gcMillis));
+        addHistogram(record, "nextWait", nextWait);
+        addHistogram(record, "handler", handler);
+        addHistogram(record, "response", response);
+        RuntimeLogging.println(record.toJson(namespace, functionName, recordStartedMillis));
+
+        invocations = 0;
+        errors = 0;
+        bytesIn = 0;
+        bytesOut = 0;
+        gcCount = 0;
+        gcMillis = 0;
+        nextWait.reset();
+        handler.reset();
+        response.reset();
+        recordStarted = System.nanoTime();
+        recordStartedMillis = System.currentTimeMillis();
+    }
+
+    private void invocationCompleted() {
+        gcCount += totalGcCount() - gcCountAtEvent;
+        gcMillis += totalGcMillis() - gcMillisAtEvent;
+        if (++invocations >= batch || System.nanoTime() - recordStarted >= intervalNanos) {
+            flush();
+        }
+    }
+
+    private static void addHistogram(MetricRecord record, String name, Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        for (int i = 0; i < QUANTILES.length; i++) {
+            record.millis(name + QUANTILE_NAMES[i], histogram.getValueAtQuantile(QUANTILES[i]));
+        }
+        record.millis(name + "Max", histogram.getMax());
+        record.millis(name + "Mean", histogram.getMean());
+    }
+
+    private long totalGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            total += Math.max(garbageCollector.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            total += Math.max(garbageCollector.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.dow.aws.lambda;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a continuous JFR recording for the lifetime of the execution environment, configured by the following
+ * environment variables:
+ * <ul>
+ *     <li>{@code LAMBDA_JFR_SETTINGS} - the JFR settings to record with, either the name of a predefined
+ *     configuration ({@code default} or {@code profile}) or the path of a {@code .jfc} file. Recording is disabled if
+ *     this is not set.</li>
+ *     <li>{@code LAMBDA_JFR_DUMP_INVOCATIONS} - dump the recording every N invocations.</li>
+ *     <li>{@code LAMBDA_JFR_DUMP_DIR} - the directory recordings are dumped to (defaults to {@code /tmp/jfr}).</li>
+ *     <li>{@code LAMBDA_JFR_MAX_DUMPS} - the number of dumps kept in the dump directory when there is no
+ *     {@link RecordingUploader}, the oldest are deleted (defaults to 5).</li>
+ * </ul>
+ * The recording is also dumped when the JVM exits, and can be dumped at any time with
+ * {@code jcmd <pid> JFR.dump name=lambda-runtime}. Dumps are written (and handed to any {@link RecordingUploader}s)
+ * on a background thread, so apart from incrementing a counter nothing is done per invocation. Uploaded dumps are
+ * deleted, and at most {@code LAMBDA_JFR_MAX_DUMPS} are kept otherwise, as every dump can be as large as the
+ * recording (up to 64 MB) and {@code /tmp} is small.
+ */
+final class JfrRecorder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JfrRecorder.class);
+    private static final JfrRecorder DISABLED = new JfrRecorder(null, null, 0, 0);
+    private static final long MAX_RECORDING_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_MAX_DUMPS = 5;
+
+    private final Recording recording;
+    private final Path dumpDir;
+    private final int dumpInvocations;
+    private final int maxDumps;
+    private final AtomicInteger dumpCount = new AtomicInteger();
+    // The dumps kept in the dump directory, oldest first, which are only accessed from the dump thread
+    private final Deque<Path> keptDumps = new ArrayDeque<>();
+    private final ExecutorService dumpExecutor;
+    private volatile List<RecordingUploader> uploaders = List.of();
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    private JfrRecorder(Recording recording, Path dumpDir, int dumpInvocations, int maxDumps) {
+        this.recording = recording;
+        this.dumpDir = dumpDir;
+        this.dumpInvocations = dumpInvocations;
+        this.maxDumps = maxDumps;
+        this.dumpExecutor = recording == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "jfr-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the JFR recording if {@code LAMBDA_JFR_SETTINGS} is set.
+     *
+     * @param env the environment of the Lambda function
+     * @return the recorder, which is a no-op if recording is disabled or could not be started
+     */
+    static JfrRecorder start(Map<String, String> env) {
+        String settings = env.get("LAMBDA_JFR_SETTINGS");
+        if (settings == null || settings.isBlank()) {
+            return DISABLED;
+        }
+
+        try {
+            Configuration configuration = settings.endsWith(".jfc") ?
+                    Configuration.create(Paths.get(settings)) : Configuration.getConfiguration(settings);
+            String dumpDirEnv = env.get("LAMBDA_JFR_DUMP_DIR");
+            Path dumpDir = Paths.get(dumpDirEnv == null || dumpDirEnv.isBlank() ? "/tmp/jfr" : dumpDirEnv);
+            Files.createDirectories(dumpDir);
+            String dumpInvocationsEnv = env.get("LAMBDA_JFR_DUMP_INVOCATIONS");
+            int dumpInvocations = dumpInvocationsEnv == null || dumpInvocationsEnv.isBlank() ?
+                    0 : Integer.parseInt(dumpInvocationsEnv.trim());
+            String maxDumpsEnv = env.get("LAMBDA_JFR_MAX_DUMPS");
+            int maxDumps = maxDumpsEnv == null || maxDumpsEnv.isBlank() ?
+                    DEFAULT_MAX_DUMPS : Math.max(1, Integer.parseInt(maxDumpsEnv.trim()));
+
+            Recording recording = new Recording(configuration);
+            recording.setName("lambda-runtime");
+            recording.setToDisk(true);
+            recording.setMaxSize(MAX_RECORDING_SIZE);
+            recording.setDumpOnExit(true);
+            recording.setDestination(dumpDir.resolve("exit.jfr"));
+            recording.start();
+
+            JfrRecorder recorder = new JfrRecorder(recording, dumpDir, dumpInvocations, maxDumps);
+            LOGGER.info("Started JFR recording with settings: \"{}\", dumping to: \"{}\"", settings, dumpDir);
+            return recorder;
+        } catch (IOException | ParseException | RuntimeException ex) {
+            LOGGER.error("Could not start JFR recording: ", ex);
+            return DISABLED;
+        }
+    }
+
+    /**
+     * Registers the {@link RecordingUploader}s found by the given class loader (that of the Lambda request handler).
+     */
+    void loadUploaders(ClassLoader classLoader) {
+        if (recording == null) {
+            return;
+        }
+        List<RecordingUploader> loaded = new ArrayList<>();
+        ServiceLoader.load(RecordingUploader.class, classLoader).forEach(loaded::add);
+        uploaders = List.copyOf(loaded);
+    }
+
+    /**
+     * Called from the event loop after each invocation. Dumps the recording every {@code LAMBDA_JFR_DUMP_INVOCATIONS}
+     * invocations.
+     */
+    void invocationCompleted() {
+        if (dumpInvocations > 0 && invocations.incrementAndGet() % dumpInvocations == 0) {
+            dump();
+        }
+    }
+
+    /**
+     * Asynchronously dumps the recording to a new file in the dump directory.
+     */
+    void dump() {
+        if (recording == null) {
+            return;
+        }
+        dumpExecutor.execute(() -> {
+            Path dumpFile = dumpDir.resolve(
+                    "recording-" + System.currentTimeMillis() + "-" + dumpCount.incrementAndGet() + ".jfr");
+            try {
+                recording.dump(dumpFile);
+                LOGGER.info("Dumped JFR recording to: \"{}\"", dumpFile);
+            } catch (IOException ex) {
+                LOGGER.error("Could not dump JFR recording: ", ex);
+                return;
+            }
+            List<RecordingUploader> currentUploaders = uploaders;
+            if (currentUploaders.isEmpty()) {
+                keep(dumpFile);
+                return;
+            }
+            for (RecordingUploader uploader : currentUploaders) {
+                try {
+                    uploader.upload(dumpFile);
+                } catch (Exception ex) {
+                    LOGGER.error("Could not upload JFR recording with: " + uploader.getClass().getName(), ex);
+                }
+            }
+            try {
+                Files.deleteIfExists(dumpFile);
+            } catch (IOException ex) {
+                LOGGER.warn("Could not delete uploaded JFR recording: ", ex);
+            }
+        });
+    }
+
+    /**
+     * Keeps a dump that was not uploaded, deleting the oldest kept dumps beyond {@code LAMBDA_JFR_MAX_DUMPS}.
+     */
+    private void keep(Path dumpFile) {
+        keptDumps.addLast(dumpFile);
+        while (keptDumps.size() > maxDumps) {
+            Path oldest = keptDumps.removeFirst();
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException ex) {
+                LOGGER.warn("Could not delete old JFR recording: ", ex);
+            }
+        }
+    }
+}
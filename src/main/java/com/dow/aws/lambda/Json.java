@@ -0,0 +1,60 @@
+package com.dow.aws.lambda;
+
+/**
+ * Minimal JSON helpers for the handful of documents (error responses, the context object) that the runtime writes
+ * itself.
+ */
+final class Json {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Json() {}
+
+    /**
+     * Appends the given string to the builder as a quoted, escaped JSON string (or {@code null} if it is null).
+     */
+    static StringBuilder appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Returns an error document in the format expected by the runtime API's error resources.
+     */
+    static String error(String errorMessage, String errorType) {
+        StringBuilder sb = new StringBuilder(64 + (errorMessage == null ? 0 : errorMessage.length()));
+        sb.append("{\"errorMessage\": ");
+        appendString(sb, errorMessage);
+        sb.append(", \"errorType\": ");
+        appendString(sb, errorType);
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,341 @@
+package com.dow.aws.lambda;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A streaming JSON tokenizer that reads UTF-8 encoded JSON directly from an {@link InputStream}, used by
+ * {@link JsonSerializer}. Objects and arrays can be nested at most {@link #MAX_DEPTH} deep, as they are read
+ * recursively, so that a deeply nested event fails with an {@link IOException} rather than overflowing the stack.
+ */
+final class JsonInput {
+    static final int MAX_DEPTH = 512;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private final StringBuilder sb = new StringBuilder(64);
+    private int pos;
+    private int limit;
+    private int depth;
+
+    JsonInput(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the first character of the next token without consuming it, or -1 at the end of the input.
+     */
+    int peek() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            c = read();
+        }
+        if (c != -1) {
+            pos--;
+        }
+        return c;
+    }
+
+    /**
+     * Consumes the next token, which must be the given structural character.
+     */
+    void expect(char expected) throws IOException {
+        int c = peek();
+        if (c != expected) {
+            throw syntaxError("'" + expected + "'", c);
+        }
+        pos++;
+        if ((expected == '{' || expected == '[') && ++depth > MAX_DEPTH) {
+            throw new IOException("Malformed JSON: objects and arrays nested more than " + MAX_DEPTH + " deep");
+        }
+    }
+
+    /**
+     * Consumes the next token if it is the given structural character.
+     *
+     * @return true if the token was consumed
+     */
+    boolean consume(char expected) throws IOException {
+        if (peek() == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if there is another member (or element) of the object (or array) before the given closing
+     * character, consuming the separating comma, or consumes the closing character and returns false. The opening
+     * character must already have been consumed with {@link #expect(char)}.
+     */
+    boolean hasNext(char close, boolean first) throws IOException {
+        if (consume(close)) {
+            depth--;
+            return false;
+        }
+        if (!first) {
+            expect(',');
+        }
+        return true;
+    }
+
+    /**
+     * Consumes the literal {@code null} if it is the next token.
+     *
+     * @return true if the next token was {@code null}
+     */
+    boolean consumeNull() throws IOException {
+        if (peek() != 'n') {
+            return false;
+        }
+        expectLiteral("null");
+        return true;
+    }
+
+    boolean readBoolean() throws IOException {
+        int c = peek();
+        if (c == 't') {
+            expectLiteral("true");
+            return true;
+        } else if (c == 'f') {
+            expectLiteral("false");
+            return false;
+        } else if (c == '"') {
+            return Boolean.parseBoolean(readString());
+        }
+        throw syntaxError("a boolean", c);
+    }
+
+    String readString() throws IOException {
+        expect('"');
+        sb.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c < 0) {
+                throw new IOException("Unterminated JSON string");
+            } else if (c < 0x80) {
+                sb.append((char) c);
+            } else {
+                readUtf8(c);
+            }
+        }
+    }
+
+    /**
+     * Reads a number (which may be quoted, as some AWS events send numbers as strings) as its textual
+     * representation.
+     */
+    String readNumber() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            return readString().trim();
+        }
+        sb.setLength(0);
+        while ((c = read()) != -1) {
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                sb.append((char) c);
+            } else {
+                pos--;
+                break;
+            }
+        }
+        if (sb.length() == 0) {
+            throw syntaxError("a number", c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads any JSON value as a {@link Map}, {@link List}, {@link String}, {@link Number} or {@link Boolean}.
+     */
+    Object readAny() throws IOException {
+        int c = peek();
+        switch (c) {
+            case '{':
+                Map<String, Object> map = new LinkedHashMap<>();
+                expect('{');
+                for (boolean first = true; hasNext('}', first); first = false) {
+                    String key = readString();
+                    expect(':');
+                    map.put(key, readAny());
+                }
+                return map;
+            case '[':
+                List<Object> list = new ArrayList<>();
+                expect('[');
+                for (boolean first = true; hasNext(']', first); first = false) {
+                    list.add(readAny());
+                }
+                return list;
+            case '"':
+                return readString();
+            case 't':
+            case 'f':
+                return readBoolean();
+            case 'n':
+                expectLiteral("null");
+                return null;
+            default:
+                return toNumber(readNumber());
+        }
+    }
+
+    /**
+     * Skips the next value, for members of an object that are not mapped to a property.
+     */
+    void skipValue() throws IOException {
+        int c = peek();
+        switch (c) {
+            case '{':
+                expect('{');
+                for (boolean first = true; hasNext('}', first); first = false) {
+                    readString();
+                    expect(':');
+                    skipValue();
+                }
+                break;
+            case '[':
+                expect('[');
+                for (boolean first = true; hasNext(']', first); first = false) {
+                    skipValue();
+                }
+                break;
+            case '"':
+                readString();
+                break;
+            case 't':
+            case 'f':
+                readBoolean();
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                readNumber();
+        }
+    }
+
+    /**
+     * Checks that there is nothing but whitespace left in the input.
+     */
+    void end() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            throw syntaxError("the end of the input", c);
+        }
+    }
+
+    IOException syntaxError(String expected, int actual) {
+        return new IOException("Malformed JSON: expected " + expected + " but found " +
+                (actual == -1 ? "the end of the input" : "'" + (char) actual + "'"));
+    }
+
+    private static Number toNumber(String number) {
+        if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+            if (number.length() < 19) {
+                return Long.parseLong(number);
+            }
+            BigInteger value = new BigInteger(number);
+            return value.bitLength() < 64 ? (Number) value.longValue() : value;
+        }
+        return new BigDecimal(number);
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        peek();
+        for (int i = 0; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) {
+                throw syntaxError("'" + literal + "'", c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                sb.append((char) c);
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Malformed JSON: invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                sb.append((char) value);
+                break;
+            default:
+                throw syntaxError("an escape sequence", c);
+        }
+    }
+
+    private void readUtf8(int lead) throws IOException {
+        int codePoint;
+        int continuationBytes;
+        if ((lead & 0xE0) == 0xC0) {
+            codePoint = lead & 0x1F;
+            continuationBytes = 1;
+        } else if ((lead & 0xF0) == 0xE0) {
+            codePoint = lead & 0x0F;
+            continuationBytes = 2;
+        } else if ((lead & 0xF8) == 0xF0) {
+            codePoint = lead & 0x07;
+            continuationBytes = 3;
+        } else {
+            throw new IOException("Malformed JSON: invalid UTF-8 byte 0x" + Integer.toHexString(lead));
+        }
+        for (int i = 0; i < continuationBytes; i++) {
+            int c = read();
+            if ((c & 0xC0) != 0x80) {
+                throw new IOException("Malformed JSON: truncated UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+        sb.appendCodePoint(codePoint);
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) {
+                pos = limit = 0;
+                return -1;
+            }
+            pos = 0;
+            limit = n;
+        }
+        return buf[pos++] & 0xFF;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dow.aws.lambda;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes UTF-8 encoded JSON to an {@link OutputStream} through a small buffer, used by {@link JsonSerializer}.
+ */
+final class JsonOutput {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+
+    JsonOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the given characters, which must all be ASCII and not need escaping (structural characters, numbers,
+     * literals).
+     */
+    JsonOutput writeRaw(String ascii) throws IOException {
+        int length = ascii.length();
+        if (length > buf.length - pos) {
+            flushBuffer();
+            if (length > buf.length) {
+                for (int i = 0; i < length; i++) {
+                    writeByte(ascii.charAt(i));
+                }
+                return this;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            buf[pos++] = (byte) ascii.charAt(i);
+        }
+        return this;
+    }
+
+    JsonOutput writeRaw(char c) throws IOException {
+        writeByte(c);
+        return this;
+    }
+
+    /**
+     * Writes the given string as a quoted, escaped JSON string.
+     */
+    JsonOutput writeString(String value) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                    writeByte(c);
+                } else if (c >= 0x20) {
+                    writeByte(c);
+                } else if (c == '\n') {
+                    writeByte('\\');
+                    writeByte('n');
+                } else if (c == '\r') {
+                    writeByte('\\');
+                    writeByte('r');
+                } else if (c == '\t') {
+                    writeByte('\\');
+                    writeByte('t');
+                } else {
+                    writeRaw("\\u00");
+                    writeByte(HEX_DIGITS[c >> 4]);
+                    writeByte(HEX_DIGITS[c & 0xF]);
+                }
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates can not be encoded as UTF-8
+                writeByte('?');
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+        return this;
+    }
+
+    /**
+     * Writes any buffered bytes to the underlying stream (without flushing it).
+     */
+    void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (pos == buf.length) {
+            flushBuffer();
+        }
+        buf[pos++] = (byte) b;
+    }
+}
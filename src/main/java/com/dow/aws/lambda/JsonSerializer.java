@@ -0,0 +1,755 @@
+package com.dow.aws.lambda;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The default {@link Serializer}, which reads and writes JSON. A codec is built for each type the first time it is
+ * asked for (which for the argument and return type of the handler method, and the types reachable from them, is at
+ * init) by introspecting the type once and binding its constructor, setters, getters and fields to
+ * {@link MethodHandle}s, so that no reflection is done per invocation. Events are parsed directly from the body
+ * received from the runtime API, without first reading it into a {@code String}.
+ * <p>
+ * Codecs are only published to other threads once they are fully resolved: the codecs of a type and of the types
+ * reachable from it are created under a lock, and kept apart until all of them are resolved. Values that are written
+ * based on their runtime type (of properties of type {@code Object}, or of subclasses of a property's type) may still
+ * need a codec to be created during an invocation, which the codecs of the JDK's collections and maps are created
+ * up front to avoid for the common case.
+ * <p>
+ * Beans must be public and have a public no-argument constructor (to be read). Properties are their public setters,
+ * getters and non-static fields; properties that are null are not written.
+ */
+final class JsonSerializer implements Serializer {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private final Map<Type, Codec<?>> codecs = new ConcurrentHashMap<>();
+    // The codecs being created by the thread holding the lock, which are moved to codecs once all are resolved
+    private final Map<Type, Codec<?>> resolving = new HashMap<>();
+    private int depth;
+
+    JsonSerializer() {
+        Codec<String> string = new ScalarCodec<>(in -> in.peek() == '"' ? in.readString() : in.readNumber(),
+                (value, out) -> out.writeString(value), null);
+        codecs.put(String.class, string);
+        codecs.put(CharSequence.class, string);
+        codecs.put(Object.class, new AnyCodec());
+        putScalar(boolean.class, Boolean.class, JsonInput::readBoolean,
+                (value, out) -> out.writeRaw(value ? "true" : "false"), false);
+        putScalar(int.class, Integer.class, in -> Integer.parseInt(in.readNumber()), JsonSerializer::writeNumber, 0);
+        putScalar(long.class, Long.class, in -> Long.parseLong(in.readNumber()), JsonSerializer::writeNumber, 0L);
+        putScalar(short.class, Short.class, in -> Short.parseShort(in.readNumber()), JsonSerializer::writeNumber,
+                (short) 0);
+        putScalar(byte.class, Byte.class, in -> Byte.parseByte(in.readNumber()), JsonSerializer::writeNumber,
+                (byte) 0);
+        putScalar(double.class, Double.class, in -> Double.parseDouble(in.readNumber()), JsonSerializer::writeNumber,
+                0d);
+        putScalar(float.class, Float.class, in -> Float.parseFloat(in.readNumber()), JsonSerializer::writeNumber, 0f);
+        putScalar(char.class, Character.class, in -> {
+            String value = in.readString();
+            return value.isEmpty() ? '\0' : value.charAt(0);
+        }, (value, out) -> out.writeString(value.toString()), '\0');
+        codecs.put(BigDecimal.class, new ScalarCodec<>(in -> new BigDecimal(in.readNumber()),
+                JsonSerializer::writeNumber, null));
+        codecs.put(BigInteger.class, new ScalarCodec<>(in -> new BigInteger(in.readNumber()),
+                JsonSerializer::writeNumber, null));
+        codecs.put(Number.class, new ScalarCodec<>(in -> (Number) in.readAny(), JsonSerializer::writeNumber, null));
+        // Binary data is sent as base64, like the AWS Lambda Java runtime does
+        codecs.put(byte[].class, new ScalarCodec<>(in -> Base64.getDecoder().decode(in.readString()),
+                (value, out) -> out.writeString(Base64.getEncoder().encodeToString(value)), null));
+        // The runtime types of the values read as (and commonly returned as) Object
+        for (Class<?> type : List.of(ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class,
+                TreeSet.class, HashMap.class, LinkedHashMap.class, TreeMap.class)) {
+            codec(type);
+        }
+    }
+
+    @Override
+    public <T> Reader<T> reader(Type type) {
+        Codec<T> codec = codec(type);
+        return input -> {
+            JsonInput in = new JsonInput(input);
+            // Functions can be invoked without a payload
+            if (in.peek() == -1) {
+                return codec.nullValue();
+            }
+            T value = codec.read(in);
+            in.end();
+            return value;
+        };
+    }
+
+    @Override
+    public <T> Writer<T> writer(Type type) {
+        Codec<T> codec = codec(type);
+        return (value, output) -> {
+            JsonOutput out = new JsonOutput(output);
+            codec.write(value, out);
+            out.flushBuffer();
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Codec<T> codec(Type type) {
+        Codec<?> codec = codecs.get(type);
+        if (codec == null) {
+            synchronized (this) {
+                codec = codecs.get(type);
+                if (codec == null) {
+                    codec = resolve(type);
+                }
+            }
+        }
+        return (Codec<T>) codec;
+    }
+
+    /**
+     * Returns the codec of the given type, creating it (and the codecs of the types reachable from it) if it is not
+     * being created already. The codecs created are published once the outermost call has resolved all of them, and
+     * dropped if any of them fails. Must be called with the lock held.
+     */
+    private Codec<?> resolve(Type type) {
+        Codec<?> codec = resolving.get(type);
+        if (codec != null) {
+            return codec;
+        }
+        depth++;
+        try {
+            codec = create(type);
+            resolving.putIfAbsent(type, codec);
+        } catch (RuntimeException | Error ex) {
+            if (depth == 1) {
+                resolving.clear();
+            }
+            throw ex;
+        } finally {
+            depth--;
+        }
+        if (depth == 0) {
+            codecs.putAll(resolving);
+            resolving.clear();
+        }
+        return codec;
+    }
+
+    private <T> void putScalar(Class<?> primitiveType, Class<T> boxedType, ReadFunction<T> read,
+                               WriteFunction<T> write, T defaultValue) {
+        codecs.put(primitiveType, new ScalarCodec<>(read, write, defaultValue));
+        codecs.put(boxedType, new ScalarCodec<>(read, write, null));
+    }
+
+    private Codec<?> create(Type type) {
+        if (type instanceof WildcardType) {
+            return codec(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return codec(((TypeVariable<?>) type).getBounds()[0]);
+        } else if (type instanceof GenericArrayType) {
+            Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayCodec(rawType(componentType), codec(componentType));
+        }
+
+        Class<?> rawType = rawType(type);
+        Type[] typeArguments = type instanceof ParameterizedType ?
+                ((ParameterizedType) type).getActualTypeArguments() : null;
+        if (rawType.isArray()) {
+            return new ArrayCodec(rawType.getComponentType(), codec(rawType.getComponentType()));
+        } else if (rawType.isEnum()) {
+            return new EnumCodec(rawType);
+        } else if (Collection.class.isAssignableFrom(rawType)) {
+            return new CollectionCodec(collectionFactory(rawType),
+                    codec(typeArguments == null ? Object.class : typeArguments[0]));
+        } else if (Map.class.isAssignableFrom(rawType)) {
+            if (typeArguments != null && typeArguments[0] != String.class && typeArguments[0] != Object.class) {
+                throw new IllegalArgumentException("Can not serialize " + type.getTypeName() +
+                        ": map keys must be strings");
+            }
+            return new MapCodec(mapFactory(rawType), codec(typeArguments == null ? Object.class : typeArguments[1]));
+        } else if (rawType.isPrimitive() || rawType.getName().startsWith("java.")) {
+            return new ValueCodec(rawType);
+        }
+
+        // Register the bean before resolving its properties so that recursive types resolve to it
+        BeanCodec beanCodec = new BeanCodec(rawType);
+        resolving.put(type, beanCodec);
+        beanCodec.resolveProperties();
+        return beanCodec;
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return rawType(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        throw new IllegalArgumentException("Can not serialize " + type.getTypeName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Collection<Object>> collectionFactory(Class<?> collectionType) {
+        if (collectionType.isInterface() || Modifier.isAbstract(collectionType.getModifiers())) {
+            if (collectionType.isAssignableFrom(ArrayList.class)) {
+                return ArrayList::new;
+            } else if (collectionType.isAssignableFrom(LinkedHashSet.class)) {
+                return LinkedHashSet::new;
+            } else if (collectionType.isAssignableFrom(TreeSet.class)) {
+                return TreeSet::new;
+            }
+            return null;
+        }
+        Supplier<Object> constructor = constructor(collectionType);
+        return constructor == null ? null : () -> (Collection<Object>) constructor.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Map<String, Object>> mapFactory(Class<?> mapType) {
+        if (mapType.isInterface() || Modifier.isAbstract(mapType.getModifiers())) {
+            if (mapType.isAssignableFrom(LinkedHashMap.class)) {
+                return LinkedHashMap::new;
+            } else if (SortedMap.class.isAssignableFrom(mapType) && mapType.isAssignableFrom(TreeMap.class)) {
+                return TreeMap::new;
+            }
+            return null;
+        }
+        Supplier<Object> constructor = constructor(mapType);
+        return constructor == null ? null : () -> (Map<String, Object>) constructor.get();
+    }
+
+    /**
+     * Returns a supplier that calls the public no-argument constructor of the given class, or null if it does not
+     * have one.
+     */
+    private static Supplier<Object> constructor(Class<?> type) {
+        MethodHandle constructor;
+        try {
+            constructor = LOOKUP.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        }
+        return () -> {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    private static void writeNumber(Number value, JsonOutput out) throws IOException {
+        if ((value instanceof Double && !Double.isFinite(value.doubleValue())) ||
+                (value instanceof Float && !Float.isFinite(value.floatValue()))) {
+            // NaN and the infinities can not be represented as JSON numbers
+            out.writeString(value.toString());
+        } else {
+            out.writeRaw(value.toString());
+        }
+    }
+
+    private static IOException wrap(Throwable t) {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IOException(t);
+    }
+
+    @FunctionalInterface
+    private interface ReadFunction<T> {
+        T read(JsonInput in) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface WriteFunction<T> {
+        void write(T value, JsonOutput out) throws IOException;
+    }
+
+    /**
+     * Reads and writes the values of one type. Nulls are handled here, so implementations only see non-null values.
+     */
+    abstract static class Codec<T> {
+        final T read(JsonInput in) throws IOException {
+            return in.consumeNull() ? nullValue() : readValue(in);
+        }
+
+        final void write(T value, JsonOutput out) throws IOException {
+            if (value == null) {
+                out.writeRaw("null");
+            } else {
+                writeValue(value, out);
+            }
+        }
+
+        /**
+         * Returns the value that JSON {@code null} is read as, which is the default value for primitive types.
+         */
+        T nullValue() {
+            return null;
+        }
+
+        abstract T readValue(JsonInput in) throws IOException;
+
+        abstract void writeValue(T value, JsonOutput out) throws IOException;
+    }
+
+    private static final class ScalarCodec<T> extends Codec<T> {
+        private final ReadFunction<T> read;
+        private final WriteFunction<T> write;
+        private final T nullValue;
+
+        ScalarCodec(ReadFunction<T> read, WriteFunction<T> write, T nullValue) {
+            this.read = read;
+            this.write = write;
+            this.nullValue = nullValue;
+        }
+
+        @Override
+        T nullValue() {
+            return nullValue;
+        }
+
+        @Override
+        T readValue(JsonInput in) throws IOException {
+            try {
+                return read.read(in);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Malformed JSON: " + ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        void writeValue(T value, JsonOutput out) throws IOException {
+            write.write(value, out);
+        }
+    }
+
+    /**
+     * Reads values of type {@code Object} as maps, lists, strings, numbers and booleans, and writes values based on
+     * their runtime type.
+     */
+    private final class AnyCodec extends Codec<Object> {
+        @Override
+        Object readValue(JsonInput in) throws IOException {
+            return in.readAny();
+        }
+
+        @Override
+        void writeValue(Object value, JsonOutput out) throws IOException {
+            if (value instanceof String) {
+                out.writeString((String) value);
+            } else if (value instanceof Number) {
+                writeNumber((Number) value, out);
+            } else if (value instanceof Boolean) {
+                out.writeRaw((Boolean) value ? "true" : "false");
+            } else if (value instanceof Enum) {
+                out.writeString(((Enum<?>) value).name());
+            } else if (value.getClass() == Object.class) {
+                out.writeRaw("{}");
+            } else {
+                codec(value.getClass()).write(value, out);
+            }
+        }
+    }
+
+    private static final class EnumCodec extends Codec<Object> {
+        private final Class<?> enumType;
+        private final Map<String, Object> constants = new HashMap<>();
+
+        EnumCodec(Class<?> enumType) {
+            this.enumType = enumType;
+            for (Object constant : enumType.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+
+        @Override
+        Object readValue(JsonInput in) throws IOException {
+            String name = in.readString();
+            Object constant = constants.get(name);
+            if (constant == null) {
+                throw new IOException("No " + enumType.getName() + " constant named \"" + name + "\"");
+            }
+            return constant;
+        }
+
+        @Override
+        void writeValue(Object value, JsonOutput out) throws IOException {
+            out.writeString(((Enum<?>) value).name());
+        }
+    }
+
+    private static final class CollectionCodec extends Codec<Collection<Object>> {
+        private final Supplier<Collection<Object>> factory;
+        private final Codec<Object> elementCodec;
+
+        CollectionCodec(Supplier<Collection<Object>> factory, Codec<Object> elementCodec) {
+            this.factory = factory;
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        Collection<Object> readValue(JsonInput in) throws IOException {
+            if (factory == null) {
+                throw new IOException("Can not instantiate collection");
+            }
+            Collection<Object> collection = factory.get();
+            in.expect('[');
+            for (boolean first = true; in.hasNext(']', first); first = false) {
+                collection.add(elementCodec.read(in));
+            }
+            return collection;
+        }
+
+        @Override
+        void writeValue(Collection<Object> value, JsonOutput out) throws IOException {
+            out.writeRaw('[');
+            boolean first = true;
+            for (Object element : value) {
+                if (!first) {
+                    out.writeRaw(',');
+                }
+                first = false;
+                elementCodec.write(element, out);
+            }
+            out.writeRaw(']');
+        }
+    }
+
+    private static final class MapCodec extends Codec<Map<String, Object>> {
+        private final Supplier<Map<String, Object>> factory;
+        private final Codec<Object> valueCodec;
+
+        MapCodec(Supplier<Map<String, Object>> factory, Codec<Object> valueCodec) {
+            this.factory = factory;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        Map<String, Object> readValue(JsonInput in) throws IOException {
+            if (factory == null) {
+                throw new IOException("Can not instantiate map");
+            }
+            Map<String, Object> map = factory.get();
+            in.expect('{');
+            for (boolean first = true; in.hasNext('}', first); first = false) {
+                String key = in.readString();
+                in.expect(':');
+                map.put(key, valueCodec.read(in));
+            }
+            return map;
+        }
+
+        @Override
+        void writeValue(Map<String, Object> value, JsonOutput out) throws IOException {
+            out.writeRaw('{');
+            boolean first = true;
+            // Maps written based on their runtime type may have keys that are not strings
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.writeRaw(',');
+                }
+                first = false;
+                out.writeString(String.valueOf(entry.getKey()));
+                out.writeRaw(':');
+                valueCodec.write(entry.getValue(), out);
+            }
+            out.writeRaw('}');
+        }
+    }
+
+    private static final class ArrayCodec extends Codec<Object> {
+        private final MethodHandle constructor;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final MethodHandle length;
+        private final Codec<Object> elementCodec;
+
+        ArrayCodec(Class<?> componentType, Codec<Object> elementCodec) {
+            Class<?> arrayType = Array.newInstance(componentType, 0).getClass();
+            this.constructor = MethodHandles.arrayConstructor(arrayType)
+                    .asType(MethodType.methodType(Object.class, int.class));
+            this.getter = MethodHandles.arrayElementGetter(arrayType)
+                    .asType(MethodType.methodType(Object.class, Object.class, int.class));
+            this.setter = MethodHandles.arrayElementSetter(arrayType)
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            this.length = MethodHandles.arrayLength(arrayType)
+                    .asType(MethodType.methodType(int.class, Object.class));
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        Object readValue(JsonInput in) throws IOException {
+            List<Object> elements = new ArrayList<>();
+            in.expect('[');
+            for (boolean first = true; in.hasNext(']', first); first = false) {
+                elements.add(elementCodec.read(in));
+            }
+            try {
+                Object array = (Object) constructor.invokeExact(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    setter.invokeExact(array, i, elements.get(i));
+                }
+                return array;
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        }
+
+        @Override
+        void writeValue(Object value, JsonOutput out) throws IOException {
+            try {
+                out.writeRaw('[');
+                int n = (int) length.invokeExact(value);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) {
+                        out.writeRaw(',');
+                    }
+                    elementCodec.write((Object) getter.invokeExact(value, i), out);
+                }
+                out.writeRaw(']');
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        }
+    }
+
+    /**
+     * Reads and writes the JDK's value types (e.g. {@code java.time.Instant}, {@code java.util.UUID}) as strings,
+     * using their {@code toString} method and their {@code parse}, {@code valueOf} or {@code fromString} factory
+     * method (or string constructor).
+     */
+    private static final class ValueCodec extends Codec<Object> {
+        private final Class<?> type;
+        private final MethodHandle factory;
+
+        ValueCodec(Class<?> type) {
+            this.type = type;
+            this.factory = factory(type);
+        }
+
+        private static MethodHandle factory(Class<?> type) {
+            MethodType[] factoryTypes = {
+                    MethodType.methodType(type, CharSequence.class),
+                    MethodType.methodType(type, String.class),
+                    MethodType.methodType(type, String.class)
+            };
+            String[] factoryNames = {"parse", "valueOf", "fromString"};
+            for (int i = 0; i < factoryNames.length; i++) {
+                try {
+                    return LOOKUP.findStatic(type, factoryNames[i], factoryTypes[i])
+                            .asType(MethodType.methodType(Object.class, String.class));
+                } catch (NoSuchMethodException | IllegalAccessException ignored) {
+                }
+            }
+            try {
+                return LOOKUP.findConstructor(type, MethodType.methodType(void.class, String.class))
+                        .asType(MethodType.methodType(Object.class, String.class));
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        Object readValue(JsonInput in) throws IOException {
+            if (factory == null) {
+                throw new IOException("Can not deserialize " + type.getName());
+            }
+            try {
+                return (Object) factory.invokeExact(in.readString());
+            } catch (Throwable t) {
+                throw wrap(t);
+            }
+        }
+
+        @Override
+        void writeValue(Object value, JsonOutput out) throws IOException {
+            out.writeString(value.toString());
+        }
+    }
+
+    private static final class Property {
+        final String name;
+        final Type type;
+        MethodHandle getter;
+        MethodHandle setter;
+        Codec<Object> codec;
+
+        Property(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    private final class BeanCodec extends Codec<Object> {
+        private final Class<?> type;
+        private final Supplier<Object> constructor;
+        private final Map<String, Property> settable = new HashMap<>();
+        private Property[] gettable;
+
+        BeanCodec(Class<?> type) {
+            this.type = type;
+            this.constructor = Modifier.isAbstract(type.getModifiers()) ? null : constructor(type);
+        }
+
+        /**
+         * Binds the properties of the bean to method handles, and resolves the codecs of their types.
+         */
+        void resolveProperties() {
+            Map<String, Property> getters = new LinkedHashMap<>();
+            try {
+                for (Method method : type.getMethods()) {
+                    if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.isSynthetic() ||
+                            method.getDeclaringClass() == Object.class) {
+                        continue;
+                    }
+                    String name = method.getName();
+                    int parameterCount = method.getParameterCount();
+                    if (parameterCount == 1 && name.length() > 3 && name.startsWith("set")) {
+                        Property property = new Property(decapitalize(name.substring(3)),
+                                method.getGenericParameterTypes()[0]);
+                        property.setter = LOOKUP.unreflect(method);
+                        settable.putIfAbsent(property.name, property);
+                    } else if (parameterCount == 0 && method.getReturnType() != void.class &&
+                            ((name.length() > 3 && name.startsWith("get")) ||
+                                    (name.length() > 2 && name.startsWith("is") &&
+                                            method.getReturnType() == boolean.class))) {
+                        Property property = new Property(decapitalize(name.substring(name.startsWith("is") ? 2 : 3)),
+                                method.getGenericReturnType());
+                        property.getter = LOOKUP.unreflect(method);
+                        getters.putIfAbsent(property.name, property);
+                    }
+                }
+                for (Field field : type.getFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    if (!Modifier.isFinal(field.getModifiers()) && !settable.containsKey(field.getName())) {
+                        Property property = new Property(field.getName(), field.getGenericType());
+                        property.setter = LOOKUP.unreflectSetter(field);
+                        settable.put(property.name, property);
+                    }
+                    if (!getters.containsKey(field.getName())) {
+                        Property property = new Property(field.getName(), field.getGenericType());
+                        property.getter = LOOKUP.unreflectGetter(field);
+                        getters.put(property.name, property);
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException("Can not serialize " + type.getName() + ": " + ex.getMessage(), ex);
+            }
+
+            for (Property property : settable.values()) {
+                property.setter = property.setter.asType(
+                        MethodType.methodType(void.class, Object.class, Object.class));
+                property.codec = codec(property.type);
+            }
+            for (Property property : getters.values()) {
+                property.getter = property.getter.asType(MethodType.methodType(Object.class, Object.class));
+                property.codec = codec(property.type);
+            }
+            gettable = getters.values().toArray(new Property[0]);
+        }
+
+        @Override
+        Object readValue(JsonInput in) throws IOException {
+            if (constructor == null) {
+                throw new IOException("Can not deserialize " + type.getName() +
+                        ": it does not have a public no-argument constructor");
+            }
+            Object bean = constructor.get();
+            in.expect('{');
+            for (boolean first = true; in.hasNext('}', first); first = false) {
+                String key = in.readString();
+                in.expect(':');
+                Property property = settable.get(key);
+                if (property == null) {
+                    in.skipValue();
+                    continue;
+                }
+                Object value = property.codec.read(in);
+                try {
+                    property.setter.invokeExact(bean, value);
+                } catch (Throwable t) {
+                    throw wrap(t);
+                }
+            }
+            return bean;
+        }
+
+        @Override
+        void writeValue(Object value, JsonOutput out) throws IOException {
+            if (value.getClass() != type) {
+                // Write subclasses (and implementations of abstract types) with all of their properties
+                codec(value.getClass()).write(value, out);
+                return;
+            }
+            out.writeRaw('{');
+            boolean first = true;
+            for (Property property : gettable) {
+                Object propertyValue;
+                try {
+                    propertyValue = (Object) property.getter.invokeExact(value);
+                } catch (Throwable t) {
+                    throw wrap(t);
+                }
+                if (propertyValue == null) {
+                    continue;
+                }
+                if (!first) {
+                    out.writeRaw(',');
+                }
+                first = false;
+                out.writeString(property.name);
+                out.writeRaw(':');
+                property.codec.write(propertyValue, out);
+            }
+            out.writeRaw('}');
+        }
+    }
+
+    /**
+     * Converts the name of a getter or setter (without the prefix) to the name of its property, following the
+     * JavaBeans convention (e.g. {@code FirstName} becomes {@code firstName} but {@code URL} stays {@code URL}).
+     */
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
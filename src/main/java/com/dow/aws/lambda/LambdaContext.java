@@ -0,0 +1,179 @@
+package com.dow.aws.lambda;
+
+import com.dow.aws.lambda.logging.RuntimeLogging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * The context of an invocation of the Lambda function. It has the same shape as the {@code Context} of the AWS Lambda
+ * Java core library, except that the client context and the Cognito identity are returned as the JSON documents
+ * sent by the runtime API.
+ * <p>
+ * The values that are the same for every invocation of the function are read from the environment once, at init
+ * (and again when the runtime is restored from a checkpoint, whose environment is that of another execution
+ * environment), and the values that are specific to an invocation are only derived from the headers of the invocation
+ * when they are read. Handlers that take the context as a {@code String} are passed {@link #toJson()}, which is
+ * serialized the first time it is called.
+ */
+public final class LambdaContext {
+    // https://docs.aws.amazon.com/lambda/latest/dg/configuration-envvars.html#configuration-envvars-runtime
+    private static String envFunctionName;
+    private static String functionVersion;
+    private static String logGroupName;
+    private static String logStreamName;
+    private static int memoryLimitInMB;
+    private static final LambdaLogger LOGGER = new StandardOutputLogger();
+
+    private final Invocation invocation;
+    private String functionName;
+    private String json;
+
+    LambdaContext(Invocation invocation) {
+        this.invocation = invocation;
+    }
+
+    /**
+     * Reads the values that are the same for every invocation from the given environment of the Lambda function.
+     * Called before any event loop is started (or after the runtime has been restored, before the event loops
+     * continue), so the values are visible to the threads that run them.
+     */
+    static void init(Map<String, String> env) {
+        envFunctionName = env.get("AWS_LAMBDA_FUNCTION_NAME");
+        functionVersion = env.get("AWS_LAMBDA_FUNCTION_VERSION");
+        logGroupName = env.get("AWS_LAMBDA_LOG_GROUP_NAME");
+        logStreamName = env.get("AWS_LAMBDA_LOG_STREAM_NAME");
+        memoryLimitInMB = parseMemorySize(env.get("AWS_LAMBDA_FUNCTION_MEMORY_SIZE"));
+    }
+
+    public String getAwsRequestId() {
+        return invocation.getRequestId();
+    }
+
+    public String getLogGroupName() {
+        return logGroupName;
+    }
+
+    public String getLogStreamName() {
+        return logStreamName;
+    }
+
+    /**
+     * Returns the name of the function, which is taken from the ARN of the invoked function if the
+     * {@code AWS_LAMBDA_FUNCTION_NAME} environment variable is not set.
+     */
+    public String getFunctionName() {
+        if (functionName == null) {
+            if (envFunctionName != null) {
+                functionName = envFunctionName;
+            } else {
+                // arn:aws:lambda:us-east-2:123456789012:function:custom-runtime[:qualifier]
+                String[] arnParts = invocation.getInvokedFunctionArn().split(":");
+                functionName = arnParts.length >= 7 ? arnParts[6] : "";
+            }
+        }
+        return functionName;
+    }
+
+    public String getFunctionVersion() {
+        return functionVersion;
+    }
+
+    public String getInvokedFunctionArn() {
+        return invocation.getInvokedFunctionArn();
+    }
+
+    /**
+     * Returns the Cognito identity of the caller as a JSON document (or null if the function was not invoked through
+     * the AWS Mobile SDK).
+     */
+    public String getIdentity() {
+        return invocation.getCognitoIdentity();
+    }
+
+    /**
+     * Returns the client context of the caller as a JSON document (or null if the function was not invoked through
+     * the AWS Mobile SDK).
+     */
+    public String getClientContext() {
+        return invocation.getClientContext();
+    }
+
+    /**
+     * Returns the X-Ray tracing header of the invocation (or null if tracing is not enabled).
+     */
+    public String getTraceId() {
+        return invocation.getTraceId();
+    }
+
+    /**
+     * Returns the number of milliseconds left before the invocation times out, computed from the deadline of the
+     * invocation each time it is called.
+     */
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(invocation.getDeadlineMillis() - System.currentTimeMillis(), 0);
+    }
+
+    public int getMemoryLimitInMB() {
+        return memoryLimitInMB;
+    }
+
+    public LambdaLogger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Returns the context as a JSON object. The remaining time is the time that was left when this method was first
+     * called.
+     */
+    public String toJson() {
+        if (json == null) {
+            StringBuilder sb = new StringBuilder(512);
+            sb.append("{\n\"awsRequestId\": ");
+            Json.appendString(sb, getAwsRequestId());
+            sb.append(",\n\"logGroupName\": ");
+            Json.appendString(sb, logGroupName);
+            sb.append(",\n\"logStreamName\": ");
+            Json.appendString(sb, logStreamName);
+            sb.append(",\n\"functionName\": ");
+            Json.appendString(sb, getFunctionName());
+            sb.append(",\n\"functionVersion\": ");
+            Json.appendString(sb, functionVersion);
+            sb.append(",\n\"invokedFunctionArn\": ");
+            Json.appendString(sb, getInvokedFunctionArn());
+            sb.append(",\n\"remainingTimeInMillis\": \"").append(getRemainingTimeInMillis());
+            sb.append("\",\n\"memoryLimitInMB\": \"").append(memoryLimitInMB);
+            json = sb.append("\"\n}").toString();
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    private static int parseMemorySize(String memorySize) {
+        try {
+            return memorySize == null ? 0 : Integer.parseInt(memorySize.trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the messages to standard output through the runtime's log buffer (see
+     * {@link RuntimeLogging#print(byte[])}), so they are in order with the log records and do not block the handler.
+     */
+    private static final class StandardOutputLogger implements LambdaLogger {
+        @Override
+        public void log(String message) {
+            RuntimeLogging.print(String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void log(byte[] message) {
+            RuntimeLogging.print(message);
+        }
+    }
+}
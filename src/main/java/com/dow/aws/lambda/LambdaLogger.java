@@ -0,0 +1,11 @@
+package com.dow.aws.lambda;
+
+/**
+ * A logger, obtained from {@link LambdaContext#getLogger()}, whose output is sent to the Lambda function's CloudWatch
+ * log stream. It has the same shape as the {@code LambdaLogger} of the AWS Lambda Java core library.
+ */
+public interface LambdaLogger {
+    void log(String message);
+
+    void log(byte[] message);
+}
@@ -0,0 +1,98 @@
+package com.dow.aws.lambda;
+
+/**
+ * Builds the single-line JSON records that the runtime writes to standard output (and so to the function's CloudWatch
+ * log stream) about itself. A record can optionally carry the
+ * <a href="https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format.html">
+ * CloudWatch Embedded Metric Format</a> metadata, in which case CloudWatch extracts its metrics (dimensioned by
+ * function name) without any call to the CloudWatch API.
+ */
+final class MetricRecord {
+    static final String DEFAULT_NAMESPACE = "LambdaJavaRuntime";
+
+    private final StringBuilder fields = new StringBuilder(512);
+    private final StringBuilder metrics;
+
+    /**
+     * @param type the value of the record's {@code type} field
+     * @param emf whether to add the Embedded Metric Format metadata
+     */
+    MetricRecord(String type, boolean emf) {
+        this.metrics = emf ? new StringBuilder(512) : null;
+        fields.append("\"type\":");
+        Json.appendString(fields, type);
+    }
+
+    /**
+     * Returns the CloudWatch namespace to use given the value of the {@code LAMBDA_METRICS_NAMESPACE} environment
+     * variable.
+     */
+    static String namespace(String setting) {
+        return setting == null || setting.isBlank() ? DEFAULT_NAMESPACE : setting.trim();
+    }
+
+    /**
+     * Adds a field that is not a metric.
+     */
+    MetricRecord property(String name, String value) {
+        fields.append(",\"").append(name).append("\":");
+        Json.appendString(fields, value);
+        return this;
+    }
+
+    MetricRecord count(String name, long value) {
+        addMetric(name, "Count");
+        fields.append(value);
+        return this;
+    }
+
+    MetricRecord bytes(String name, long value) {
+        addMetric(name, "Bytes");
+        fields.append(value);
+        return this;
+    }
+
+    /**
+     * Adds a duration, which is recorded in milliseconds (with microsecond precision).
+     */
+    MetricRecord millis(String name, long nanos) {
+        addMetric(name, "Milliseconds");
+        long micros = Math.max(0, nanos) / 1000;
+        long fraction = micros % 1000;
+        fields.append(micros / 1000).append('.');
+        if (fraction < 100) {
+            fields.append(fraction < 10 ? "00" : "0");
+        }
+        fields.append(fraction);
+        return this;
+    }
+
+    /**
+     * Returns the record as a JSON document.
+     *
+     * @param namespace the CloudWatch namespace of the metrics (ignored unless the record is in EMF)
+     * @param functionName the value of the {@code FunctionName} dimension (ignored unless the record is in EMF)
+     * @param timestamp the time the metrics were recorded at, in milliseconds since the epoch
+     */
+    String toJson(String namespace, String functionName, long timestamp) {
+        StringBuilder sb = new StringBuilder(fields.length() + (metrics == null ? 2 : metrics.length() + 256));
+        sb.append('{');
+        if (metrics != null) {
+            sb.append("\"_aws\":{\"Timestamp\":").append(timestamp).append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+            Json.appendString(sb, namespace);
+            sb.append(",\"Dimensions\":[[\"FunctionName\"]],\"Metrics\":[").append(metrics).append("]}]},")
+                    .append("\"FunctionName\":");
+            Json.appendString(sb, functionName);
+            sb.append(',');
+        }
+        return sb.append(fields).append('}').toString();
+    }
+
+    private void addMetric(String name, String unit) {
+        fields.append(",\"").append(name).append("\":");
+        if (metrics != null) {
+            metrics.append(metrics.length() == 0 ? "" : ",").append("{\"Name\":\"").append(name)
+                    .append("\",\"Unit\":\"").append(unit).append("\"}");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.dow.aws.lambda;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Support for running the runtime as a <a href="https://www.graalvm.org/latest/reference-manual/native-image/">GraalVM
+ * native image</a>, in which the Lambda function is compiled in (see the {@code native} profile of the pom). A native
+ * image can not load classes at run time, so the handler class is loaded from the image (the application class loader)
+ * rather than from {@code LAMBDA_TASK_ROOT}, and the handler method is bound to a
+ * {@link java.lang.invoke.MethodHandle} as the image can not spin classes with
+ * {@link java.lang.invoke.LambdaMetafactory}.
+ * <p>
+ * The reflective lookups the bootstrap does on the handler class (loading it by name, finding the handler method
+ * among its public methods, invoking its public no-argument constructor and looking up its {@code warmup()} method)
+ * need reachability metadata, which is generated at build time by running this class:
+ * <pre>{@code
+ * java -cp lambda-java-runtime.jar:<function class path> com.dow.aws.lambda.NativeImage <class>::<method> <dir>
+ * }</pre>
+ * which writes {@code reflect-config.json} to the given directory. The metadata of everything else the function
+ * reaches reflectively (e.g. the event types of typed handlers) is recorded by running the function with the tracing
+ * agent of native-image.
+ */
+public final class NativeImage {
+    private NativeImage() {}
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        if (args.length != 2 || !args[0].contains("::")) {
+            System.err.println("Usage: NativeImage <class>::<method> <output directory>");
+            System.exit(2);
+        }
+        String[] handlerParts = args[0].split("::");
+        Class<?> handlerClass = Class.forName(handlerParts[0], false, ClassLoader.getSystemClassLoader());
+        Method handlerMethod = Bootstrap.getHandlerMethod(handlerClass, handlerParts[1]);
+        if (handlerMethod == null) {
+            throw new IllegalArgumentException("No public method \"" + handlerParts[1] + "\" in: " +
+                    handlerClass.getName());
+        }
+        Path dir = Paths.get(args[1]);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("reflect-config.json");
+        writeReflectConfig(file, handlerClass, handlerMethod);
+        System.out.println("Wrote reachability metadata of handler \"" + args[0] + "\" to: " + file);
+    }
+
+    /**
+     * Returns whether the runtime is running as a native image (rather than on a JVM, or while the image is built).
+     */
+    static boolean inImage() {
+        return "runtime".equals(System.getProperty("org.graalvm.nativeimage.imagecode"));
+    }
+
+    private static void writeReflectConfig(Path file, Class<?> handlerClass, Method handlerMethod)
+            throws IOException {
+        List<String> methods = new ArrayList<>();
+        methods.add(method("<init>"));
+        methods.add(method(handlerMethod.getName(), handlerMethod.getParameterTypes()));
+        try {
+            methods.add(method("warmup", handlerClass.getMethod("warmup").getParameterTypes()));
+        } catch (NoSuchMethodException ex) {
+            // The handler has no warmup hook
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("[\n  {\n    \"name\": ");
+        Json.appendString(sb, handlerClass.getName());
+        sb.append(",\n    \"queryAllPublicMethods\": true,\n    \"methods\": [\n");
+        for (int i = 0; i < methods.size(); i++) {
+            sb.append("      ").append(methods.get(i)).append(i < methods.size() - 1 ? ",\n" : "\n");
+        }
+        sb.append("    ]\n  }\n]\n");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(sb.toString());
+        }
+    }
+
+    private static String method(String name, Class<?>... parameterTypes) {
+        StringBuilder sb = new StringBuilder("{\"name\": ");
+        Json.appendString(sb, name);
+        sb.append(", \"parameterTypes\": [");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            Json.appendString(sb, parameterTypes[i].getTypeName());
+        }
+        return sb.append("]}").toString();
+    }
+}
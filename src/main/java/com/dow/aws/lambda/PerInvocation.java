@@ -0,0 +1,18 @@
+package com.dow.aws.lambda;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a Lambda request handler class as stateful (or otherwise not safe to reuse) so that the runtime constructs a
+ * new instance of it for every invocation instead of caching a single instance for the lifetime of the execution
+ * environment.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PerInvocation {
+}
@@ -0,0 +1,34 @@
+package com.dow.aws.lambda;
+
+/**
+ * Creates the poller threads that run the {@link EventLoop}s of the runtime when events are processed concurrently.
+ * The runtime jar is a multi-release jar: this is the version for Java 12 to 20, which only has platform threads, and
+ * on Java 21 and later the version in {@code META-INF/versions/21} (compiled from {@code src/main/java21}) is used
+ * instead, which can also create virtual threads.
+ */
+final class PollerThreads {
+    private PollerThreads() {}
+
+    /**
+     * Returns whether the running JVM supports virtual threads. (This is a method rather than a constant, as a
+     * constant would be inlined into its callers when they are compiled against the base version.)
+     */
+    static boolean isVirtualSupported() {
+        return false;
+    }
+
+    /**
+     * Creates a daemon poller thread.
+     *
+     * @param task the event loop to run
+     * @param name the name of the thread
+     * @param virtual whether to create a virtual thread, which is ignored (a platform thread is created instead) if
+     *     virtual threads are not supported
+     * @return the unstarted thread
+     */
+    static Thread newThread(Runnable task, String name, boolean virtual) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
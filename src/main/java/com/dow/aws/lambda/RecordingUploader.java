@@ -0,0 +1,19 @@
+package com.dow.aws.lambda;
+
+import java.nio.file.Path;
+
+/**
+ * A hook that is called (on a background thread) with every JFR recording dumped by the runtime, for example to copy
+ * it to S3 before the execution environment goes away. Implementations are discovered with
+ * {@link java.util.ServiceLoader} from the Lambda function's class path, i.e. by listing the implementation class in a
+ * {@code META-INF/services/com.dow.aws.lambda.RecordingUploader} file.
+ */
+public interface RecordingUploader {
+    /**
+     * Uploads the given recording. The recording file is deleted by the runtime once this method returns (or throws).
+     *
+     * @param recording the path of the dumped recording
+     * @throws Exception if the recording could not be uploaded
+     */
+    void upload(Path recording) throws Exception;
+}
@@ -0,0 +1,15 @@
+package com.dow.aws.lambda;
+
+/**
+ * A Lambda request handler that takes and returns typed objects rather than streams. The event is deserialized into
+ * an {@code I} and the returned {@code O} is serialized as the response by the {@link Serializer} of the Lambda
+ * function. Handlers do not need to implement this interface - any public handler method that takes an {@code I}
+ * (and, optionally, a {@link LambdaContext}) is invoked the same way - but implementing it documents the signature.
+ *
+ * @param <I> the type of the event
+ * @param <O> the type of the response
+ */
+@FunctionalInterface
+public interface RequestHandler<I, O> {
+    O handleRequest(I input, LambdaContext context) throws Exception;
+}
@@ -0,0 +1,25 @@
+package com.dow.aws.lambda;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The {@link java.io.OutputStream} handed to the Lambda request handler when the function uses the (default)
+ * buffered response mode. The response bytes are posted to the runtime API straight out of the internal buffer, so
+ * (unlike {@code ByteArrayOutputStream#toString} followed by {@code BodyPublishers#ofString}) the response is never
+ * copied. The buffer is reused across invocations which means that, once warm, handing out the output stream does
+ * not allocate at all; it retains at most the largest response seen so far (which the runtime API caps at 6 MB for
+ * buffered responses).
+ */
+final class ResponseBuffer extends ByteArrayOutputStream {
+    ResponseBuffer(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * Returns the internal buffer, of which the first {@link #size()} bytes are the bytes written since the last
+     * {@link #reset()}. The buffer must not be written to (or reset) while the returned array is in use.
+     */
+    byte[] array() {
+        return buf;
+    }
+}
@@ -0,0 +1,28 @@
+package com.dow.aws.lambda;
+
+import java.io.OutputStream;
+
+/**
+ * An {@link OutputStream} that sends the response written by the Lambda request handler to the runtime API as it is
+ * written (Lambda's response streaming mode). Closing the stream completes the response.
+ */
+abstract class ResponseStream extends OutputStream {
+    static final String RESPONSE_MODE_HEADER = "Lambda-Runtime-Function-Response-Mode";
+
+    /**
+     * Returns true if part of the response was already sent to the runtime API, in which case a failure of the
+     * handler can no longer be reported through the invocation error resource.
+     */
+    abstract boolean isStarted();
+
+    /**
+     * Returns the number of bytes of the response written by the handler so far.
+     */
+    abstract long getBytesWritten();
+
+    /**
+     * Aborts the streamed response because the handler failed, reporting the failure as a function error if the
+     * implementation can.
+     */
+    abstract void abort(Throwable cause);
+}
@@ -0,0 +1,65 @@
+package com.dow.aws.lambda;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A client for the Lambda runtime API:
+ * https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html
+ * <p>
+ * Two implementations exist, selected by the {@code LAMBDA_RUNTIME_CLIENT} environment variable:
+ * <ul>
+ *     <li>{@code socket} (the default) - {@link SocketRuntimeApiClient}, a minimal HTTP/1.1 client on a single
+ *     persistent connection with reusable buffers, purpose-built for talking to the local runtime API.</li>
+ *     <li>{@code http} - {@link HttpRuntimeApiClient}, which uses {@link java.net.http.HttpClient}.</li>
+ * </ul>
+ * Implementations are not thread-safe.
+ */
+interface RuntimeApiClient extends Closeable {
+    /**
+     * Blocks until the next event is available and returns it.
+     */
+    Invocation next() throws IOException, InterruptedException;
+
+    /**
+     * Posts the buffered response of the invocation with the given request id.
+     */
+    void postResponse(String requestId, ResponseBuffer response) throws IOException, InterruptedException;
+
+    /**
+     * Opens a stream that sends the response of the invocation with the given request id as it is written.
+     */
+    ResponseStream streamResponse(String requestId);
+
+    void postInvocationError(String requestId, String errorJson) throws IOException, InterruptedException;
+
+    void postInitError(String errorJson) throws IOException, InterruptedException;
+
+    /**
+     * Tells the runtime API that init is done and blocks until the execution environment has been restored from its
+     * SnapStart snapshot, which is taken while this call blocks.
+     */
+    void restoreNext() throws IOException, InterruptedException;
+
+    /**
+     * Reports that the runtime could not be restored from the SnapStart snapshot.
+     */
+    void postRestoreError(String errorJson) throws IOException, InterruptedException;
+
+    /**
+     * Creates the runtime API client of the given type.
+     *
+     * @param endpoints the runtime API resources
+     * @param clientType the type of client, either "socket" or "http" (may be null in which case "socket" is used)
+     * @return the runtime API client
+     */
+    static RuntimeApiClient create(RuntimeEndpoints endpoints, String clientType) {
+        if (clientType == null || clientType.isBlank() || clientType.trim().equalsIgnoreCase("socket")) {
+            return new SocketRuntimeApiClient(endpoints);
+        } else if (clientType.trim().equalsIgnoreCase("http")) {
+            return new HttpRuntimeApiClient(endpoints);
+        }
+        throw new IllegalArgumentException("Unknown LAMBDA_RUNTIME_CLIENT: \"" + clientType +
+                "\" (expected \"socket\" or \"http\")");
+    }
+}
@@ -0,0 +1,101 @@
+package com.dow.aws.lambda;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The resources of the runtime API, computed once at init from the {@code AWS_LAMBDA_RUNTIME_API} environment
+ * variable. Resources that are specific to an invocation are built by concatenating the precomputed prefix, the
+ * request id and the precomputed suffix (rather than by parsing a {@link java.text.MessageFormat} pattern per
+ * invocation).
+ */
+final class RuntimeEndpoints {
+    static final String LAMBDA_VERSION_DATE = "2018-06-01";
+
+    private final String runtimeApi;
+    private final String invocationPathPrefix;
+    private final String nextPath;
+    private final String initErrorPath;
+    private final String restoreNextPath;
+    private final String restoreErrorPath;
+    private final String invocationUrlPrefix;
+    private final URI nextUri;
+    private final URI initErrorUri;
+    private final URI restoreNextUri;
+    private final URI restoreErrorUri;
+
+    RuntimeEndpoints(String runtimeApi) {
+        this.runtimeApi = runtimeApi;
+        String basePath = "/" + LAMBDA_VERSION_DATE + "/runtime/";
+        this.invocationPathPrefix = basePath + "invocation/";
+        this.nextPath = invocationPathPrefix + "next";
+        this.initErrorPath = basePath + "init/error";
+        this.restoreNextPath = basePath + "restore/next";
+        this.restoreErrorPath = basePath + "restore/error";
+        String baseUrl = "http://" + runtimeApi;
+        this.invocationUrlPrefix = baseUrl + invocationPathPrefix;
+        this.nextUri = URI.create(baseUrl + nextPath);
+        this.initErrorUri = URI.create(baseUrl + initErrorPath);
+        this.restoreNextUri = URI.create(baseUrl + restoreNextPath);
+        this.restoreErrorUri = URI.create(baseUrl + restoreErrorPath);
+    }
+
+    /**
+     * Returns the host and port of the runtime API.
+     */
+    String getRuntimeApi() {
+        return runtimeApi;
+    }
+
+    URI nextUri() {
+        return nextUri;
+    }
+
+    URI initErrorUri() {
+        return initErrorUri;
+    }
+
+    URI restoreNextUri() {
+        return restoreNextUri;
+    }
+
+    URI restoreErrorUri() {
+        return restoreErrorUri;
+    }
+
+    URI responseUri(String requestId) {
+        return URI.create(invocationUrlPrefix + requestId + "/response");
+    }
+
+    URI errorUri(String requestId) {
+        return URI.create(invocationUrlPrefix + requestId + "/error");
+    }
+
+    /**
+     * Returns the path of the {@code runtime/invocation/next} resource, e.g.
+     * {@code /2018-06-01/runtime/invocation/next}.
+     */
+    String nextPath() {
+        return nextPath;
+    }
+
+    String initErrorPath() {
+        return initErrorPath;
+    }
+
+    String restoreNextPath() {
+        return restoreNextPath;
+    }
+
+    String restoreErrorPath() {
+        return restoreErrorPath;
+    }
+
+    /**
+     * Returns the ASCII bytes of the path that precedes the request id of the invocation specific resources, i.e.
+     * {@code /2018-06-01/runtime/invocation/}.
+     */
+    byte[] invocationPathPrefixBytes() {
+        return invocationPathPrefix.getBytes(StandardCharsets.US_ASCII);
+    }
+}
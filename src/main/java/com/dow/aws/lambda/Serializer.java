@@ -0,0 +1,55 @@
+package com.dow.aws.lambda;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Converts events to (and responses from) the argument and return types of typed Lambda request handlers, such as
+ * {@link RequestHandler}s. The runtime asks for the {@link Reader} and the {@link Writer} of the handler method once,
+ * at init, so implementations should do any per-type work (introspection, code generation, etc.) when they are
+ * created rather than when they are called.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader} from the Lambda function's class path, i.e. by
+ * listing the implementation class in a {@code META-INF/services/com.dow.aws.lambda.Serializer} file. If there is
+ * none the runtime uses its own JSON serializer, which supports strings, numbers, booleans, enums, arrays, lists,
+ * sets and maps, and beans with a public no-argument constructor and public setters, getters or fields.
+ */
+public interface Serializer {
+    /**
+     * Returns the reader for the given type.
+     *
+     * @param type the (possibly generic) type to deserialize
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    <T> Reader<T> reader(Type type);
+
+    /**
+     * Returns the writer for the given type.
+     *
+     * @param type the (possibly generic) type to serialize
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    <T> Writer<T> writer(Type type);
+
+    /**
+     * Deserializes a value from the event sent by the runtime API.
+     */
+    @FunctionalInterface
+    interface Reader<T> {
+        /**
+         * Reads the value from the given stream, which is the body of the event as it is received from the runtime
+         * API.
+         */
+        T read(InputStream input) throws IOException;
+    }
+
+    /**
+     * Serializes a value into the response sent to the runtime API.
+     */
+    @FunctionalInterface
+    interface Writer<T> {
+        void write(T value, OutputStream output) throws IOException;
+    }
+}
@@ -0,0 +1,622 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * A purpose-built {@link RuntimeApiClient} that speaks just enough HTTP/1.1 to talk to the (local) runtime API. All
+ * requests are sent over a single persistent {@link SocketChannel} using reusable direct buffers, the request lines
+ * and fixed headers are encoded once up front, and only the response headers the runtime cares about are decoded.
+ * Compared to {@link java.net.http.HttpClient} there is no selector thread, executor or
+ * {@link java.util.concurrent.CompletableFuture} involved (and the {@code java.net.http} module is never loaded),
+ * which reduces both cold start and per-invocation latency.
+ * <p>
+ * The body of each event is read into a byte array that is reused across invocations. Responses must have a
+ * {@code Content-Length} (which the runtime API always sends), chunked responses are not supported.
+ */
+final class SocketRuntimeApiClient implements RuntimeApiClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketRuntimeApiClient.class);
+    private static final int READ_BUFFER_SIZE = 65536;
+    private static final int WRITE_BUFFER_SIZE = 16384;
+    private static final int MAX_HEAD_SIZE = 16384;
+    private static final int STREAMING_RESPONSE_CHUNK_SIZE = 32768;
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] LAST_CHUNK = ascii("0\r\n\r\n");
+    private static final byte[] CONTENT_LENGTH = ascii("content-length");
+    private static final byte[] TRANSFER_ENCODING = ascii("transfer-encoding");
+    private static final byte[] CONNECTION = ascii("connection");
+    private static final String ERROR_TYPE_TRAILER = "Lambda-Runtime-Function-Error-Type";
+    private static final String ERROR_BODY_TRAILER = "Lambda-Runtime-Function-Error-Body";
+
+    // The index of each of these headers is the index of its value in headerValues.
+    private static final byte[][] INVOCATION_HEADERS = {
+            ascii(Invocation.LAMBDA_RUNTIME_AWS_REQUEST_ID.toLowerCase()),
+            ascii(Invocation.LAMBDA_RUNTIME_DEADLINE_MS.toLowerCase()),
+            ascii(Invocation.LAMBDA_RUNTIME_INVOKED_FUNCTION_ARN.toLowerCase()),
+            ascii(Invocation.LAMBDA_RUNTIME_TRACE_ID.toLowerCase()),
+            ascii(Invocation.LAMBDA_RUNTIME_CLIENT_CONTEXT.toLowerCase()),
+            ascii(Invocation.LAMBDA_RUNTIME_COGNITO_IDENTITY.toLowerCase())
+    };
+
+    private final InetSocketAddress address;
+    private final ByteBuffer nextRequest;
+    private final byte[] invocationRequestPrefix;
+    private final byte[] responseRequestSuffix;
+    private final byte[] streamingResponseRequestSuffix;
+    private final byte[] errorRequestSuffix;
+    private final byte[] initErrorRequest;
+    private final byte[] restoreNextRequest;
+    private final byte[] restoreErrorRequest;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final byte[] head = new byte[MAX_HEAD_SIZE];
+    private final byte[] digits = new byte[20];
+    private final String[] headerValues = new String[INVOCATION_HEADERS.length];
+    private final EventInputStream eventStream = new EventInputStream();
+    private byte[] eventBody = new byte[READ_BUFFER_SIZE];
+    private byte[] streamingChunk;
+    private SocketChannel channel;
+    private long contentLength;
+    private boolean closeConnection;
+
+    SocketRuntimeApiClient(RuntimeEndpoints endpoints) {
+        URI uri = endpoints.nextUri();
+        address = new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 80 : uri.getPort());
+        String host = "\r\nHost: " + endpoints.getRuntimeApi() + "\r\n";
+        byte[] next = ascii("GET " + endpoints.nextPath() + " HTTP/1.1" + host + "\r\n");
+        nextRequest = ByteBuffer.allocateDirect(next.length).put(next).flip();
+        byte[] post = ascii("POST ");
+        byte[] invocationPathPrefix = endpoints.invocationPathPrefixBytes();
+        invocationRequestPrefix = Arrays.copyOf(post, post.length + invocationPathPrefix.length);
+        System.arraycopy(invocationPathPrefix, 0, invocationRequestPrefix, post.length, invocationPathPrefix.length);
+        responseRequestSuffix = ascii("/response HTTP/1.1" + host + "Content-Length: ");
+        streamingResponseRequestSuffix = ascii("/response HTTP/1.1" + host +
+                ResponseStream.RESPONSE_MODE_HEADER + ": streaming\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "Trailer: " + ERROR_TYPE_TRAILER + ", " + ERROR_BODY_TRAILER + "\r\n\r\n");
+        errorRequestSuffix = ascii("/error HTTP/1.1" + host + "Content-Type: application/json\r\nContent-Length: ");
+        initErrorRequest = ascii("POST " + endpoints.initErrorPath() + " HTTP/1.1" + host +
+                "Content-Type: application/json\r\nContent-Length: ");
+        restoreNextRequest = ascii("GET " + endpoints.restoreNextPath() + " HTTP/1.1" + host + "\r\n");
+        restoreErrorRequest = ascii("POST " + endpoints.restoreErrorPath() + " HTTP/1.1" + host +
+                "Content-Type: application/json\r\nContent-Length: ");
+        readBuffer.limit(0);
+    }
+
+    @Override
+    public Invocation next() throws IOException {
+        boolean reused = channel != null;
+        try {
+            return nextInvocation();
+        } catch (IOException ex) {
+            disconnect();
+            if (!reused) {
+                throw ex;
+            }
+            // The runtime API may have closed the idle persistent connection, so retry once on a new one.
+            LOGGER.debug("Reconnecting to runtime API after: {}", ex.toString());
+            try {
+                return nextInvocation();
+            } catch (IOException retryEx) {
+                disconnect();
+                throw retryEx;
+            }
+        }
+    }
+
+    @Override
+    public void postResponse(String requestId, ResponseBuffer response) throws IOException {
+        post(invocationRequestPrefix, requestId, responseRequestSuffix, response.array(), response.size());
+    }
+
+    @Override
+    public ResponseStream streamResponse(String requestId) {
+        if (streamingChunk == null) {
+            streamingChunk = new byte[STREAMING_RESPONSE_CHUNK_SIZE];
+        }
+        return new SocketResponseStream(requestId);
+    }
+
+    @Override
+    public void postInvocationError(String requestId, String errorJson) throws IOException {
+        byte[] body = errorJson.getBytes(StandardCharsets.UTF_8);
+        post(invocationRequestPrefix, requestId, errorRequestSuffix, body, body.length);
+    }
+
+    @Override
+    public void postInitError(String errorJson) throws IOException {
+        byte[] body = errorJson.getBytes(StandardCharsets.UTF_8);
+        post(initErrorRequest, null, null, body, body.length);
+    }
+
+    @Override
+    public void restoreNext() throws IOException {
+        try {
+            ensureConnected();
+            writeBuffer.clear();
+            writeBuffer.put(restoreNextRequest);
+            flushWriteBuffer();
+            readResponse();
+        } catch (IOException ex) {
+            disconnect();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void postRestoreError(String errorJson) throws IOException {
+        byte[] body = errorJson.getBytes(StandardCharsets.UTF_8);
+        post(restoreErrorRequest, null, null, body, body.length);
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+
+    private Invocation nextInvocation() throws IOException {
+        ensureConnected();
+        nextRequest.rewind();
+        while (nextRequest.hasRemaining()) {
+            channel.write(nextRequest);
+        }
+        Arrays.fill(headerValues, null);
+        int status = readHead();
+        if (contentLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Event too large: " + contentLength + " bytes");
+        }
+        int length = (int) Math.max(contentLength, 0);
+        if (length > eventBody.length) {
+            eventBody = new byte[Math.max(length, eventBody.length * 2)];
+        }
+        readFully(eventBody, length);
+        if (closeConnection) {
+            disconnect();
+        }
+        if (status != 200) {
+            throw new IOException("Runtime API responded with status " + status + " to runtime/invocation/next");
+        }
+        eventStream.reset(eventBody, length);
+        return new Invocation(
+                headerValues[0] == null ? "" : headerValues[0],
+                headerValues[1],
+                headerValues[2] == null ? "" : headerValues[2],
+                headerValues[3],
+                headerValues[4],
+                headerValues[5],
+                eventStream,
+                length);
+    }
+
+    private void post(byte[] prefix, String requestId, byte[] suffix, byte[] body, int length) throws IOException {
+        try {
+            ensureConnected();
+            writeBuffer.clear();
+            writeBuffer.put(prefix);
+            if (requestId != null) {
+                putRequestId(requestId);
+                writeBuffer.put(suffix);
+            }
+            putDecimal(length);
+            writeBuffer.put(CRLF).put(CRLF);
+            writeBytes(body, 0, length);
+            flushWriteBuffer();
+            readResponse();
+        } catch (IOException ex) {
+            disconnect();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the response to a request other than {@code runtime/invocation/next} (whose body is discarded) and fails
+     * if it is not successful.
+     */
+    private void readResponse() throws IOException {
+        int status = readHead();
+        skip(Math.max(contentLength, 0));
+        if (closeConnection) {
+            disconnect();
+        }
+        if (status / 100 != 2) {
+            throw new IOException("Runtime API responded with status " + status);
+        }
+    }
+
+    private void ensureConnected() throws IOException {
+        if (channel == null) {
+            channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            readBuffer.clear().limit(0);
+        }
+    }
+
+    private void disconnect() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Could not close runtime API connection: ", ex);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads the status line and headers of a response into {@link #head} and decodes them. The read buffer is left
+     * positioned at the start of the body.
+     *
+     * @return the response status code
+     */
+    private int readHead() throws IOException {
+        int length = 0;
+        int matched = 0;
+        while (matched < 4) {
+            if (!readBuffer.hasRemaining()) {
+                fillReadBuffer();
+            }
+            byte b = readBuffer.get();
+            if (length == head.length) {
+                throw new IOException("Runtime API response head exceeds " + head.length + " bytes");
+            }
+            head[length++] = b;
+            if (b == '\r') {
+                matched = matched == 2 ? 3 : 1;
+            } else if (b == '\n' && (matched == 1 || matched == 3)) {
+                matched++;
+            } else {
+                matched = 0;
+            }
+        }
+
+        // Status line, e.g. "HTTP/1.1 200 OK"
+        int lineEnd = indexOf(head, (byte) '\r', 0, length);
+        int statusStart = indexOf(head, (byte) ' ', 0, lineEnd) + 1;
+        if (statusStart == 0 || statusStart + 3 > lineEnd) {
+            throw new IOException("Malformed runtime API status line");
+        }
+        int status = (int) parseDecimal(head, statusStart, statusStart + 3);
+        contentLength = -1;
+        closeConnection = head[5] == '1' && head[7] == '0'; // HTTP/1.0
+
+        // Headers
+        int lineStart = lineEnd + 2;
+        while (lineStart < length - 2) {
+            lineEnd = indexOf(head, (byte) '\r', lineStart, length);
+            int colon = indexOf(head, (byte) ':', lineStart, lineEnd);
+            if (colon > lineStart) {
+                int valueStart = colon + 1;
+                while (valueStart < lineEnd && (head[valueStart] == ' ' || head[valueStart] == '\t')) {
+                    valueStart++;
+                }
+                int valueEnd = lineEnd;
+                while (valueEnd > valueStart && (head[valueEnd - 1] == ' ' || head[valueEnd - 1] == '\t')) {
+                    valueEnd--;
+                }
+                decodeHeader(lineStart, colon, valueStart, valueEnd);
+            }
+            lineStart = lineEnd + 2;
+        }
+        return status;
+    }
+
+    private void decodeHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) throws IOException {
+        if (nameEquals(CONTENT_LENGTH, nameStart, nameEnd)) {
+            contentLength = parseDecimal(head, valueStart, valueEnd);
+        } else if (nameEquals(TRANSFER_ENCODING, nameStart, nameEnd)) {
+            throw new IOException("Unsupported runtime API response Transfer-Encoding: " +
+                    new String(head, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1));
+        } else if (nameEquals(CONNECTION, nameStart, nameEnd)) {
+            closeConnection = valueEnd - valueStart == 5 && (head[valueStart] | 0x20) == 'c';
+        } else {
+            for (int i = 0; i < INVOCATION_HEADERS.length; i++) {
+                if (nameEquals(INVOCATION_HEADERS[i], nameStart, nameEnd)) {
+                    headerValues[i] = new String(head, valueStart, valueEnd - valueStart,
+                            StandardCharsets.ISO_8859_1);
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean nameEquals(byte[] lowerCaseName, int start, int end) {
+        if (end - start != lowerCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            byte b = head[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void fillReadBuffer() throws IOException {
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        readBuffer.flip();
+        if (read < 0) {
+            throw new EOFException("Runtime API closed the connection");
+        }
+    }
+
+    private void readFully(byte[] dst, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!readBuffer.hasRemaining()) {
+                fillReadBuffer();
+            }
+            int n = Math.min(readBuffer.remaining(), length - offset);
+            readBuffer.get(dst, offset, n);
+            offset += n;
+        }
+    }
+
+    private void skip(long length) throws IOException {
+        while (length > 0) {
+            if (!readBuffer.hasRemaining()) {
+                fillReadBuffer();
+            }
+            int n = (int) Math.min(readBuffer.remaining(), length);
+            readBuffer.position(readBuffer.position() + n);
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes the given bytes through the write buffer, flushing it to the channel whenever it fills up.
+     */
+    private void writeBytes(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!writeBuffer.hasRemaining()) {
+                flushWriteBuffer();
+            }
+            int n = Math.min(writeBuffer.remaining(), length);
+            writeBuffer.put(src, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void putRequestId(String requestId) throws IOException {
+        for (int i = 0; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            // Request ids are used in the request line so guard against anything that is not a visible ASCII char.
+            if (c <= ' ' || c > '~' || c == '/' || c == '?' || c == '#') {
+                throw new IOException("Invalid request id: \"" + requestId + "\"");
+            }
+            writeBuffer.put((byte) c);
+        }
+    }
+
+    private void putDecimal(long value) {
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        writeBuffer.put(digits, i, digits.length - i);
+    }
+
+    private void putHex(int value) {
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) Character.forDigit(value & 0xF, 16);
+            value >>>= 4;
+        } while (value > 0);
+        writeBuffer.put(digits, i, digits.length - i);
+    }
+
+    private static long parseDecimal(byte[] bytes, int start, int end) throws IOException {
+        if (start == end) {
+            throw new IOException("Malformed number in runtime API response");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Malformed number in runtime API response");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A {@link ByteArrayInputStream} over the reusable event body buffer.
+     */
+    private static final class EventInputStream extends ByteArrayInputStream {
+        EventInputStream() {
+            super(new byte[0]);
+        }
+
+        void reset(byte[] buf, int count) {
+            this.buf = buf;
+            this.pos = 0;
+            this.mark = 0;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Streams the response using chunked transfer encoding directly on the client's connection. If the handler
+     * fails after the response was started the error is sent as the trailers that the runtime API expects.
+     */
+    private final class SocketResponseStream extends ResponseStream {
+        private final String requestId;
+        private int count;
+        private long sent;
+        private boolean started;
+        private boolean closed;
+
+        SocketResponseStream(String requestId) {
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (count == streamingChunk.length) {
+                writeChunk();
+            }
+            streamingChunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            ensureOpen();
+            while (len > 0) {
+                if (count == streamingChunk.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, streamingChunk.length - count);
+                System.arraycopy(b, off, streamingChunk, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            if (count > 0) {
+                writeChunk();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (count > 0) {
+                    writeChunk();
+                }
+                if (!started) {
+                    start();
+                }
+                if (writeBuffer.remaining() < LAST_CHUNK.length) {
+                    flushWriteBuffer();
+                }
+                writeBuffer.put(LAST_CHUNK);
+                flushWriteBuffer();
+                readResponse();
+            } catch (IOException ex) {
+                disconnect();
+                throw ex;
+            }
+        }
+
+        @Override
+        boolean isStarted() {
+            return started;
+        }
+
+        @Override
+        long getBytesWritten() {
+            return sent + count;
+        }
+
+        @Override
+        void abort(Throwable cause) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!started) {
+                return;
+            }
+            String errorType = cause.getClass().getName();
+            String errorBody = Base64.getEncoder().encodeToString(
+                    Json.error(cause.getMessage(), errorType).getBytes(StandardCharsets.UTF_8));
+            byte[] trailers = ascii("0\r\n" + ERROR_TYPE_TRAILER + ": " + errorType + "\r\n" +
+                    ERROR_BODY_TRAILER + ": " + errorBody + "\r\n\r\n");
+            try {
+                writeBytes(trailers, 0, trailers.length);
+                flushWriteBuffer();
+                readResponse();
+            } catch (IOException ex) {
+                disconnect();
+                LOGGER.error("Could not report error of streamed response: ", ex);
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        private void start() throws IOException {
+            ensureConnected();
+            writeBuffer.clear();
+            writeBuffer.put(invocationRequestPrefix);
+            putRequestId(requestId);
+            writeBuffer.put(streamingResponseRequestSuffix);
+            started = true;
+        }
+
+        private void writeChunk() throws IOException {
+            try {
+                if (!started) {
+                    start();
+                }
+                putHex(count);
+                writeBuffer.put(CRLF);
+                writeBytes(streamingChunk, 0, count);
+                if (writeBuffer.remaining() < CRLF.length) {
+                    flushWriteBuffer();
+                }
+                writeBuffer.put(CRLF);
+                flushWriteBuffer();
+                sent += count;
+                count = 0;
+            } catch (IOException ex) {
+                disconnect();
+                throw ex;
+            }
+        }
+    }
+}
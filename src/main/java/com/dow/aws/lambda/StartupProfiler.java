@@ -0,0 +1,195 @@
+package com.dow.aws.lambda;
+
+import com.dow.aws.lambda.logging.RuntimeLogging;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Times the phases of a cold start, from the start of the JVM to the response of the first invocation, and writes
+ * them to standard output (and so to the function's CloudWatch log stream) as a single JSON line once the first
+ * invocation is complete, in order with the log records (see {@link RuntimeLogging#println(String)}). Marking a
+ * phase only reads {@link System#nanoTime()}, and once the record has been written all further marks are no-ops, so
+ * the profiler is left on by default. It is configured by the
+ * {@code LAMBDA_STARTUP_PROFILE} environment variable:
+ * <ul>
+ *     <li>{@code json} - writes the phase timings as a JSON record (the default).</li>
+ *     <li>{@code emf} - adds the CloudWatch Embedded Metric Format metadata to the record, so that CloudWatch
+ *     extracts the phase timings as metrics (in the namespace given by {@code LAMBDA_METRICS_NAMESPACE}, which
+ *     defaults to {@code LambdaJavaRuntime}).</li>
+ *     <li>{@code off} - disables the profiler.</li>
+ * </ul>
+ */
+final class StartupProfiler {
+    /**
+     * The phases of a cold start, in the order in which they happen. Each phase ends when it is marked and starts when
+     * the previous phase ended (a phase that was not marked is folded into the phase that follows it).
+     */
+    enum Phase {
+        /**
+         * From the start of the JVM process to the bootstrap being run.
+         */
+        JVM_BOOT("jvmBoot"),
+        /**
+         * Creating the runtime API client and starting the flight recorder.
+         */
+        RUNTIME_INIT("runtimeInit"),
+        INIT_CLASSPATH("initClasspath"),
+        CREATE_CLASS_LOADER("createClassLoader"),
+        LOAD_CLASS("loadClass"),
+        /**
+         * Loading the classes of the function's class list in parallel (see {@link ClassPreloader}).
+         */
+        PRELOAD_CLASSES("preloadClasses"),
+        FIND_METHOD("findMethod"),
+        BIND_HANDLER("bindHandler"),
+        CONSTRUCT_HANDLER("constructHandler"),
+        WARMUP("warmup"),
+        /**
+         * Waiting for (and reading) the first event.
+         */
+        FIRST_NEXT("firstNext"),
+        FIRST_INVOKE("firstInvoke"),
+        /**
+         * Posting the response of the first invocation (for streamed responses, sending what is left of it and
+         * completing it once the handler returned).
+         */
+        FIRST_RESPONSE("firstResponse");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private enum Mode { OFF, JSON, EMF }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Mode mode;
+    private final long[] ends = new long[PHASES.length];
+    private long originNanos;
+    private long originMillis;
+    private final String namespace;
+    private final String functionName;
+    // The initialization type of the execution environment (on-demand, provisioned-concurrency or snap-start)
+    private String initType;
+    private boolean done;
+
+    private StartupProfiler(Mode mode, long originNanos, long originMillis, long bootstrapNanos,
+                            Map<String, String> env) {
+        this.mode = mode;
+        this.originNanos = originNanos;
+        this.originMillis = originMillis;
+        this.ends[Phase.JVM_BOOT.ordinal()] = bootstrapNanos;
+        this.done = mode == Mode.OFF;
+        this.namespace = MetricRecord.namespace(env.get("LAMBDA_METRICS_NAMESPACE"));
+        this.functionName = env.get("AWS_LAMBDA_FUNCTION_NAME");
+        this.initType = env.get("AWS_LAMBDA_INITIALIZATION_TYPE");
+    }
+
+    /**
+     * Starts the profiler, which must be done as the very first thing of the bootstrap as that ends the
+     * {@link Phase#JVM_BOOT} phase.
+     *
+     * @param env the environment of the Lambda function, whose {@code LAMBDA_STARTUP_PROFILE} sets the output
+     */
+    static StartupProfiler start(Map<String, String> env) {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        Mode mode = resolveMode(env.get("LAMBDA_STARTUP_PROFILE"));
+        if (mode == Mode.OFF) {
+            return new StartupProfiler(mode, nowNanos, nowMillis, nowNanos, env);
+        }
+        // The process start time is only known to the wall clock, so it is translated to the nano time it corresponds
+        // to. Its resolution is coarse (a clock tick on Linux), which is good enough for the JVM boot phase.
+        Optional<Instant> processStart = ProcessHandle.current().info().startInstant();
+        long originMillis = processStart.map(Instant::toEpochMilli).orElse(nowMillis);
+        long originNanos = nowNanos - Math.max(0, nowMillis - originMillis) * 1_000_000L;
+        return new StartupProfiler(mode, originNanos, originMillis, nowNanos, env);
+    }
+
+    /**
+     * Returns a profiler that does nothing, for the event loops whose cold start is not profiled.
+     */
+    static StartupProfiler off() {
+        long nowNanos = System.nanoTime();
+        return new StartupProfiler(Mode.OFF, nowNanos, System.currentTimeMillis(), nowNanos, Map.of());
+    }
+
+    /**
+     * Ends the given phase, unless the startup record has already been written.
+     */
+    void mark(Phase phase) {
+        if (!done) {
+            ends[phase.ordinal()] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Starts over after the runtime has been restored from a checkpoint: the phases up to the checkpoint ran in
+     * another process (and were already reported there, if it processed events), so they are dropped and the
+     * phases that follow are timed from the restore.
+     *
+     * @param initType how the runtime was initialized, which is added to the startup record
+     */
+    void restored(String initType) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        Arrays.fill(ends, 0);
+        originNanos = System.nanoTime();
+        originMillis = System.currentTimeMillis();
+        this.initType = initType;
+        done = false;
+    }
+
+    /**
+     * Writes the startup record, if it has not been written yet. Called after every invocation, but only the first
+     * call does anything.
+     *
+     * @param requestId the request id of the first invocation
+     */
+    void firstInvocationCompleted(String requestId) {
+        if (done) {
+            return;
+        }
+        done = true;
+        RuntimeLogging.println(toRecord(requestId));
+    }
+
+    private String toRecord(String requestId) {
+        MetricRecord record = new MetricRecord("startup", mode == Mode.EMF).property("requestId", requestId);
+        if (initType != null) {
+            record.property("initType", initType);
+        }
+        long previous = originNanos;
+        for (Phase phase : PHASES) {
+            long end = ends[phase.ordinal()];
+            if (end != 0) {
+                record.millis(phase.key, end - previous);
+                previous = end;
+            }
+        }
+        record.millis("total", previous - originNanos);
+        return record.toJson(namespace, functionName, originMillis);
+    }
+
+    private static Mode resolveMode(String setting) {
+        if (setting == null || setting.isBlank()) {
+            return Mode.JSON;
+        }
+        switch (setting.trim().toLowerCase()) {
+            case "off":
+            case "false":
+                return Mode.OFF;
+            case "emf":
+                return Mode.EMF;
+            default:
+                return Mode.JSON;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+
+/**
+ * The {@link ResponseStream} of {@link HttpRuntimeApiClient}. Bytes written by the handler are collected into
+ * fixed-size chunks that are sent to the runtime API as they fill up (or when the handler flushes), using HTTP/1.1
+ * chunked transfer encoding and the {@code Lambda-Runtime-Function-Response-Mode: streaming} header, so the response
+ * is never fully materialized on the heap. The writing (handler) thread blocks whenever the HTTP client has not
+ * requested more data.
+ * <p>
+ * The request to the runtime API is only started once the first chunk is ready. This means that if the handler
+ * fails before it flushed anything the invocation can still be reported through the regular error endpoint (see
+ * {@link #isStarted()}).
+ * <p>
+ * A failure after that can not be reported as a function error: the runtime API expects it in the
+ * {@code Lambda-Runtime-Function-Error-Type} and {@code Lambda-Runtime-Function-Error-Body} trailers of the chunked
+ * request, and {@link HttpClient} has no way of sending trailers. {@link #abort(Throwable)} therefore cancels the
+ * request, which Lambda sees as a truncated response rather than as an error of the function. Functions that need
+ * these errors reported should use the {@link SocketRuntimeApiClient}, the default.
+ */
+final class StreamingResponseOutputStream extends ResponseStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingResponseOutputStream.class);
+
+    private final HttpClient httpClient;
+    private final URI responseUri;
+    private final int chunkSize;
+    private final Object lock = new Object();
+    private byte[] chunk;
+    private int count;
+    private long sent;
+    private CompletableFuture<HttpResponse<Void>> responseFuture;
+    private Flow.Subscriber<? super ByteBuffer> subscriber;
+    private long demand;
+    private boolean cancelled;
+    private boolean closed;
+
+    StreamingResponseOutputStream(HttpClient httpClient, URI responseUri, int chunkSize) {
+        this.httpClient = httpClient;
+        this.responseUri = responseUri;
+        this.chunkSize = chunkSize;
+        this.chunk = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == chunk.length) {
+            emitChunk();
+        }
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        while (len > 0) {
+            if (count == chunk.length) {
+                emitChunk();
+            }
+            int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            emitChunk();
+        }
+    }
+
+    /**
+     * Sends any remaining bytes, completes the streamed response and waits for the runtime API to acknowledge it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (count > 0 || responseFuture == null) {
+            // Always send at least one (possibly empty) chunk so that an empty response is still posted.
+            emitChunk();
+        }
+        closed = true;
+        subscriber.onComplete();
+        try {
+            responseFuture.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the streamed response to complete");
+        } catch (ExecutionException ex) {
+            throw new IOException("Could not stream response to: " + responseUri, ex.getCause());
+        }
+    }
+
+    /**
+     * Cancels the request, as the HTTP client can not send the error trailers (see the class comment).
+     */
+    @Override
+    void abort(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LOGGER.warn("The streamed response was cancelled, as the http runtime API client can not report errors " +
+                "after the response was started (use LAMBDA_RUNTIME_CLIENT=socket to report them)");
+        Flow.Subscriber<? super ByteBuffer> s;
+        synchronized (lock) {
+            s = subscriber;
+        }
+        if (s != null) {
+            s.onError(cause);
+        }
+    }
+
+    @Override
+    boolean isStarted() {
+        return responseFuture != null;
+    }
+
+    @Override
+    long getBytesWritten() {
+        return sent + count;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void emitChunk() throws IOException {
+        if (responseFuture == null) {
+            responseFuture = httpClient.sendAsync(HttpRequest.newBuilder()
+                    .uri(responseUri)
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .header(ResponseStream.RESPONSE_MODE_HEADER, "streaming")
+                    .POST(new Publisher()).build(), HttpResponse.BodyHandlers.discarding());
+        }
+        synchronized (lock) {
+            while (subscriber == null || demand == 0) {
+                if (cancelled || responseFuture.isDone()) {
+                    throw new IOException("Streamed response to " + responseUri + " was cancelled");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting to stream response");
+                }
+            }
+            demand--;
+        }
+        // The subscriber may hold on to the buffer after onNext returns so the chunk can not be reused.
+        subscriber.onNext(ByteBuffer.wrap(chunk, 0, count));
+        sent += count;
+        chunk = new byte[chunkSize];
+        count = 0;
+    }
+
+    private final class Publisher implements HttpRequest.BodyPublisher {
+        @Override
+        public long contentLength() {
+            // Unknown length makes the HTTP client use chunked transfer encoding.
+            return -1;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> s) {
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    synchronized (lock) {
+                        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                        lock.notifyAll();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    synchronized (lock) {
+                        cancelled = true;
+                        lock.notifyAll();
+                    }
+                }
+            });
+            synchronized (lock) {
+                subscriber = s;
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.dow.aws.lambda;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the handler (and gets the JIT to compile the hot paths of the handler and the runtime) during init, before
+ * the first event is fetched, so that the first real invocation does not run in the interpreter. Before a checkpoint
+ * (see {@link Checkpoints}) warmup primes the runtime that every restore starts from, and is not part of any cold
+ * start, so it defaults to enough invocations and time to get the hot paths compiled by C2. Warmup is done if
+ * the Lambda function ships a file of events or its handler class has a public no-argument {@code warmup()} method,
+ * and is configured by the following environment variables:
+ * <ul>
+ *     <li>{@code LAMBDA_WARMUP_EVENTS} - the file of events, relative to {@code LAMBDA_TASK_ROOT}, with one JSON
+ *     event per line (defaults to {@code warmup-events.jsonl}).</li>
+ *     <li>{@code LAMBDA_WARMUP_INVOCATIONS} - the number of events to invoke the handler with, cycling through the
+ *     events of the file (defaults to 100, or 10000 before a checkpoint, 0 disables warmup).</li>
+ *     <li>{@code LAMBDA_WARMUP_BUDGET_MS} - the time warmup is stopped after, which keeps it well inside of the 10
+ *     second init phase (defaults to 3000, or 60000 before a checkpoint).</li>
+ * </ul>
+ * The {@code warmup()} method of the handler is called first, then the events go through the same invocation path as
+ * buffered responses (the responses are discarded).
+ */
+final class Warmup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Warmup.class);
+    private static final String DEFAULT_EVENTS_FILE = "warmup-events.jsonl";
+    private static final int DEFAULT_INVOCATIONS = 100;
+    private static final int DEFAULT_BUDGET_MILLIS = 3000;
+    private static final int DEFAULT_CHECKPOINT_INVOCATIONS = 10_000;
+    private static final int DEFAULT_CHECKPOINT_BUDGET_MILLIS = 60_000;
+
+    private Warmup() {}
+
+    /**
+     * Runs the warmup stage, if it is enabled. Failures are logged rather than thrown, as warmup is best-effort and
+     * should not fail init.
+     *
+     * @param env the environment of the Lambda function
+     * @param beforeCheckpoint whether the runtime is checkpointed after warmup
+     */
+    static void run(Map<String, String> env, Class<?> handlerClass, HandlerLifecycle handlerLifecycle,
+                    HandlerInvoker handlerInvoker, boolean beforeCheckpoint) {
+        int invocations = parseInt(env.get("LAMBDA_WARMUP_INVOCATIONS"),
+                beforeCheckpoint ? DEFAULT_CHECKPOINT_INVOCATIONS : DEFAULT_INVOCATIONS);
+        if (invocations <= 0) {
+            return;
+        }
+        MethodHandle warmupHook = findWarmupHook(handlerClass);
+        List<byte[]> events = readEvents(env.get("LAMBDA_TASK_ROOT"), env.get("LAMBDA_WARMUP_EVENTS"));
+        if (warmupHook == null && events.isEmpty()) {
+            return;
+        }
+
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(
+                parseInt(env.get("LAMBDA_WARMUP_BUDGET_MS"),
+                        beforeCheckpoint ? DEFAULT_CHECKPOINT_BUDGET_MILLIS : DEFAULT_BUDGET_MILLIS));
+        long start = System.nanoTime();
+        int invoked = 0;
+        try {
+            if (warmupHook != null) {
+                warmupHook.invoke(handlerLifecycle.acquire());
+            }
+            if (!events.isEmpty()) {
+                String deadline = String.valueOf(System.currentTimeMillis() +
+                        TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+                ResponseBuffer responseBuffer = new ResponseBuffer(8192);
+                while (invoked < invocations && System.nanoTime() - start < budgetNanos) {
+                    byte[] event = events.get(invoked % events.size());
+                    Invocation invocation = new Invocation("warmup-" + invoked, deadline, "", null, null, null,
+                            new ByteArrayInputStream(event), event.length);
+                    responseBuffer.reset();
+                    handlerInvoker.invoke(handlerLifecycle.acquire(), invocation.getBody(), responseBuffer,
+                            new LambdaContext(invocation));
+                    invoked++;
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.warn("Warmup stopped after {} invocations: ", invoked, t);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logReport(invoked, elapsedMillis);
+    }
+
+    private static MethodHandle findWarmupHook(Class<?> handlerClass) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(handlerClass, "warmup", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    private static List<byte[]> readEvents(String taskRoot, String eventsFile) {
+        List<byte[]> events = new ArrayList<>();
+        if (taskRoot == null) {
+            // There is no task root to read the events file from, e.g. when the function is on the class path
+            if (eventsFile != null && !eventsFile.isBlank()) {
+                LOGGER.warn("Not reading warmup events, as LAMBDA_TASK_ROOT is not set");
+            }
+            return events;
+        }
+        Path path = Paths.get(taskRoot).resolve(eventsFile == null || eventsFile.isBlank() ?
+                DEFAULT_EVENTS_FILE : eventsFile.trim());
+        if (!Files.isRegularFile(path)) {
+            if (eventsFile != null && !eventsFile.isBlank()) {
+                LOGGER.warn("Warmup events file not found: \"{}\"", path);
+            }
+            return events;
+        }
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    events.add(line.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Could not read warmup events file: \"{}\": ", path, ex);
+        }
+        return events;
+    }
+
+    private static void logReport(int invoked, long elapsedMillis) {
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        long compilationMillis = compilation != null && compilation.isCompilationTimeMonitoringSupported() ?
+                compilation.getTotalCompilationTime() : -1;
+        if (!LOGGER.isDebugEnabled()) {
+            LOGGER.info("Warmup: {} invocations in {} ms, total JIT compilation time {} ms", invoked, elapsedMillis,
+                    compilationMillis);
+            return;
+        }
+
+        // Listing the compiled methods starts the platform MBean server, which is why it is only done at debug level
+        int compiled = -1;
+        int compiledC2 = -1;
+        try {
+            String codeList = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("com.sun.management:type=DiagnosticCommand"), "compilerCodelist",
+                    new Object[]{null}, new String[]{String[].class.getName()});
+            compiled = 0;
+            compiledC2 = 0;
+            // Each line is "<compile id> <tier> <state> <method> [<addresses>]"
+            for (String line : codeList.split("\n")) {
+                String[] columns = line.trim().split(" ", 3);
+                if (columns.length == 3 && !columns[0].isEmpty() && Character.isDigit(columns[0].charAt(0))) {
+                    compiled++;
+                    if (columns[1].equals("4")) {
+                        compiledC2++;
+                    }
+                }
+            }
+        } catch (JMException | RuntimeException ex) {
+            LOGGER.debug("Could not list compiled methods: ", ex);
+        }
+        LOGGER.info("Warmup: {} invocations in {} ms, total JIT compilation time {} ms, {} compiled methods " +
+                "({} compiled by C2)", invoked, elapsedMillis, compilationMillis, compiled, compiledC2);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            LOGGER.warn("Invalid warmup setting: \"{}\"", value);
+            return defaultValue;
+        }
+    }
+}
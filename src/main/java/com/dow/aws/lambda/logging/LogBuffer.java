@@ -0,0 +1,123 @@
+package com.dow.aws.lambda.logging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ring buffer of encoded log records that a background thread writes to an output stream. Appending a record only
+ * copies it into the ring (it only blocks if the ring is full), and {@link #drain()} waits until everything appended
+ * so far has been written.
+ */
+final class LogBuffer {
+    private final OutputStream out;
+    private final byte[] ring;
+    private final int mask;
+    // Held for the whole of an append, so that a record that has to wait for space is not interleaved with others
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    // Positions in the stream of appended bytes; head is the end of what has been written, tail of what was appended
+    private long head;
+    private long tail;
+
+    /**
+     * @param size the size of the ring, which must be a power of two
+     */
+    LogBuffer(OutputStream out, int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two: " + size);
+        }
+        this.out = out;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+        Thread flusher = new Thread(this::flushLoop, "lambda-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    void append(byte[] b, int len) {
+        appendLock.lock();
+        try {
+            int off = 0;
+            while (off < len) {
+                lock.lock();
+                try {
+                    while (tail - head == ring.length) {
+                        written.awaitUninterruptibly();
+                    }
+                    int n = (int) Math.min(len - off, ring.length - (tail - head));
+                    int start = (int) (tail & mask);
+                    int first = Math.min(n, ring.length - start);
+                    System.arraycopy(b, off, ring, start, first);
+                    System.arraycopy(b, off + first, ring, 0, n - first);
+                    if (tail == head) {
+                        notEmpty.signal();
+                    }
+                    tail += n;
+                    off += n;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every record appended before this call has been written.
+     */
+    void drain() {
+        lock.lock();
+        try {
+            long target = tail;
+            while (head < target) {
+                written.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long start;
+            long end;
+            lock.lock();
+            try {
+                while (head == tail) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                start = head;
+                end = tail;
+            } finally {
+                lock.unlock();
+            }
+
+            // The bytes between head and tail are not touched by appenders, so they are written without the lock
+            int from = (int) (start & mask);
+            int len = (int) (end - start);
+            int first = Math.min(len, ring.length - from);
+            try {
+                out.write(ring, from, first);
+                if (first < len) {
+                    out.write(ring, 0, len - first);
+                }
+                out.flush();
+            } catch (IOException ex) {
+                // There is nowhere left to report this to, so the records are dropped
+            }
+
+            lock.lock();
+            try {
+                head = end;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
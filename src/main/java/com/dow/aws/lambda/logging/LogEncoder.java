@@ -0,0 +1,183 @@
+package com.dow.aws.lambda.logging;
+
+import org.slf4j.event.Level;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+/**
+ * Encodes log records as single-line UTF-8 JSON documents into a reusable byte array, so that (apart from stack
+ * traces) encoding a record does not allocate. Each thread that logs has its own encoder.
+ */
+final class LogEncoder {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private byte[] buf = new byte[1024];
+    private int length;
+
+    byte[] array() {
+        return buf;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Starts a new record with the fields every record has.
+     */
+    void begin(long timestamp, Level level, String loggerName, String message) {
+        length = 0;
+        ascii("{\"timestamp\":\"");
+        timestamp(timestamp);
+        ascii("\",\"level\":\"");
+        ascii(level.toString());
+        ascii("\",\"logger\":");
+        string(loggerName);
+        ascii(",\"message\":");
+        string(message);
+    }
+
+    void field(String name, String value) {
+        ensureCapacity(1);
+        buf[length++] = ',';
+        string(name);
+        ensureCapacity(1);
+        buf[length++] = ':';
+        string(value);
+    }
+
+    void throwable(Throwable t) {
+        field("errorType", t.getClass().getName());
+        field("errorMessage", t.getMessage());
+        StringWriter stackTrace = new StringWriter();
+        t.printStackTrace(new PrintWriter(stackTrace));
+        field("stackTrace", stackTrace.toString());
+    }
+
+    void end() {
+        ensureCapacity(2);
+        buf[length++] = '}';
+        buf[length++] = '\n';
+    }
+
+    private void ascii(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Appends the given string as a quoted, escaped JSON string (or {@code null} if it is null) encoded as UTF-8.
+     */
+    private void string(String s) {
+        if (s == null) {
+            ascii("null");
+            return;
+        }
+        // A char never takes more than 6 bytes (escaped control characters), surrogate pairs take 4 bytes for 2 chars
+        ensureCapacity(s.length() * 6 + 2);
+        byte[] b = buf;
+        int n = length;
+        b[n++] = '"';
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                b[n++] = (byte) c;
+            } else if (c < 0x80) {
+                b[n++] = '\\';
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        b[n++] = (byte) c;
+                        break;
+                    case '\n':
+                        b[n++] = 'n';
+                        break;
+                    case '\r':
+                        b[n++] = 'r';
+                        break;
+                    case '\t':
+                        b[n++] = 't';
+                        break;
+                    default:
+                        b[n++] = 'u';
+                        b[n++] = '0';
+                        b[n++] = '0';
+                        b[n++] = HEX_DIGITS[c >> 4];
+                        b[n++] = HEX_DIGITS[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xC0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() &&
+                    Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                b[n++] = (byte) (0xF0 | (codePoint >> 18));
+                b[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                b[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[n++] = '?';
+            } else {
+                b[n++] = (byte) (0xE0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        b[n++] = '"';
+        length = n;
+    }
+
+    /**
+     * Appends the given time as an ISO-8601 UTC timestamp with millisecond precision (e.g.
+     * {@code 2018-11-16T20:40:10.123Z}).
+     */
+    private void timestamp(long epochMillis) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        long millisOfDay = Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        // Converts days since the epoch to a civil date (http://howardhinnant.github.io/date_algorithms.html)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensureCapacity(24);
+        digits(year, 4);
+        buf[length++] = '-';
+        digits(month, 2);
+        buf[length++] = '-';
+        digits(day, 2);
+        buf[length++] = 'T';
+        digits(millisOfDay / 3_600_000, 2);
+        buf[length++] = ':';
+        digits(millisOfDay / 60_000 % 60, 2);
+        buf[length++] = ':';
+        digits(millisOfDay / 1000 % 60, 2);
+        buf[length++] = '.';
+        digits(millisOfDay % 1000, 3);
+        buf[length++] = 'Z';
+    }
+
+    private void digits(long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            buf[length + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += count;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + additional));
+        }
+    }
+}
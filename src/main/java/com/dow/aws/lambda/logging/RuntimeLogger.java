@@ -0,0 +1,368 @@
+package com.dow.aws.lambda.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * A logger of the runtime's logging backend. Messages are only formatted (and their arguments only collected into an
+ * array) if their level is enabled, and are then handed to {@link RuntimeLogging}, so logging never blocks on
+ * standard output. Markers are ignored.
+ */
+final class RuntimeLogger implements Logger {
+    private final String name;
+    private final RuntimeLogging logging;
+
+    RuntimeLogger(String name, RuntimeLogging logging) {
+        this.name = name;
+        this.logging = logging;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return logging.isEnabled(Level.TRACE);
+    }
+
+    @Override
+    public void trace(String msg) {
+        log(Level.TRACE, msg, null);
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        if (logging.isEnabled(Level.TRACE)) {
+            format(Level.TRACE, format, new Object[]{arg});
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        if (logging.isEnabled(Level.TRACE)) {
+            format(Level.TRACE, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        if (logging.isEnabled(Level.TRACE)) {
+            format(Level.TRACE, format, arguments);
+        }
+    }
+
+    @Override
+    public void trace(String msg, Throwable t) {
+        log(Level.TRACE, msg, t);
+    }
+
+    @Override
+    public boolean isTraceEnabled(Marker marker) {
+        return isTraceEnabled();
+    }
+
+    @Override
+    public void trace(Marker marker, String msg) {
+        trace(msg);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg) {
+        trace(format, arg);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg1, Object arg2) {
+        trace(format, arg1, arg2);
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object... arguments) {
+        trace(format, arguments);
+    }
+
+    @Override
+    public void trace(Marker marker, String msg, Throwable t) {
+        trace(msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return logging.isEnabled(Level.DEBUG);
+    }
+
+    @Override
+    public void debug(String msg) {
+        log(Level.DEBUG, msg, null);
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        if (logging.isEnabled(Level.DEBUG)) {
+            format(Level.DEBUG, format, new Object[]{arg});
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        if (logging.isEnabled(Level.DEBUG)) {
+            format(Level.DEBUG, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        if (logging.isEnabled(Level.DEBUG)) {
+            format(Level.DEBUG, format, arguments);
+        }
+    }
+
+    @Override
+    public void debug(String msg, Throwable t) {
+        log(Level.DEBUG, msg, t);
+    }
+
+    @Override
+    public boolean isDebugEnabled(Marker marker) {
+        return isDebugEnabled();
+    }
+
+    @Override
+    public void debug(Marker marker, String msg) {
+        debug(msg);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg) {
+        debug(format, arg);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg1, Object arg2) {
+        debug(format, arg1, arg2);
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object... arguments) {
+        debug(format, arguments);
+    }
+
+    @Override
+    public void debug(Marker marker, String msg, Throwable t) {
+        debug(msg, t);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return logging.isEnabled(Level.INFO);
+    }
+
+    @Override
+    public void info(String msg) {
+        log(Level.INFO, msg, null);
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        if (logging.isEnabled(Level.INFO)) {
+            format(Level.INFO, format, new Object[]{arg});
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        if (logging.isEnabled(Level.INFO)) {
+            format(Level.INFO, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        if (logging.isEnabled(Level.INFO)) {
+            format(Level.INFO, format, arguments);
+        }
+    }
+
+    @Override
+    public void info(String msg, Throwable t) {
+        log(Level.INFO, msg, t);
+    }
+
+    @Override
+    public boolean isInfoEnabled(Marker marker) {
+        return isInfoEnabled();
+    }
+
+    @Override
+    public void info(Marker marker, String msg) {
+        info(msg);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg) {
+        info(format, arg);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg1, Object arg2) {
+        info(format, arg1, arg2);
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object... arguments) {
+        info(format, arguments);
+    }
+
+    @Override
+    public void info(Marker marker, String msg, Throwable t) {
+        info(msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return logging.isEnabled(Level.WARN);
+    }
+
+    @Override
+    public void warn(String msg) {
+        log(Level.WARN, msg, null);
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        if (logging.isEnabled(Level.WARN)) {
+            format(Level.WARN, format, new Object[]{arg});
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        if (logging.isEnabled(Level.WARN)) {
+            format(Level.WARN, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        if (logging.isEnabled(Level.WARN)) {
+            format(Level.WARN, format, arguments);
+        }
+    }
+
+    @Override
+    public void warn(String msg, Throwable t) {
+        log(Level.WARN, msg, t);
+    }
+
+    @Override
+    public boolean isWarnEnabled(Marker marker) {
+        return isWarnEnabled();
+    }
+
+    @Override
+    public void warn(Marker marker, String msg) {
+        warn(msg);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg) {
+        warn(format, arg);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg1, Object arg2) {
+        warn(format, arg1, arg2);
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object... arguments) {
+        warn(format, arguments);
+    }
+
+    @Override
+    public void warn(Marker marker, String msg, Throwable t) {
+        warn(msg, t);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return logging.isEnabled(Level.ERROR);
+    }
+
+    @Override
+    public void error(String msg) {
+        log(Level.ERROR, msg, null);
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        if (logging.isEnabled(Level.ERROR)) {
+            format(Level.ERROR, format, new Object[]{arg});
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        if (logging.isEnabled(Level.ERROR)) {
+            format(Level.ERROR, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        if (logging.isEnabled(Level.ERROR)) {
+            format(Level.ERROR, format, arguments);
+        }
+    }
+
+    @Override
+    public void error(String msg, Throwable t) {
+        log(Level.ERROR, msg, t);
+    }
+
+    @Override
+    public boolean isErrorEnabled(Marker marker) {
+        return isErrorEnabled();
+    }
+
+    @Override
+    public void error(Marker marker, String msg) {
+        error(msg);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg) {
+        error(format, arg);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg1, Object arg2) {
+        error(format, arg1, arg2);
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object... arguments) {
+        error(format, arguments);
+    }
+
+    @Override
+    public void error(Marker marker, String msg, Throwable t) {
+        error(msg, t);
+    }
+
+    private void log(Level level, String msg, Throwable t) {
+        if (logging.isEnabled(level)) {
+            logging.log(level, name, msg, t);
+        }
+    }
+
+    private void format(Level level, String format, Object[] arguments) {
+        FormattingTuple tuple = MessageFormatter.arrayFormat(format, arguments);
+        logging.log(level, name, tuple.getMessage(), tuple.getThrowable());
+    }
+}
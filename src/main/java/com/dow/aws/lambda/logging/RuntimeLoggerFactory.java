@@ -0,0 +1,21 @@
+package com.dow.aws.lambda.logging;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+final class RuntimeLoggerFactory implements ILoggerFactory {
+    private final ConcurrentMap<String, RuntimeLogger> loggers = new ConcurrentHashMap<>();
+    private final RuntimeLogging logging;
+
+    RuntimeLoggerFactory(RuntimeLogging logging) {
+        this.logging = logging;
+    }
+
+    @Override
+    public Logger getLogger(String name) {
+        return loggers.computeIfAbsent(name, n -> new RuntimeLogger(n, logging));
+    }
+}
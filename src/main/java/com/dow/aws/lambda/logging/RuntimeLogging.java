@@ -0,0 +1,126 @@
+package com.dow.aws.lambda.logging;
+
+import org.slf4j.event.Level;
+import org.slf4j.helpers.BasicMDCAdapter;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The runtime's logging backend, which SLF4J is bound to by {@link RuntimeServiceProvider}. Log records are written
+ * to standard output (and so to the function's CloudWatch log stream) as single-line JSON documents, with the
+ * entries of the logging thread's MDC (which include the request id of the current invocation, under
+ * {@link #REQUEST_ID_KEY}) as additional fields. Records are encoded on the logging thread into a ring buffer that a
+ * background thread writes out, so logging does not block on standard output; the runtime calls {@link #drain()}
+ * before it asks for the next event (after which the execution environment may be frozen) so that the logs of an
+ * invocation are written before the invocation ends. The level is configured by the {@code LAMBDA_LOG_LEVEL}
+ * environment variable (or the {@code AWS_LAMBDA_LOG_LEVEL} set by Lambda's logging configuration): {@code trace},
+ * {@code debug}, {@code info} (the default), {@code warn}, {@code error} or {@code off}.
+ */
+public final class RuntimeLogging {
+    /**
+     * The MDC key of the request id of the current invocation.
+     */
+    public static final String REQUEST_ID_KEY = "AWSRequestId";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int OFF = Integer.MAX_VALUE;
+
+    private static volatile RuntimeLogging instance;
+
+    private final int threshold;
+    private final BasicMDCAdapter mdcAdapter;
+    private final LogBuffer buffer;
+    private final ThreadLocal<LogEncoder> encoders = ThreadLocal.withInitial(LogEncoder::new);
+
+    private RuntimeLogging(int threshold, BasicMDCAdapter mdcAdapter) {
+        this.threshold = threshold;
+        this.mdcAdapter = mdcAdapter;
+        this.buffer = new LogBuffer(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE);
+    }
+
+    static RuntimeLogging start(Map<String, String> env, BasicMDCAdapter mdcAdapter) {
+        String level = env.get("LAMBDA_LOG_LEVEL");
+        if (level == null || level.isBlank()) {
+            level = env.get("AWS_LAMBDA_LOG_LEVEL");
+        }
+        RuntimeLogging logging = new RuntimeLogging(parseThreshold(level), mdcAdapter);
+        Runtime.getRuntime().addShutdownHook(new Thread(logging.buffer::drain, "lambda-log-drain"));
+        instance = logging;
+        return logging;
+    }
+
+    /**
+     * Waits until every record logged so far has been written to standard output. Does nothing if SLF4J is not bound
+     * to the runtime's logging backend.
+     */
+    public static void drain() {
+        RuntimeLogging logging = instance;
+        if (logging != null) {
+            logging.buffer.drain();
+        }
+    }
+
+    /**
+     * Writes a line to standard output as it is, in order with the log records, for output that is not a log record
+     * (such as the CloudWatch embedded metric format documents of the runtime's metrics). Writes to
+     * {@link System#out} if SLF4J is not bound to the runtime's logging backend.
+     */
+    public static void println(String line) {
+        print((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the given bytes to standard output as they are, in order with the log records, like
+     * {@link #println(String)}.
+     */
+    public static void print(byte[] bytes) {
+        RuntimeLogging logging = instance;
+        if (logging != null) {
+            logging.buffer.append(bytes, bytes.length);
+        } else {
+            System.out.write(bytes, 0, bytes.length);
+            System.out.flush();
+        }
+    }
+
+    boolean isEnabled(Level level) {
+        return level.toInt() >= threshold;
+    }
+
+    void log(Level level, String loggerName, String message, Throwable t) {
+        LogEncoder encoder = encoders.get();
+        encoder.begin(System.currentTimeMillis(), level, loggerName, message);
+        Set<String> keys = mdcAdapter.getKeys();
+        if (keys != null) {
+            for (String key : keys) {
+                encoder.field(key, mdcAdapter.get(key));
+            }
+        }
+        if (t != null) {
+            encoder.throwable(t);
+        }
+        encoder.end();
+        buffer.append(encoder.array(), encoder.length());
+    }
+
+    private static int parseThreshold(String level) {
+        if (level == null || level.isBlank()) {
+            return Level.INFO.toInt();
+        }
+        String name = level.trim().toUpperCase(Locale.ROOT);
+        if (name.equals("OFF")) {
+            return OFF;
+        }
+        for (Level candidate : Level.values()) {
+            if (candidate.name().equals(name)) {
+                return candidate.toInt();
+            }
+        }
+        // Lambda's own logging configuration also has FATAL, which SLF4J does not
+        return name.equals("FATAL") ? Level.ERROR.toInt() : Level.INFO.toInt();
+    }
+}
@@ -0,0 +1,55 @@
+package com.dow.aws.lambda.logging;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.IMarkerFactory;
+import org.slf4j.helpers.BasicMDCAdapter;
+import org.slf4j.helpers.BasicMarkerFactory;
+import org.slf4j.spi.MDCAdapter;
+import org.slf4j.spi.SLF4JServiceProvider;
+
+/**
+ * The SLF4J provider of the runtime, which binds SLF4J to the runtime's own logging backend (see
+ * {@link RuntimeLogging}).
+ */
+public final class RuntimeServiceProvider implements SLF4JServiceProvider {
+    /**
+     * The SLF4J API (the 2.0 series) that this provider implements.
+     */
+    private static final String REQUESTED_API_VERSION = "2.0.99";
+
+    private ILoggerFactory loggerFactory;
+    private IMarkerFactory markerFactory;
+    private BasicMDCAdapter mdcAdapter;
+
+    @Override
+    public ILoggerFactory getLoggerFactory() {
+        return loggerFactory;
+    }
+
+    @Override
+    public IMarkerFactory getMarkerFactory() {
+        return markerFactory;
+    }
+
+    @Override
+    public MDCAdapter getMDCAdapter() {
+        return mdcAdapter;
+    }
+
+    // The SLF4J 2.0.0 alphas spell this method getRequesteApiVersion, later versions getRequestedApiVersion, so both
+    // are implemented (without @Override, as only one of them exists in any given version of the API).
+    public String getRequestedApiVersion() {
+        return REQUESTED_API_VERSION;
+    }
+
+    public String getRequesteApiVersion() {
+        return REQUESTED_API_VERSION;
+    }
+
+    @Override
+    public void initialize() {
+        mdcAdapter = new BasicMDCAdapter();
+        markerFactory = new BasicMarkerFactory();
+        loggerFactory = new RuntimeLoggerFactory(RuntimeLogging.start(System.getenv(), mdcAdapter));
+    }
+}
@@ -1,5 +1,15 @@
 module com.dow.aws.lambda {
+    requires java.management;
     requires java.net.http;
     requires java.sql;
+    requires jdk.jfr;
+    requires org.crac;
     requires org.slf4j;
+
+    exports com.dow.aws.lambda;
+
+    uses com.dow.aws.lambda.RecordingUploader;
+    uses com.dow.aws.lambda.Serializer;
+
+    provides org.slf4j.spi.SLF4JServiceProvider with com.dow.aws.lambda.logging.RuntimeServiceProvider;
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.dow.aws.lambda;
+
+/**
+ * Creates the poller threads that run the {@link EventLoop}s of the runtime when events are processed concurrently.
+ * This is the version for Java 21 and later, which can create virtual threads, so that a handler blocking on I/O
+ * (JDBC, outbound HTTP, etc.) unmounts from its carrier thread rather than holding on to a platform thread.
+ */
+final class PollerThreads {
+    private PollerThreads() {}
+
+    /**
+     * Returns whether the running JVM supports virtual threads.
+     */
+    static boolean isVirtualSupported() {
+        return true;
+    }
+
+    /**
+     * Creates a daemon poller thread.
+     *
+     * @param task the event loop to run
+     * @param name the name of the thread
+     * @param virtual whether to create a virtual thread (which is always a daemon thread) rather than a platform
+     *     thread
+     * @return the unstarted thread
+     */
+    static Thread newThread(Runnable task, String name, boolean virtual) {
+        if (virtual) {
+            return Thread.ofVirtual().name(name).unstarted(task);
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
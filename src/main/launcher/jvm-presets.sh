@@ -0,0 +1,50 @@
+# The JVM presets of the runtime (see "JVM Presets" in README.md): the garbage collector, heap sizing and JIT settings
+# that suit a Lambda function of a given memory size, and so number of vCPUs (Lambda gives a function one vCPU per
+# 1769 MB of memory, and a fraction of one below that). DeployRuntime.groovy includes this file in the launcher of the
+# runtime image and benchmarks/jvm-presets.sh runs the emulator with each preset. The functions set variables rather
+# than print them, as command substitution would fork a subshell on every cold start.
+
+# Sets jvmPreset to the preset for the given memory size of the function (in MB).
+default_jvm_preset() {
+  if [ "$1" -le 1024 ]; then
+    jvmPreset=small
+  elif [ "$1" -lt 3008 ]; then
+    jvmPreset=medium
+  else
+    jvmPreset=large
+  fi
+}
+
+# Sets jvmPresetGc to the garbage collector option and jvmPresetOptions to the other JVM options of the given preset,
+# or returns 1 if there is no such preset.
+jvm_preset_options() {
+  case "$1" in
+    small)
+      # Less than one vCPU: the serial collector and C1 only, which compiles quickly on a single compiler thread and
+      # does not compete with the function for the vCPU as long as C2 would. The rest of the memory is left for
+      # metaspace, the code cache and thread stacks.
+      jvmPresetGc="-XX:+UseSerialGC"
+      jvmPresetOptions="-XX:TieredStopAtLevel=1 -XX:CICompilerCount=1 -XX:InitialRAMPercentage=60 -XX:MaxRAMPercentage=60"
+      ;;
+    medium)
+      # One to two vCPUs: still the serial collector (a parallel one has no spare vCPU to run on), with C2 for the
+      # functions that stay warm long enough for it
+      jvmPresetGc="-XX:+UseSerialGC"
+      jvmPresetOptions="-XX:CICompilerCount=2 -XX:InitialRAMPercentage=70 -XX:MaxRAMPercentage=70"
+      ;;
+    large)
+      # Two to six vCPUs: the parallel collector and full tiered compilation, with as many compiler threads as the
+      # JVM picks for the vCPUs
+      jvmPresetGc="-XX:+UseParallelGC"
+      jvmPresetOptions="-XX:InitialRAMPercentage=50 -XX:MaxRAMPercentage=75"
+      ;;
+    none)
+      # The JVM's own ergonomics
+      jvmPresetGc=""
+      jvmPresetOptions=""
+      ;;
+    *)
+      return 1
+      ;;
+  esac
+}